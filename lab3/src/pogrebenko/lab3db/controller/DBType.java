@@ -9,7 +9,9 @@ package pogrebenko.lab3db.controller;
  */
 @SuppressWarnings("SameParameterValue")
 public enum DBType {
-    MYSQL("MySQL");
+    MYSQL("MySQL"),
+    // File-backed DB in the user home, works without DB server.
+    EMBEDDED("Embedded");
     //POSTGRESQL("PostgreSQL"),
     //etc....
 
@@ -100,18 +100,21 @@ public class InitializationController {
             return;
         }
 
-        try {
-            Integer.parseInt(getDBPort());
-        } catch (NumberFormatException e) {
-            LOGGER.severe("Given DB port is invalid: " + getDBPort());
-            new Alert(Alert.AlertType.ERROR, "Invalid DB port provided!", ButtonType.YES).showAndWait();
+        if (getDBType() == null) {
+            LOGGER.severe("DB type must be selected!");
+            new Alert(Alert.AlertType.ERROR, "DB type must be selected!", ButtonType.YES).showAndWait();
 
             return;
         }
 
-        if (getDBType() == null) {
-            LOGGER.severe("DB type must be selected!");
-            new Alert(Alert.AlertType.ERROR, "DB type must be selected!", ButtonType.YES).showAndWait();
+        // Embedded DB doesn't use the connection settings, except the DB name.
+        try {
+            if (getDBType() != DBType.EMBEDDED) {
+                Integer.parseInt(getDBPort());
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.severe("Given DB port is invalid: " + getDBPort());
+            new Alert(Alert.AlertType.ERROR, "Invalid DB port provided!", ButtonType.YES).showAndWait();
 
             return;
         }
@@ -182,7 +185,9 @@ public class InitializationController {
 
         mainController.setDBType(getDBType());
         mainController.setDBHost(getDBHost());
-        mainController.setDBPort(Integer.parseInt(getDBPort()));
+        if (getDBType() != DBType.EMBEDDED) {
+            mainController.setDBPort(Integer.parseInt(getDBPort()));
+        }
         mainController.setDBName(getDBName());
 
         mainController.setDBUser(getDBUser());
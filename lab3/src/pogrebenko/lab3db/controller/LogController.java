@@ -1,15 +1,19 @@
 package pogrebenko.lab3db.controller;
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.TextArea;
+import pogrebenko.lab3db.model.util.DateCodec;
+import pogrebenko.loggerwrapper.AsyncHandler;
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
 import java.net.URL;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -24,12 +28,16 @@ import java.util.logging.Logger;
  */
 public class LogController {
     private static final Logger LOGGER = LoggerWrapper.getLogger();
+    // Max number of lines kept in the execution log window.
+    private final static int defaultMaxLines = 5_000;
     @FXML // ResourceBundle that was given to the FXMLLoader
     private ResourceBundle resources;
     @FXML // URL location of the FXML file that was given to the FXMLLoader
     private URL location;
     @FXML // fx:id="taExecLogConsole"
     private TextArea taExecLogConsole; // Value injected by FXMLLoader
+    // Handler that prints log into the window.
+    private TextAreaLogger textAreaLogger;
 
     /**
      * Exits the window when the "close" button is pressed.
@@ -49,7 +57,7 @@ public class LogController {
      */
     @FXML
     void onLogClearPressed(ActionEvent event) {
-        taExecLogConsole.clear();
+        textAreaLogger.clear();
     }
 
     /**
@@ -58,59 +66,90 @@ public class LogController {
     @FXML
     // This method is called by the FXMLLoader when initialization is complete
     void initialize() {
-        LOGGER.addHandler(new TextAreaLogger(taExecLogConsole));
+        textAreaLogger = new TextAreaLogger(taExecLogConsole, defaultMaxLines);
+        // Records are formatted on the async writer thread, so logging threads don't wait for the UI.
+        LOGGER.addHandler(new AsyncHandler(textAreaLogger));
         LOGGER.info("Logger write handler added  successfully.");
     }
 
     /**
      * Custom handler for logger, to add logging to a text area.
+     * Records are formatted on the publishing thread and queued, queued lines are appended to the TextArea
+     * at once by the single Platform.runLater per UI pulse. Only the last maxLines lines are kept in the TextArea.
      *
      * @author Pogrebenko Vasily, BS-81
-     * @version 1.0
+     * @version 1.4.0
      * @since 1.0
      */
     public static class TextAreaLogger extends Handler {
+        // Date format of the record. Thread-safe, records are published from different threads.
+        private final static DateCodec recordDateFmt = DateCodec.ofDateTime("uuuu-MM-dd HH:mm:ss");
+
         private final TextArea console;
+        private final int maxLines;
+        // Formatted lines, that aren't appended to the TextArea yet.
+        private final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingSize = new AtomicInteger(0);
+        // True if the append is scheduled on the FX thread already.
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        // Ring buffer of the lengths of the lines shown in the TextArea, FX thread only.
+        private final int[] lineLengths;
+        private int head = 0;
+        private int lines = 0;
 
         /**
          * Create custom log handler.
          *
-         * @param console TextArea to log into.
+         * @param console  TextArea to log into.
+         * @param maxLines max number of lines kept in the TextArea.
          */
-        TextAreaLogger(TextArea console) {
+        TextAreaLogger(TextArea console, int maxLines) {
             this.console = console;
+            this.maxLines = maxLines;
+            this.lineLengths = new int[maxLines];
         }
 
         /**
-         * Forms date display for the TextArea.
-         *
-         * @param millis millisecond to convert to a date.
-         */
-        private String formatMillis(long millis) {
-            Date date = new Date(millis);
-            DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            return formatter.format(date);
-        }
-
-        /**
-         * Prints message to the TextArea.
+         * Queues record to print to the TextArea, schedules the append if it isn't scheduled yet.
+         * If UI doesn't keep up, the oldest queued lines are dropped, they would be cut from the TextArea anyway.
          *
          * @param record record to print.
          */
         @Override
         public void publish(LogRecord record) {
-            console.appendText(String.format(
+            if (!isLoggable(record)) {
+                return;
+            }
+
+            pending.offer(String.format(
                     "%s: %s: %s %s: %s \n",
-                    formatMillis(record.getMillis()),
+                    recordDateFmt.format(new Date(record.getMillis())),
                     record.getLevel(),
                     record.getSourceClassName(),
                     record.getSourceMethodName(),
                     record.getMessage()
             ));
+
+            if (pendingSize.incrementAndGet() > maxLines && pending.poll() != null) {
+                pendingSize.decrementAndGet();
+            }
+
+            if (scheduled.compareAndSet(false, true)) {
+                Platform.runLater(this::appendPending);
+            }
+        }
+
+        /**
+         * Clears the TextArea. Must be called on the FX thread.
+         */
+        void clear() {
+            console.clear();
+            head = 0;
+            lines = 0;
         }
 
         /**
-         * Default implementation for flush.
+         * Lines are appended by the UI pulse, nothing to flush.
          */
         @Override
         public void flush() {
@@ -122,5 +161,45 @@ public class LogController {
         @Override
         public void close() throws SecurityException {
         }
+
+        /**
+         * Appends all queued lines to the TextArea at once, and cuts the oldest lines over the limit.
+         * Runs on the FX thread.
+         */
+        private void appendPending() {
+            // Reset before draining, so lines queued during the drain schedule the next append.
+            scheduled.set(false);
+            StringBuilder chunk = new StringBuilder();
+            int removedChars = 0;
+            String line;
+
+            while ((line = pending.poll()) != null) {
+                pendingSize.decrementAndGet();
+                chunk.append(line);
+
+                if (lines == maxLines) {
+                    removedChars += lineLengths[head];
+                    head = (head + 1) % maxLines;
+                    lines--;
+                }
+
+                lineLengths[(head + lines) % maxLines] = line.length();
+                lines++;
+            }
+
+            if (chunk.length() == 0) {
+                return;
+            }
+
+            int length = console.getLength();
+            // Lines cut in this pulse may be in the chunk itself, if the chunk is longer than the limit.
+            int removedShown = Math.min(removedChars, length);
+
+            if (removedShown > 0) {
+                console.deleteText(0, removedShown);
+            }
+
+            console.appendText(removedChars > length ? chunk.substring(removedChars - length) : chunk.toString());
+        }
     }
 }
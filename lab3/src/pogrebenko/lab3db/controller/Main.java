@@ -39,6 +39,7 @@ public class Main extends Application {
         LoggerWrapper LOGGER_WRAPPER = LoggerWrapper.getWrapper();
         LOGGER_WRAPPER.setLoggingLevel(Level.INFO);
         LOGGER_WRAPPER.setLogFormat();
+        LOGGER_WRAPPER.addAsyncConsoleHandler();
     }
 
     public static void main(String[] args) {
@@ -2,10 +2,12 @@ package pogrebenko.lab3db.controller;
 
 // TODO: add dependency injection to the project.
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -19,29 +21,47 @@ import pogrebenko.lab3db.model.medicine.InvalidMedicineException;
 import pogrebenko.lab3db.model.medicine.Medicine;
 import pogrebenko.lab3db.model.medicine.MedicineContainer;
 import pogrebenko.lab3db.model.medicine.MedicineID;
+import pogrebenko.lab3db.model.medicine.MedicineContainer.ExportType;
+import pogrebenko.lab3db.model.medicine.format.MedicineFormats;
+import pogrebenko.lab3db.model.medicine.format.MedicineWriter;
 import pogrebenko.lab3db.model.message.Message;
-import pogrebenko.lab3db.model.message.MessageContainer;
+import pogrebenko.lab3db.model.message.MessageLogWriter;
+import pogrebenko.lab3db.model.util.DateCodec;
+import pogrebenko.lab3db.sqldatabase.common.async.AsyncMedicineDB;
+import pogrebenko.lab3db.sqldatabase.common.async.AsyncMessageDB;
+import pogrebenko.lab3db.sqldatabase.common.async.MessageRetention;
+import pogrebenko.lab3db.sqldatabase.common.cache.CachingMedicineDB;
 import pogrebenko.lab3db.sqldatabase.common.contract.ICore;
 import pogrebenko.lab3db.sqldatabase.common.contract.IMedicineDB;
 import pogrebenko.lab3db.sqldatabase.common.contract.IMessageDB;
 import pogrebenko.lab3db.sqldatabase.common.contract.IToolsDB;
 import pogrebenko.lab3db.sqldatabase.common.factory.CoreFactory;
+import pogrebenko.lab3db.sqldatabase.database.core.PoolConfig;
+import pogrebenko.lab3db.sqldatabase.database.embedded.core.EmbeddedStorage;
+import pogrebenko.lab3db.sqldatabase.database.embedded.medicine.EmbeddedMedicine;
+import pogrebenko.lab3db.sqldatabase.database.embedded.message.EmbeddedMessage;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.BulkLoadMode;
 import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.FilterField;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.MedicineQuery;
 import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.MySQLMedicine;
 import pogrebenko.lab3db.sqldatabase.database.mysql.message.MySQLMessage;
 import pogrebenko.lab3db.sqldatabase.database.mysql.tools.MySQLTools;
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.text.MessageFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,12 +77,20 @@ import java.util.logging.Logger;
  */
 public class MainController {
     private static final Logger LOGGER = LoggerWrapper.getLogger();
+    // Number of medicines loaded into the table at once.
+    private final static int medicinePageSize = 200;
+    // Directory of the embedded DBs, in the user home.
+    private final static String embeddedDBDirectory = ".lab3db";
+    // Messages older than that are archived next to the log file, and deleted from DB.
+    private final static Duration messageMaxAge = Duration.ofDays(30);
+    private final static Duration messageRetentionInterval = Duration.ofHours(1);
+    private final static String messageArchiveFile = "messages-archive.log";
     // Settings for export file dialog.
-    private static final String dataExportLabel = "Choose or create json file to export";
-    private static final String[] filterExtensionsDataExport = {"*.json"};
+    private static final String dataExportLabel = "Choose or create file to export (format is chosen by extension)";
+    private static final String[] filterExtensionsDataExport = {"*.json", "*.medbin", "*.ndjson.gz", "*.medcol"};
     // Settings for data file browse window.
-    private final static String[] extensionsDataFile = {"*.tsv", "*.csv"};
-    private final static String filterLabelDataFile = "Choose *.tsv or *.csv file";
+    private final static String[] extensionsDataFile = {"*.tsv", "*.csv", "*.medbin", "*.ndjson.gz", "*.medcol"};
+    private final static String filterLabelDataFile = "Choose *.tsv, *.csv or exported data file";
 
     private final static String[] extensionsExportLogFile = {"*.log", "*.txt"};
     private final static String filterLabelExportLogFile = "Choose *.log or *.txt file";
@@ -76,9 +104,21 @@ public class MainController {
     // Databases required for the controller.
     // TODO: DBs should start in another thread, or otherwise,
     //  if connection waiting for timeout, app will hang.
+    // SQL core of the MySQL DB, null for the embedded DB.
     private ICore dbCore;
-    private IMedicineDB medicineDB;
-    private IMessageDB messageDB;
+    // Embedded DB files, null for the MySQL DB.
+    private EmbeddedStorage embeddedStorage;
+    // Medicine DB behind the read-through cache, searches are repeated often.
+    private CachingMedicineDB medicineDB;
+    // Runs medicine DB calls off the FX thread, results are handled back on the FX thread.
+    private AsyncMedicineDB asyncMedicineDB;
+    // Fills the table with medicine pages as user scrolls.
+    private MedicinePageLoader pageLoader;
+    // Filters table rows by name as user types.
+    private MedicineNameFilter nameFilter;
+    // Error log is written in background, so errors never wait for DB.
+    private AsyncMessageDB messageDB;
+    private MessageRetention messageRetention;
     // DB settings fields.
     private DBType dbType;
     private String dbHost;
@@ -86,6 +126,8 @@ public class MainController {
     private String dbName;
     private String dbUser;
     private String dbPass;
+    // The way medicines are written to DB on import, BATCH is rewritten by the driver into multi-row inserts.
+    private BulkLoadMode bulkLoadMode = BulkLoadMode.BATCH;
 
     @FXML // ResourceBundle that was given to the FXMLLoader
     private ResourceBundle resources;
@@ -158,7 +200,11 @@ public class MainController {
     @FXML
     void onColumnNameEdit(TableColumn.CellEditEvent<MedicineID, String> event) throws InvalidMedicineException {
         MedicineID medicine = event.getRowValue();
-        onFieldEdit(event, medicine, medicine::setName);
+        // Name filter is notified on edit, and on restore after failed DB update.
+        onFieldEdit(event, medicine, name -> {
+            medicine.setName(name);
+            nameFilter.namesChanged();
+        });
     }
 
     /**
@@ -235,6 +281,7 @@ public class MainController {
 
     /**
      * Common processing patter for all fields edit.
+     * Field is changed right away, and restored if DB update fails.
      *
      * @param event          browse event.
      * @param medicine       medicine to process.
@@ -259,16 +306,43 @@ public class MainController {
             }
 
             medicineSetter.setField(newValue);
-            medicineDB.updateMedicine(medicine);
-            LOGGER.info(MessageFormat.format("Medicine ID {0}: new value: {1}", medicine.getId(), newValue));
-        } catch (SQLException | InvalidMedicineException e) {
+        } catch (InvalidMedicineException e) {
             medicineSetter.setField(oldValue);
             logOnError(e);
+            getMedicineTable().refresh();
+
+            return;
         }
+
+        // Medicine is edited on the FX thread, so DB thread gets the snapshot, not the live table row.
+        asyncMedicineDB.updateMedicine(new MedicineID(medicine)).whenComplete((ignored, e) -> {
+            if (e == null) {
+                LOGGER.info(MessageFormat.format("Medicine ID {0}: new value: {1}", medicine.getId(), newValue));
+            } else {
+                restoreField(medicineSetter, oldValue);
+                logOnError(e);
+            }
+            // refresh table to show restored value.
+            getMedicineTable().refresh();
+        });
         // refresh table to immediately show changes.
         getMedicineTable().refresh();
     }
 
+    /**
+     * Restores the old field value after failed DB update.
+     *
+     * @param medicineSetter required setter for current medicine.
+     * @param oldValue       value to restore.
+     */
+    private <T> void restoreField(Medicine.MedicineSetter<T> medicineSetter, T oldValue) {
+        try {
+            medicineSetter.setField(oldValue);
+        } catch (InvalidMedicineException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage(), e);
+        }
+    }
+
     /**
      * Runs the search by specified field and it's parameter.
      *
@@ -279,10 +353,23 @@ public class MainController {
         if (getMedicineSearchField() == null) {
             logOnError(new IllegalArgumentException("Filter field must be selected!"));
         }
+        // No filter - just show the medicine pages again.
+        if (getMedicineSearchField() == FilterField.NONE) {
+            pageLoader.reset();
+            return;
+        }
 
         try {
-            updateTableValues(medicineSearchSwitch());
-        } catch (SQLException | ParseException e) {
+            medicineSearchSwitch().whenComplete((medicines, e) -> {
+                if (e == null) {
+                    // Search results are shown instead of pages.
+                    pageLoader.stop();
+                    updateTableValues(medicines);
+                } else {
+                    logOnError(e);
+                }
+            });
+        } catch (ParseException e) {
             logOnError(e);
         }
     }
@@ -306,8 +393,16 @@ public class MainController {
         String absPath = exportFile.getAbsolutePath();
         LOGGER.info("Chosen log file is: " + absPath);
 
+        // Export format is chosen by the file extension, JSON by default.
+        ExportType exportType = Objects.requireNonNullElse(ExportType.fromFileName(absPath), ExportType.JSON);
+        // Table holds only the loaded pages, so all medicines are streamed from DB right into the file.
+        if (pageLoader.isPaging()) {
+            exportFromDB(absPath, exportType);
+            return;
+        }
+
         try {
-            exportData(absPath);
+            exportData(absPath, exportType, new ArrayList<>(getMedicineTable().getItems()));
             new Alert(Alert.AlertType.INFORMATION, "Data successfully exported!", ButtonType.YES).showAndWait();
         } catch (InvalidMedicineException e) {
             logOnError(e);
@@ -333,12 +428,21 @@ public class MainController {
         String absPath = exportFile.getAbsolutePath();
         LOGGER.info("Chosen log file is: " + absPath);
 
-        try {
-            new MessageContainer(messageDB.getMessages()).exportToLog(absPath);
-            new Alert(Alert.AlertType.INFORMATION, "Log successfully exported!", ButtonType.YES).showAndWait();
-        } catch (SQLException | IOException e) {
-            logOnError(e);
-        }
+        // Messages are written right from the DB cursor, whole log is never held in memory.
+        Task<Long> exportTask = new Task<>() {
+            @Override
+            protected Long call() throws Exception {
+                try (MessageLogWriter writer = new MessageLogWriter(new FileOutputStream(absPath))) {
+                    return messageDB.visitMessages(null, null, writer::write);
+                }
+            }
+        };
+
+        exportTask.setOnSucceeded(e -> new Alert(
+                Alert.AlertType.INFORMATION, "Log successfully exported!", ButtonType.YES
+        ).showAndWait());
+        exportTask.setOnFailed(e -> logOnError(exportTask.getException()));
+        runInBackground(exportTask, "db-log-export");
     }
 
     /**
@@ -360,11 +464,7 @@ public class MainController {
         String absPath = dataFile.getAbsolutePath();
         LOGGER.info("Chosen data file is: " + absPath);
 
-        try {
-            importData(absPath);
-        } catch (InvalidMedicineException | SQLException e) {
-            logOnError(e);
-        }
+        importData(absPath);
     }
 
     /**
@@ -435,9 +535,16 @@ public class MainController {
                     -1
             );
             // Set ID returned by the DB as medicineID.
-            med.setId(medicineDB.writeMedicine(med));
-            addMedicineToTable(med);
-        } catch (ParseException | NumberFormatException | InvalidMedicineException | SQLException e) {
+            asyncMedicineDB.writeMedicine(med).whenComplete((id, e) -> {
+                if (e == null) {
+                    med.setId(id);
+                    pageLoader.onAppended(med);
+                    addMedicineToTable(med);
+                } else {
+                    logOnError(e);
+                }
+            });
+        } catch (ParseException | NumberFormatException | InvalidMedicineException e) {
             logOnError(e);
         }
     }
@@ -460,12 +567,19 @@ public class MainController {
             return;
         }
 
-        try {
-            messageDB.truncateTable();
-            new Alert(Alert.AlertType.INFORMATION, "Message DB successfully dropped!", ButtonType.YES).showAndWait();
-        } catch (SQLException e) {
-            logOnError(e);
-        }
+        Task<Void> truncateTask = new Task<>() {
+            @Override
+            protected Void call() throws SQLException {
+                messageDB.truncateTable();
+                return null;
+            }
+        };
+
+        truncateTask.setOnSucceeded(e -> new Alert(
+                Alert.AlertType.INFORMATION, "Message DB successfully dropped!", ButtonType.YES
+        ).showAndWait());
+        truncateTask.setOnFailed(e -> logOnError(truncateTask.getException()));
+        runInBackground(truncateTask, "db-log-truncate");
     }
 
     /**
@@ -486,14 +600,19 @@ public class MainController {
             return;
         }
 
-        try {
-            // Clear table in DB and than clear view table.
-            medicineDB.truncateTable();
-            clearTableValues();
-            new Alert(Alert.AlertType.INFORMATION, "Medicine DB successfully dropped!", ButtonType.YES).showAndWait();
-        } catch (SQLException e) {
-            logOnError(e);
-        }
+        // Clear table in DB and than clear view table.
+        asyncMedicineDB.truncateTable().whenComplete((ignored, e) -> {
+            if (e == null) {
+                pageLoader.reset();
+                new Alert(
+                        Alert.AlertType.INFORMATION,
+                        "Medicine DB successfully dropped!",
+                        ButtonType.YES
+                ).showAndWait();
+            } else {
+                logOnError(e);
+            }
+        });
     }
 
     /**
@@ -521,12 +640,13 @@ public class MainController {
     void onDeleteSelectedMed(ActionEvent event) {
         MedicineID med = getMedicineTable().getSelectionModel().getSelectedItem();
 
-        try {
-            medicineDB.deleteMedicine(med.getId());
-            removeMedicineFromTable(med);
-        } catch (SQLException e) {
-            logOnError(e);
-        }
+        asyncMedicineDB.deleteMedicine(med.getId()).whenComplete((ignored, e) -> {
+            if (e == null) {
+                removeMedicineFromTable(med);
+            } else {
+                logOnError(e);
+            }
+        });
     }
 
     /**
@@ -588,7 +708,7 @@ public class MainController {
      *                   Same as:
      *                   {@link pogrebenko.lab3db.controller.MainController#setTextCellFactories(TableColumn, String)}.
      */
-    public void setDateCellFactories(TableColumn<MedicineID, Date> column, String getterName, SimpleDateFormat fmt) {
+    public void setDateCellFactories(TableColumn<MedicineID, Date> column, String getterName, DateCodec fmt) {
         column.setCellValueFactory(new PropertyValueFactory<>(getterName));
         column.setCellFactory(TextFieldTableCell.forTableColumn(new DateAlertConverter(fmt)));
     }
@@ -630,18 +750,71 @@ public class MainController {
     }
 
     /**
-     * Exports medicines to the given path (into JSON file).
+     * Exports all medicines from DB to the given path.
+     * Medicines are read by DB cursor and written to the file one by one on the DB thread,
+     * so export needs constant memory regardless of the table size. Medicines are exported in ID order.
+     *
+     * @param path       the path to the file to which the data will be exported.
+     * @param exportType export format.
+     */
+    private void exportFromDB(String path, ExportType exportType) {
+        String fileName = exportType.toFileName(path);
+        LOGGER.info(String.format("Exporting data from DB to: %s, format: %s", fileName, exportType));
+        MedicineWriter writer;
+
+        try {
+            writer = MedicineFormats.newWriter(exportType, fileName);
+        } catch (IOException e) {
+            logOnError(new InvalidMedicineException("Cannot export medicine data!", e));
+            return;
+        }
+
+        // Writer is closed on the DB thread, since closing may encode the rest of the data (e.g. columnar row group).
+        asyncMedicineDB.visitMedicines(FilterField.NONE, null, writer::write, writer).whenComplete((count, e) -> {
+            if (e != null) {
+                logOnError(new InvalidMedicineException("Cannot export medicine data!", e));
+                return;
+            }
+
+            LOGGER.info(String.format("Exported %d medicines from DB", count));
+            new Alert(Alert.AlertType.INFORMATION, "Data successfully exported!", ButtonType.YES).showAndWait();
+        });
+    }
+
+    /**
+     * Runs task on the new daemon thread, so the UI thread doesn't wait for DB.
+     * Task handlers are called on the UI thread.
+     *
+     * @param task task to run.
+     * @param name name of the thread.
+     */
+    private void runInBackground(Task<?> task, String name) {
+        Thread th = new Thread(task, name);
+
+        LOGGER.info("Starting background task: " + name);
+        th.setDaemon(true);
+        th.start();
+    }
+
+    /**
+     * Exports medicines to the given path.
      *
-     * @param path the path to the json to which the data will be exported.
+     * @param path       the path to the file to which the data will be exported.
+     * @param exportType export format.
+     * @param medicines  medicines to export.
      */
-    private void exportData(String path) throws InvalidMedicineException {
+    private void exportData(
+            String path,
+            ExportType exportType,
+            ArrayList<MedicineID> medicines
+    ) throws InvalidMedicineException {
         // Creating container for each import\export may be inefficient,
         // but otherwise, managing both medicine container and observable list,
         // would be too clumsy.
         MedicineContainer medicineContainer = new MedicineContainer();
-        medicineContainer.medicines.addAll(getMedicineTable().getItems());
+        medicineContainer.medicines.addAll(medicines);
         medicineContainer.sort();
-        medicineContainer.exportData(path, MedicineContainer.ExportType.JSON);
+        medicineContainer.exportData(path, exportType);
     }
 
     /**
@@ -651,25 +824,28 @@ public class MainController {
         observableMedicines.clear();
     }
 
-    private ArrayList<MedicineID> medicineSearchSwitch() throws SQLException, ParseException {
+    private CompletableFuture<ArrayList<MedicineID>> medicineSearchSwitch() throws ParseException {
         FilterField filter = getMedicineSearchField();
         String searchVal = getMedicineSearchValue();
-        ArrayList<MedicineID> medicines;
+        CompletableFuture<ArrayList<MedicineID>> medicines;
 
         switch (filter) {
             case EXPIRATION_DATE, PRODUCTION_DATE -> {
                 Date date = Medicine.DateFmt.parse(searchVal);
-                medicines = medicineDB.getFilteredMedicines(filter, date);
+                medicines = asyncMedicineDB.getFilteredMedicines(filter, date);
             }
             case COST, ID -> {
                 int intVal = Integer.parseInt(searchVal);
-                medicines = medicineDB.getFilteredMedicines(filter, intVal);
+                medicines = asyncMedicineDB.getFilteredMedicines(filter, intVal);
             }
             case PRESCRIPTION_ONLY -> {
                 boolean boolVal = Boolean.parseBoolean(searchVal);
-                medicines = medicineDB.getFilteredMedicines(filter, boolVal);
-            } // default for NONE and String params.
-            default -> medicines = medicineDB.getFilteredMedicines(filter, searchVal);
+                medicines = asyncMedicineDB.getFilteredMedicines(filter, boolVal);
+            } // Strings are searched by prefix, sorted by the searched field (both served by index).
+            case NAME, FORM, PRODUCER -> medicines = asyncMedicineDB.searchMedicines(
+                    new MedicineQuery().startsWith(filter, searchVal).orderBy(filter, true)
+            ); // default for NONE.
+            default -> medicines = asyncMedicineDB.getFilteredMedicines(filter, searchVal);
         }
 
         return medicines;
@@ -677,23 +853,20 @@ public class MainController {
 
     /**
      * Imports data to DB, and displays them on the table.
+     * File is parsed and written to DB in background by the import pipeline,
+     * then DB table is read back to the grid page by page.
      *
      * @param dataPath the path to the csv\tsv from which data will be imported.
      */
-    private void importData(String dataPath) throws InvalidMedicineException, SQLException {
-        MedicineContainer medicines = new MedicineContainer();
-        medicines.importData(dataPath);
-
-        medicineDB.writeMedicines(medicines.medicines);
-        observableMedicines.clear();
-        // In my opinion, just reading whole DB table back to the grid
-        // would be better than inserting medicines value-by-value without batch.
-        // Anyway, it's really easy to change the implementation of this feature.
-        try {
-            addMedicinesToTable(medicineDB.getMedicines());
-        } catch (SQLException e) {
-            logOnError(e);
-        }
+    private void importData(String dataPath) {
+        asyncMedicineDB.importFile(dataPath).whenComplete((report, e) -> {
+            if (e == null) {
+                LOGGER.info("Data file imported: " + report);
+                pageLoader.reset();
+            } else {
+                logOnError(e);
+            }
+        });
     }
 
     /**
@@ -707,41 +880,60 @@ public class MainController {
         prepareDatabase();
         // Set filter and bind sortedlist to the table.
         prepareTable();
-        // Fill the table with already existing values from DB.
-        addMedicinesToTable(medicineDB.getMedicines());
+        // Fill the table with already existing values from DB, page by page as user scrolls.
+        pageLoader = new MedicinePageLoader(asyncMedicineDB, observableMedicines, medicinePageSize, this::logOnError);
+        pageLoader.bind(getMedicineTable());
+        pageLoader.reset();
     }
 
     private void prepareDatabase() throws SQLException {
-        // Create DB.
-        getToolsDB(getCoreDB("")).createDB(getDBName());
-        // Get requested DB core.
-        dbCore = getCoreDB(getDBName());
+        if (getDBType() == DBType.EMBEDDED) {
+            // Embedded DB is stored in the user home, DB name is the name of its directory.
+            embeddedStorage = new EmbeddedStorage(
+                    Paths.get(System.getProperty("user.home"), embeddedDBDirectory, getDBName())
+            );
+        } else {
+            // Create DB. Core is used only once, and it owns the health checker, so it's closed right away.
+            try (ICore toolsCore = getCoreDB("")) {
+                getToolsDB(toolsCore).createDB(getDBName());
+            }
+            // Get requested DB core. Pooled core is used, so requests from different threads won't block each other.
+            dbCore = getPooledCoreDB(getDBName());
+        }
         // Init required DB handlers.
-        medicineDB = getMedicineDB(dbCore);
-        messageDB = getMessageDB(dbCore);
+        medicineDB = new CachingMedicineDB(getMedicineDB(dbCore));
+        messageDB = new AsyncMessageDB(getMessageDB(dbCore));
         // Prepare tables
         medicineDB.initialize();
         messageDB.initialize();
+        messageRetention = new MessageRetention(
+                messageDB,
+                messageMaxAge,
+                logPath.isEmpty() ? null : Paths.get(logPath).toAbsolutePath().resolveSibling(messageArchiveFile)
+        );
+        messageRetention.start(messageRetentionInterval);
+        // One thread per pool connection, results are handled on the FX thread.
+        asyncMedicineDB = new AsyncMedicineDB(medicineDB, PoolConfig.DEFAULT.getMaxSize(), Platform::runLater);
     }
 
     private IMedicineDB getMedicineDB(ICore SQLDbCore) {
-        //noinspection SwitchStatementWithTooFewBranches
         return switch (getDBType()) {
-            case MYSQL -> new MySQLMedicine(SQLDbCore);
+            case MYSQL -> new MySQLMedicine(SQLDbCore, getBulkLoadMode());
+            case EMBEDDED -> new EmbeddedMedicine(embeddedStorage);
         };
     }
 
     private IMessageDB getMessageDB(ICore SQLDbCore) {
-        //noinspection SwitchStatementWithTooFewBranches
         return switch (getDBType()) {
             case MYSQL -> new MySQLMessage(SQLDbCore);
+            case EMBEDDED -> new EmbeddedMessage(embeddedStorage);
         };
     }
 
     private IToolsDB getToolsDB(ICore SQLDbCore) {
-        //noinspection SwitchStatementWithTooFewBranches
         return switch (getDBType()) {
             case MYSQL -> new MySQLTools(SQLDbCore);
+            case EMBEDDED -> throw new IllegalStateException("Embedded DB has no DB tools!");
         };
     }
 
@@ -764,30 +956,20 @@ public class MainController {
 
     /**
      * Filters all medicines by name.
+     * Names are indexed, and matched in background after the user stops typing, so typing doesn't stall the table.
      *
      * @param filteredMedicines FilteredList list of medicines that bind to table for filtering.
      */
     void onTfFilterTyped(FilteredList<MedicineID> filteredMedicines) {
-        tfFilter.textProperty().addListener((observable, oldValue, newValue) -> {
-            //  Runs every time when tfFilter field is changed
-            filteredMedicines.setPredicate(medicine -> {
-                // If filter text is empty, display all persons.
-                if (tfFilter.getText() == null || tfFilter.getText().isEmpty()) {
-                    return true;
-                }
-
-                // Compare first name and last name of every person with filter text.
-                String lowerCaseFilter = tfFilter.getText().toLowerCase();
-                return medicine.getName().toLowerCase().contains(lowerCaseFilter); // Filter matches first name.
-            });
-        });
+        nameFilter = new MedicineNameFilter(observableMedicines, filteredMedicines);
+        //  Runs every time when tfFilter field is changed
+        tfFilter.textProperty().addListener((observable, oldValue, newValue) -> nameFilter.setQuery(newValue));
     }
 
     /**
      * Establishes connection with medicines DB.
      */
     private ICore getCoreDB(String dbName) throws SQLException {
-        //noinspection SwitchStatementWithTooFewBranches
         return switch (getDBType()) {
             case MYSQL -> CoreFactory.getMySQLCore(
                     getDBHost(),
@@ -797,6 +979,34 @@ public class MainController {
                     getDBPassword(),
                     "useSSL=false", "allowPublicKeyRetrieval=true"
             );
+            case EMBEDDED -> throw new SQLException("Embedded DB has no SQL core!");
+        };
+    }
+
+    /**
+     * Establishes pooled connection with medicines DB.
+     */
+    private ICore getPooledCoreDB(String dbName) throws SQLException {
+        return switch (getDBType()) {
+            case MYSQL -> CoreFactory.getMySQLPooledCore(
+                    getDBHost(),
+                    getDBPort(),
+                    dbName,
+                    getDBUser(),
+                    getDBPassword(),
+                    PoolConfig.DEFAULT,
+                    // Server-side prepare pairs well with the core statement cache.
+                    // Cursor fetch makes streaming queries read rows by fetch size, instead of the whole result.
+                    // Bulk load params depend on the chosen bulk load mode.
+                    CoreFactory.withMySQLBulkLoad(
+                            getBulkLoadMode(),
+                            CoreFactory.withMySQLServerPrepare(
+                                    true,
+                                    "useSSL=false", "allowPublicKeyRetrieval=true", "useCursorFetch=true"
+                            )
+                    )
+            );
+            case EMBEDDED -> throw new SQLException("Embedded DB has no SQL core!");
         };
     }
 
@@ -805,20 +1015,12 @@ public class MainController {
      *
      * @param e error exception.
      */
-    private void logOnError(Exception e) {
+    private void logOnError(Throwable e) {
         LOGGER.log(Level.SEVERE, e.getMessage(), e);
         new Alert(Alert.AlertType.ERROR, e.getMessage(), ButtonType.YES).showAndWait();
 
-        try {
-            messageDB.writeMessage(new Message(e.getMessage()));
-        } catch (SQLException throwables) {
-            LOGGER.log(Level.SEVERE, e.getMessage(), e);
-            new Alert(
-                    Alert.AlertType.ERROR,
-                    "Cannot write error to DB! " + e.getMessage(),
-                    ButtonType.YES
-            ).showAndWait();
-        }
+        // Message is buffered and written in batch, DB write errors are logged by the writer.
+        messageDB.writeMessage(new Message(e.getMessage()));
     }
 
     /**
@@ -828,7 +1030,26 @@ public class MainController {
      */
     public void onStageClosing(WindowEvent windowEvent) {
         try {
-            dbCore.close();
+            if (dbCore != null) {
+                LOGGER.info("DB connection health: " + dbCore.getHealthMetrics());
+                LOGGER.info("DB statement cache: " + dbCore.getStatementCacheStats());
+            }
+
+            LOGGER.info("Async medicine DB latency: " + asyncMedicineDB.getLatencyStats());
+            LOGGER.info("Medicine cache: " + medicineDB.getMedicineCacheStats());
+            LOGGER.info("Medicine search cache: " + medicineDB.getResultCacheStats());
+            asyncMedicineDB.close();
+            messageRetention.close();
+            // Pending messages are written before DB is closed.
+            messageDB.close();
+
+            if (dbCore != null) {
+                dbCore.close();
+            }
+
+            if (embeddedStorage != null) {
+                embeddedStorage.close();
+            }
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, e.getMessage(), e);
         }
@@ -935,6 +1156,14 @@ public class MainController {
 
 
     /*Main controller settings start*/
+    public BulkLoadMode getBulkLoadMode() {
+        return bulkLoadMode;
+    }
+
+    public void setBulkLoadMode(BulkLoadMode bulkLoadMode) {
+        this.bulkLoadMode = bulkLoadMode;
+    }
+
     public DBType getDBType() {
         return dbType;
     }
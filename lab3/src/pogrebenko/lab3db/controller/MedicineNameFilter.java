@@ -0,0 +1,356 @@
+package pogrebenko.lab3db.controller;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.util.Duration;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Quick filter of the table rows by name (case-insensitive substring), that keeps typing responsive on big tables.
+ * <p>
+ * Lower-cased names are computed once per row (and again only if the name was changed), and kept in the index,
+ * that follows the table backing list. Typing is debounced, and rows are matched on the background thread,
+ * FX thread only applies the result. When the query is extended (new query contains the previous one),
+ * only the previous matches, and rows added since, are checked again. Once a name is edited,
+ * previous matches are dropped, and all rows are checked again.
+ * <p>
+ * All methods must be called on the FX thread.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+class MedicineNameFilter {
+    // Delay after the last keystroke, before rows are filtered.
+    private final static Duration defaultDebounce = Duration.millis(150);
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    private final FilteredList<MedicineID> filtered;
+    // Index entries of the backing list rows, FX thread only.
+    private final IdentityHashMap<MedicineID, Entry> entries = new IdentityHashMap<>();
+    // Index entries in the order they were added (ordered by seq), removed ones are dropped lazily, FX thread only.
+    private final ArrayList<Entry> ordered = new ArrayList<>();
+    private final PauseTransition debounce;
+    // Matches rows, single thread, so incremental state is used by one thread only.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "medicine-name-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Sequence number of the next added row.
+    private long nextSeq = 0;
+    // Cached copy of the ordered entries for the background thread, null if the list was changed since.
+    private Entry[] snapshot = null;
+    // Lower-cased query, empty if rows aren't filtered.
+    private String query = "";
+    // Incremented on every query change, so outdated results are ignored.
+    private volatile long generation = 0;
+    // Last computed result, filter thread only.
+    private Result last = null;
+
+    /**
+     * Creates name filter and indexes rows that are already in the list.
+     *
+     * @param medicines table backing list.
+     * @param filtered  filtered list over the backing list, its predicate is set by the filter.
+     */
+    MedicineNameFilter(ObservableList<MedicineID> medicines, FilteredList<MedicineID> filtered) {
+        this.filtered = filtered;
+        this.debounce = new PauseTransition(defaultDebounce);
+        this.debounce.setOnFinished(event -> startFiltering());
+
+        for (MedicineID medicine : medicines) {
+            add(medicine);
+        }
+
+        medicines.addListener((ListChangeListener<MedicineID>) change -> {
+            while (change.next()) {
+                if (change.wasPermutated()) {
+                    continue;
+                }
+
+                for (MedicineID medicine : change.getRemoved()) {
+                    Entry entry = entries.remove(medicine);
+
+                    if (entry != null) {
+                        entry.removed = true;
+                    }
+                }
+
+                for (MedicineID medicine : change.getAddedSubList()) {
+                    add(medicine);
+                }
+            }
+
+            snapshot = null;
+        });
+    }
+
+    /**
+     * Sets the filter text. Empty text shows all rows right away, other text is applied after the debounce delay.
+     *
+     * @param text filter text.
+     */
+    void setQuery(String text) {
+        generation++;
+        query = text == null ? "" : text.toLowerCase(Locale.ROOT);
+
+        if (query.isEmpty()) {
+            debounce.stop();
+            filtered.setPredicate(null);
+            return;
+        }
+
+        debounce.playFromStart();
+    }
+
+    /**
+     * Notifies the filter, that name of some row was changed (e.g. edited in the table).
+     * Previous matches aren't narrowed anymore, and rows are matched again, if they are filtered.
+     */
+    void namesChanged() {
+        // Executed on the filter thread, so it's done before the next match.
+        executor.execute(() -> last = null);
+
+        if (!query.isEmpty()) {
+            generation++;
+            startFiltering();
+        }
+    }
+
+    /**
+     * Adds row to the index.
+     *
+     * @param medicine added row.
+     */
+    private void add(MedicineID medicine) {
+        Entry entry = new Entry(medicine, nextSeq++);
+        entries.put(medicine, entry);
+        ordered.add(entry);
+    }
+
+    /**
+     * Returns copy of the index entries for the background thread, copy is reused until the list is changed.
+     *
+     * @return entries ordered by seq.
+     */
+    private Entry[] getSnapshot() {
+        if (snapshot == null) {
+            ordered.removeIf(entry -> entry.removed);
+            snapshot = ordered.toArray(new Entry[0]);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Starts matching rows against the current query in background.
+     */
+    private void startFiltering() {
+        long requested = generation;
+        String requestedQuery = query;
+        Entry[] rows = getSnapshot();
+        long snapshotSeq = nextSeq;
+
+        executor.execute(() -> {
+            // Newer query is typed already.
+            if (requested != generation) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            Result result = match(requestedQuery, rows, snapshotSeq);
+            LOGGER.fine(() -> String.format(
+                    "Name filter '%s': %d of %d rows matched in %d us",
+                    requestedQuery,
+                    result.matched.length,
+                    rows.length,
+                    (System.nanoTime() - start) / 1_000
+            ));
+
+            Platform.runLater(() -> apply(requested, result));
+        });
+    }
+
+    /**
+     * Matches rows against the query, narrows the last result if possible. Runs on the filter thread.
+     *
+     * @param query       lower-cased query.
+     * @param rows        index entries ordered by seq.
+     * @param snapshotSeq seq of the first row that isn't in the entries.
+     * @return match result.
+     */
+    private Result match(String query, Entry[] rows, long snapshotSeq) {
+        Entry[] candidates = rows;
+        // Any name that contains the new query contains the previous one as well.
+        if (last != null && query.contains(last.query)) {
+            int firstNew = firstWithSeq(rows, last.snapshotSeq);
+            candidates = Arrays.copyOf(last.matched, last.matched.length + rows.length - firstNew);
+            System.arraycopy(rows, firstNew, candidates, last.matched.length, rows.length - firstNew);
+        }
+
+        ArrayList<Entry> matched = new ArrayList<>();
+
+        for (Entry entry : candidates) {
+            if (!entry.removed && entry.lowerName().contains(query)) {
+                matched.add(entry);
+            }
+        }
+
+        last = new Result(query, matched.toArray(new Entry[0]), snapshotSeq);
+
+        return last;
+    }
+
+    /**
+     * Sets the predicate with the match result, if query wasn't changed since.
+     * Matched rows are checked again, since they may be renamed after the result was computed.
+     * Rows added after the result was computed are matched by the predicate directly.
+     *
+     * @param requested generation of the query.
+     * @param result    match result.
+     */
+    private void apply(long requested, Result result) {
+        if (requested != generation) {
+            return;
+        }
+
+        Set<MedicineID> matched = Collections.newSetFromMap(new IdentityHashMap<>(result.matched.length * 2));
+
+        for (Entry entry : result.matched) {
+            matched.add(entry.medicine);
+        }
+
+        Predicate<MedicineID> predicate = medicine -> {
+            Entry entry = entries.get(medicine);
+
+            if (entry != null && matched.contains(medicine)) {
+                return entry.lowerName().contains(result.query);
+            }
+
+            // Row isn't indexed yet (list listeners are called in order), or was added after the result.
+            if (entry == null) {
+                return lowerCase(medicine.getName()).contains(result.query);
+            }
+
+            return entry.seq >= result.snapshotSeq && entry.lowerName().contains(result.query);
+        };
+
+        filtered.setPredicate(predicate);
+    }
+
+    /**
+     * Finds the first entry with seq not less than the given one.
+     *
+     * @param entries entries ordered by seq.
+     * @param seq     seq to search.
+     * @return index of the entry, or length of the entries if there is no such entry.
+     */
+    private static int firstWithSeq(Entry[] entries, long seq) {
+        int low = 0;
+        int high = entries.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (entries[mid].seq < seq) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Lower-cases the name, null is treated as empty name.
+     *
+     * @param name name.
+     * @return lower-cased name.
+     */
+    private static String lowerCase(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Index entry of the single row.
+     */
+    private static final class Entry {
+        private final MedicineID medicine;
+        // Order in which rows were added to the list.
+        private final long seq;
+        // Set once row is removed from the list.
+        private volatile boolean removed = false;
+        // Name and its lower-cased form, replaced together, so threads never see a mixed pair.
+        private volatile String[] names = {null, ""};
+
+        /**
+         * Creates index entry.
+         *
+         * @param medicine row.
+         * @param seq      order in which the row was added.
+         */
+        Entry(MedicineID medicine, long seq) {
+            this.medicine = medicine;
+            this.seq = seq;
+        }
+
+        /**
+         * Returns lower-cased name, it's computed again only if the name was changed (e.g. edited in the table).
+         *
+         * @return lower-cased name.
+         */
+        String lowerName() {
+            String[] current = names;
+            String name = medicine.getName();
+
+            if (current[0] != name) {
+                current = new String[]{name, lowerCase(name)};
+                names = current;
+            }
+
+            return current[1];
+        }
+    }
+
+    /**
+     * Rows that matched the query.
+     */
+    private static final class Result {
+        private final String query;
+        // Matched entries ordered by seq.
+        private final Entry[] matched;
+        // Seq of the first row that wasn't checked.
+        private final long snapshotSeq;
+
+        /**
+         * Creates match result.
+         *
+         * @param query       lower-cased query.
+         * @param matched     matched entries ordered by seq.
+         * @param snapshotSeq seq of the first row that wasn't checked.
+         */
+        Result(String query, Entry[] matched, long snapshotSeq) {
+            this.query = query;
+            this.matched = matched;
+            this.snapshotSeq = snapshotSeq;
+        }
+    }
+}
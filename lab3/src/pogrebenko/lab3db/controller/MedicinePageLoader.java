@@ -0,0 +1,188 @@
+package pogrebenko.lab3db.controller;
+
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TableView;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+import pogrebenko.lab3db.sqldatabase.common.async.AsyncMedicineDB;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Lazily fills the table backing list with medicine pages, as user scrolls the table down.
+ * So startup loads only one page, regardless of the medicine table size in DB.
+ * <p>
+ * Pages are read via keyset pagination (by ID), so every page is read equally fast.
+ * All methods must be called on the FX thread, page results are handled there as well.
+ * Page size must be bigger than the number of visible rows, otherwise scroll bar won't appear,
+ * and next pages will never be requested.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+class MedicinePageLoader {
+    // Next page is requested when the table is scrolled further than this part of the loaded rows.
+    private final static double loadThreshold = 0.9;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    private final AsyncMedicineDB medicineDB;
+    // List that is displayed by the table.
+    private final ObservableList<MedicineID> medicines;
+    private final int pageSize;
+    // Handles page load errors.
+    private final Consumer<Throwable> onError;
+    // IDs of medicines that were added to the list outside of pages (e.g. just inserted).
+    // They are skipped when the page with them is loaded, so they aren't displayed twice.
+    private final HashSet<Integer> appended = new HashSet<>();
+
+    // ID of the last loaded medicine.
+    private int lastId = 0;
+    private boolean loading = false;
+    // All pages are loaded, or paging is stopped.
+    private boolean exhausted = false;
+    // Incremented on reset\stop, so results of the outdated page requests are ignored.
+    private long generation = 0;
+
+    /**
+     * Creates page loader.
+     *
+     * @param medicineDB medicine DB to load pages from.
+     * @param medicines  list that is displayed by the table.
+     * @param pageSize   number of medicines in the page.
+     * @param onError    page load errors handler.
+     */
+    MedicinePageLoader(
+            AsyncMedicineDB medicineDB,
+            ObservableList<MedicineID> medicines,
+            int pageSize,
+            Consumer<Throwable> onError
+    ) {
+        this.medicineDB = medicineDB;
+        this.medicines = medicines;
+        this.pageSize = pageSize;
+        this.onError = onError;
+    }
+
+    /**
+     * Requests the next page when the table is scrolled close to its end.
+     * Scroll bar is created by the table skin, so it's looked up once the skin is set.
+     *
+     * @param table table to watch.
+     */
+    void bind(TableView<?> table) {
+        table.skinProperty().addListener((observable, oldSkin, newSkin) -> {
+            for (Node node : table.lookupAll(".scroll-bar")) {
+                if (node instanceof ScrollBar bar && bar.getOrientation() == Orientation.VERTICAL) {
+                    bar.valueProperty().addListener((value, oldValue, newValue) -> {
+                        if (newValue.doubleValue() >= bar.getMax() * loadThreshold) {
+                            loadNextPage();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Clears the list and loads the first page.
+     */
+    void reset() {
+        LOGGER.info("Resetting medicine pages...");
+        generation++;
+        lastId = 0;
+        loading = false;
+        exhausted = false;
+        appended.clear();
+        medicines.clear();
+
+        loadNextPage();
+    }
+
+    /**
+     * Stops paging, e.g. when search results are displayed instead of pages.
+     */
+    void stop() {
+        generation++;
+        loading = false;
+        exhausted = true;
+    }
+
+    /**
+     * Checks if not all pages are loaded yet, so list holds only the part of the medicines.
+     *
+     * @return true if there are pages to load, false otherwise.
+     */
+    boolean isPaging() {
+        return !exhausted;
+    }
+
+    /**
+     * Registers medicine, that was added to the list outside of pages.
+     *
+     * @param medicine added medicine.
+     */
+    void onAppended(MedicineID medicine) {
+        if (medicine.getId() > lastId) {
+            appended.add(medicine.getId());
+        }
+    }
+
+    /**
+     * Requests the next page, if it's not requested already.
+     */
+    void loadNextPage() {
+        if (loading || exhausted) {
+            return;
+        }
+
+        loading = true;
+        long requested = generation;
+
+        medicineDB.getMedicinesPage(lastId, pageSize).whenComplete((page, e) -> {
+            if (requested != generation) {
+                return;
+            }
+
+            loading = false;
+
+            if (e != null) {
+                onError.accept(e);
+                return;
+            }
+
+            addPage(page);
+        });
+    }
+
+    /**
+     * Adds loaded page to the list.
+     *
+     * @param page loaded page.
+     */
+    private void addPage(ArrayList<MedicineID> page) {
+        LOGGER.fine(String.format("Loaded page of %d medicines after ID %d", page.size(), lastId));
+
+        if (page.size() < pageSize) {
+            exhausted = true;
+        }
+
+        if (page.isEmpty()) {
+            return;
+        }
+
+        lastId = page.get(page.size() - 1).getId();
+
+        if (!appended.isEmpty()) {
+            page.removeIf(medicine -> appended.remove(medicine.getId()));
+        }
+
+        medicines.addAll(page);
+    }
+}
@@ -1,30 +1,46 @@
 package pogrebenko.lab3db.controller.customconverter;
 
-import javafx.util.converter.DateStringConverter;
+import javafx.util.StringConverter;
+import pogrebenko.lab3db.model.util.DateCodec;
 
-import java.text.SimpleDateFormat;
+import java.text.ParseException;
 import java.util.Date;
 
 /**
- * Extends the DateStringConverter class, to change it's behaviour on invalid date insertion.
+ * Date converter, that changes DateStringConverter behaviour on invalid date insertion.
  * Without it, if GUI user insert invalid data (expiration\production), an uncatchable exception will be thrown.
  * <p>
  * But, according to lab2 task, there should be an error box for every error like this.
- * So, I extended DateStringConverter in a such way, that instead of exception, null will be returned.
+ * So, instead of exception, null is returned on invalid input.
  * This allows me to catch this in my code, and show an error alert box.
+ * Dates are converted by the thread-safe DateCodec, same as in the model.
  *
  * @author Pogrebenko Vasily, BS-81
  * @version 1.0
  * @since 1.0
  */
-public class DateAlertConverter extends DateStringConverter {
+public class DateAlertConverter extends StringConverter<Date> {
+    // Codec to convert dates with.
+    private final DateCodec codec;
+
+    /**
+     * Creates converter.
+     *
+     * @param codec codec to convert dates with.
+     */
+    public DateAlertConverter(DateCodec codec) {
+        this.codec = codec;
+    }
+
     /**
-     * No changes in constructor is required, just use the existing one.
+     * Converts date to string, null is converted to the empty string.
      *
-     * @param fmt time format to parse.
+     * @param date date to convert.
+     * @return formatted date.
      */
-    public DateAlertConverter(SimpleDateFormat fmt) {
-        super(fmt);
+    @Override
+    public String toString(Date date) {
+        return date == null ? "" : codec.format(date);
     }
 
     /**
@@ -34,10 +50,14 @@ public class DateAlertConverter extends DateStringConverter {
      * @param dateSrt string to convert into a Date.
      */
     @Override
-    public Date fromString(String dateSrt) throws RuntimeException {
-        try { // Just call existing method, and catch an error.
-            return super.fromString(dateSrt);
-        } catch (RuntimeException e) {
+    public Date fromString(String dateSrt) {
+        if (dateSrt == null || dateSrt.isBlank()) {
+            return null;
+        }
+
+        try {
+            return codec.parse(dateSrt.trim());
+        } catch (ParseException e) {
             return null;
         }
     }
@@ -1,11 +1,11 @@
 package pogrebenko.lab3db.model.medicine;
 
+import pogrebenko.lab3db.model.medicine.format.JsonMedicineWriter;
+import pogrebenko.lab3db.model.util.DateCodec;
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -17,13 +17,23 @@ import java.util.logging.Logger;
  * @since 1.0.0
  */
 public class Medicine implements Comparable<Medicine> {
-    // Formatting for the date fields.
-    public final static SimpleDateFormat DateFmt = new SimpleDateFormat("dd/MM/yyyy");
+    // Formatting for the date fields. Thread-safe, so medicines may be parsed\exported in parallel.
+    // Days and months may have single digit on input, output always has two.
+    public final static DateCodec DateFmt = DateCodec.ofDate("d/M/uuuu", "dd/MM/uuuu");
     // Indicates the number of "real" object fields.
-    private static final int fieldsNum = 7;
+    static final int fieldsNum = 7;
     private static final Logger LOGGER = LoggerWrapper.getLogger();
-    // Create fieldName:setter map for simple initialization of object from csv\tsv\etc...
-    final Map<String, MedicineSetter<String>> fieldSetterMap;
+    // fieldName:parser map for simple initialization of object from csv\tsv\etc...
+    // It's static, so medicines (e.g. loaded from DB) don't build their own setter map.
+    static final Map<String, FieldParser> FIELD_PARSERS = Map.of(
+            "name", (medicine, chars, begin, end) -> medicine.setName(slice(chars, begin, end)),
+            "form", (medicine, chars, begin, end) -> medicine.setForm(slice(chars, begin, end)),
+            "producer", (medicine, chars, begin, end) -> medicine.setProducer(slice(chars, begin, end)),
+            "expirationDate", (medicine, chars, begin, end) -> medicine.setExpirationDate(slice(chars, begin, end)),
+            "productionDate", (medicine, chars, begin, end) -> medicine.setProductionDate(slice(chars, begin, end)),
+            "cost", Medicine::parseCost,
+            "isPrescriptionOnly", Medicine::parsePrescriptionOnly
+    );
     // Sorted by data type and "importance" of the field.
     private String name = "";
     private String form = "";
@@ -33,24 +43,28 @@ public class Medicine implements Comparable<Medicine> {
     private Integer cost = 0;
     private Boolean isPrescriptionOnly = false;
 
-    // Prepare fieldSetterMap, set every field from data file to corresponding method.
-    {
-        fieldSetterMap = new HashMap<>();
-        fieldSetterMap.put("name", this::setName);
-        fieldSetterMap.put("form", this::setForm);
-        fieldSetterMap.put("producer", this::setProducer);
-        fieldSetterMap.put("expirationDate", this::setExpirationDate);
-        fieldSetterMap.put("productionDate", this::setProductionDate);
-        fieldSetterMap.put("cost", this::setCost);
-        fieldSetterMap.put("isPrescriptionOnly", this::setPrescriptionOnly);
-    }
-
     /**
      * Constructs new empty medicine.
      */
     public Medicine() {
     }
 
+    /**
+     * Constructs copy of the given medicine, values are already validated, so they are copied as is.
+     * Dates are mutable, so they are copied as well.
+     *
+     * @param medicine medicine to copy.
+     */
+    public Medicine(Medicine medicine) {
+        this.name = medicine.name;
+        this.form = medicine.form;
+        this.producer = medicine.producer;
+        this.expirationDate = medicine.expirationDate == null ? null : new Date(medicine.expirationDate.getTime());
+        this.productionDate = medicine.productionDate == null ? null : new Date(medicine.productionDate.getTime());
+        this.cost = medicine.cost;
+        this.isPrescriptionOnly = medicine.isPrescriptionOnly;
+    }
+
     /**
      * Constructs medicine from given parameters.
      *
@@ -111,16 +125,16 @@ public class Medicine implements Comparable<Medicine> {
         }
 
         LOGGER.fine("Setting object values...");
-        // Set values to the object via fieldSetterMap.
+        // Set values to the object via FIELD_PARSERS.
         for (int i = 0; i < headers.length; i++) {
-            MedicineSetter<String> method = fieldSetterMap.get(headers[i]);
+            FieldParser parser = FIELD_PARSERS.get(headers[i]);
 
-            if (method == null) {
+            if (parser == null) {
                 LOGGER.warning("Given unrecognizable header field: " + headers[i]);
                 continue;
             }
 
-            method.setField(values[i]);
+            parser.parse(this, values[i], 0, values[i].length());
         }
     }
 
@@ -292,6 +306,28 @@ public class Medicine implements Comparable<Medicine> {
         }
     }
 
+    /**
+     * Parses cost from the slice of the char sequence, and sets it to the medicine.
+     *
+     * @param medicine medicine to set the cost to.
+     * @param chars    char sequence with the value.
+     * @param begin    first char of the value.
+     * @param end      char after the last char of the value.
+     * @throws InvalidMedicineException if invalid cost was passed to the method.
+     */
+    private static void parseCost(
+            Medicine medicine,
+            CharSequence chars,
+            int begin,
+            int end
+    ) throws InvalidMedicineException {
+        try {
+            medicine.setCost(Integer.parseInt(chars, begin, end, 10));
+        } catch (NumberFormatException e) {
+            throw new InvalidMedicineException("Cost must be a number! ");
+        }
+    }
+
     /**
      * Returns if the medicine is sold by prescription only.
      *
@@ -320,21 +356,48 @@ public class Medicine implements Comparable<Medicine> {
     }
 
     /**
-     * Converts object to the JSON string.
-     * TODO: input with '"' will break json. Should add proper escaping or use external lib for marshalling.
+     * Parses prescription status from the slice of the char sequence ('true' ignoring case, same as
+     * Boolean.parseBoolean, anything else is false), and sets it to the medicine.
+     *
+     * @param medicine medicine to set the prescription status to.
+     * @param chars    char sequence with the value.
+     * @param begin    first char of the value.
+     * @param end      char after the last char of the value.
+     */
+    private static void parsePrescriptionOnly(Medicine medicine, CharSequence chars, int begin, int end) {
+        String trueValue = "true";
+        boolean isTrue = end - begin == trueValue.length();
+
+        for (int i = 0; isTrue && i < trueValue.length(); i++) {
+            isTrue = Character.toLowerCase(chars.charAt(begin + i)) == trueValue.charAt(i);
+        }
+
+        medicine.setPrescriptionOnly(isTrue);
+    }
+
+    /**
+     * Returns the slice of the char sequence as string.
+     *
+     * @param chars char sequence.
+     * @param begin first char of the slice.
+     * @param end   char after the last char of the slice.
+     * @return slice as string.
+     */
+    private static String slice(CharSequence chars, int begin, int end) {
+        if (chars instanceof String str) {
+            return str.substring(begin, end);
+        }
+
+        return chars.subSequence(begin, end).toString();
+    }
+
+    /**
+     * Converts object to the JSON string (strings are escaped).
      *
      * @return JSON representation of an object.
      */
     public String toJson() {
-        return ("{"
-                + "\n\t\"name\": " + "\"" + getName() + "\""
-                + ",\n\t\"form\": " + "\"" + getForm() + "\""
-                + ",\n\t\"producer\": " + "\"" + getProducer() + "\""
-                + ",\n\t\"expirationDate\": " + "\"" + Medicine.DateFmt.format(getExpirationDate()) + "\""
-                + ",\n\t\"productionDate\": " + "\"" + Medicine.DateFmt.format(getProductionDate()) + "\""
-                + ",\n\t\"cost\": " + getCost()
-                + ",\n\t\"prescriptionOnly\": " + "\"" + getPrescriptionOnly() + "\""
-                + "}");
+        return JsonMedicineWriter.toJson(this);
     }
 
     /**
@@ -371,6 +434,21 @@ public class Medicine implements Comparable<Medicine> {
         return this.getProducer().compareTo(other.getProducer());
     }
 
+    // Functional interface for parsers of the data file fields.
+    @FunctionalInterface
+    interface FieldParser {
+        /**
+         * Parses field value from the slice of the char sequence, and sets it to the medicine.
+         *
+         * @param medicine medicine to set the field to.
+         * @param chars    char sequence with the value.
+         * @param begin    first char of the value.
+         * @param end      char after the last char of the value.
+         * @throws InvalidMedicineException if invalid data was passed.
+         */
+        void parse(Medicine medicine, CharSequence chars, int begin, int end) throws InvalidMedicineException;
+    }
+
     // Functional interface for setters.
     @FunctionalInterface
     public interface MedicineSetter<T> {
@@ -1,5 +1,9 @@
 package pogrebenko.lab3db.model.medicine;
 
+import pogrebenko.lab3db.model.medicine.format.JsonMedicineWriter;
+import pogrebenko.lab3db.model.medicine.format.MedicineFormats;
+import pogrebenko.lab3db.model.medicine.format.MedicineReader;
+import pogrebenko.lab3db.model.medicine.format.MedicineWriter;
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
 import java.io.*;
@@ -46,6 +50,69 @@ public class MedicineContainer {
      * @throws InvalidMedicineException if unsupported file extension were given or some I/O error occurred.
      */
     public void importData(String fileName) throws InvalidMedicineException {
+        ExportType type = ExportType.fromFileName(fileName);
+
+        if (MedicineFormats.isImportable(type)) {
+            loadExportedData(fileName, type);
+            return;
+        }
+
+        char delimiter = getSeparatedValuesDelimiter(fileName);
+
+        try {
+            loadSeparatedValues(fileName, delimiter);
+        } catch (IOException e) {
+            throw new InvalidMedicineException("Cannot read data file! ", e);
+        }
+    }
+
+    /**
+     * Loads data from the file, that was exported in one of the export formats.
+     * Invalid medicines are logged and skipped.
+     *
+     * @param fileName file to load from.
+     * @param type     format of the file.
+     * @throws InvalidMedicineException if file doesn't exist, or some I/O error occurred.
+     */
+    private void loadExportedData(String fileName, ExportType type) throws InvalidMedicineException {
+        LOGGER.info(String.format("Loading data from: '%s', format: %s", fileName, type));
+
+        if (!isFileExists(fileName)) {
+            throw new InvalidMedicineException("MedicineContainer: importData: Given file doesn't exists: " + fileName);
+        }
+
+        long invalid = 0;
+
+        try (MedicineReader reader = MedicineFormats.newReader(type, fileName)) {
+            while (true) {
+                try {
+                    MedicineID medicine = reader.read();
+
+                    if (medicine == null) {
+                        break;
+                    }
+
+                    medicines.add(medicine);
+                } catch (InvalidMedicineException e) {
+                    invalid++;
+                    e.writeToLog(Level.WARNING, String.format("Error reading medicine of the file %s;", fileName));
+                }
+            }
+        } catch (IOException e) {
+            throw new InvalidMedicineException("Cannot read data file! ", e);
+        }
+
+        LOGGER.info(String.format("Loaded %d medicines, %d invalid medicines", medicines.size(), invalid));
+    }
+
+    /**
+     * Checks that the given data file exists, and returns its delimiter by its extension.
+     *
+     * @param fileName the name of the file to load.
+     * @return delimiter of the file.
+     * @throws InvalidMedicineException if file doesn't exist, or unsupported file extension were given.
+     */
+    public static char getSeparatedValuesDelimiter(String fileName) throws InvalidMedicineException {
         String extension = getFileExtension(fileName);
         String currentDir = System.getProperty("user.dir");
 
@@ -61,61 +128,40 @@ public class MedicineContainer {
             );
         }
         // Check for required extension. Throw an exception, if given file is not supported.
-        try {
-            switch (extension.toLowerCase()) {
-                case ("csv") -> loadSeparatedValues(fileName, ",");
-                case ("tsv") -> loadSeparatedValues(fileName, "\\t");
-                default -> throw new InvalidMedicineException("Unsupported file extension for importing: " + extension);
-            }
-        } catch (IOException e) {
-            throw new InvalidMedicineException("Cannot read data file! ", e);
-        }
+        return switch (extension.toLowerCase()) {
+            case ("csv") -> ',';
+            case ("tsv") -> '\t';
+            default -> throw new InvalidMedicineException("Unsupported file extension for importing: " + extension);
+        };
     }
 
     /**
      * Loads data from the given file.
+     * File is parsed in parallel, by chunks, see {@link ParallelMedicineImporter}.
      *
      * @param fileName  file to load from.
      * @param delimiter delimiters of the file.
      * @throws IOException if some I/O error occurred.
      */
-    private void loadSeparatedValues(String fileName, String delimiter) throws IOException {
-        LOGGER.info(String.format("Loading data from: '%s', with delimiter: '%s'", fileName, delimiter));
-        // Prepare file readers
-        File loadFile = new File(fileName);
-        // FileNotFound exception is not possible, because we already checked for it,
-        // And there is no async actions that may delete given file.
-        FileReader reader = new FileReader(loadFile);
-        // So BufferedReader will be created anyway, and it will be closed if something bad will happen.
-        try (BufferedReader buffReader = new BufferedReader(reader)) {
-            parseSeparatedValues(buffReader, fileName, delimiter);
-        }
-    }
+    private void loadSeparatedValues(String fileName, char delimiter) throws IOException {
+        LOGGER.info(String.format("Loading data from: '%s'", fileName));
+        ParallelMedicineImporter.Result result = new ParallelMedicineImporter().importFile(fileName, delimiter);
 
-    /**
-     * Helper function for the loadSeparatedValues.
-     *
-     * @param buffReader file buffer reader.
-     * @param fileName   file to load from.
-     * @param delimiter  delimiters of the file.
-     * @throws IOException if some I/O error occurred.
-     */
-    private void parseSeparatedValues(BufferedReader buffReader, String fileName, String delimiter) throws IOException {
-        // Reading file headers and preparing them.
-        String params = buffReader.readLine();
-        String[] headers = params.split(delimiter);
-        // Reading csv lines and creating objects from them.
-        for (int line = 1; (params = buffReader.readLine()) != null; line++) {
-            try {
-                LOGGER.finest(String.format("Reading line %d, read data: %s", line, params));
-                medicines.add((new MedicineID(headers, params, delimiter)));
-            } catch (InvalidMedicineException e) {
-                e.writeToLog(
-                        Level.WARNING,
-                        String.format("Error reading line %d of the file %s;", line, fileName)
-                );
-            }
+        medicines.addAll(result.getMedicines());
+
+        for (ParallelMedicineImporter.LineError error : result.getErrors()) {
+            error.getError().writeToLog(
+                    Level.WARNING,
+                    String.format("Error reading line %d of the file %s;", error.getLine(), fileName)
+            );
         }
+
+        LOGGER.info(String.format(
+                "Loaded %d medicines from %d lines, %d invalid lines",
+                result.getMedicines().size(),
+                result.getLines(),
+                result.getErrors().size()
+        ));
     }
 
     /**
@@ -124,51 +170,27 @@ public class MedicineContainer {
      * @param fileName filename to export data.
      * @throws InvalidMedicineException if some I/O error happened.
      */
-    @SuppressWarnings("SwitchStatementWithTooFewBranches")
     public void exportData(String fileName, ExportType exportFormat) throws InvalidMedicineException {
-        // Remove file extension for further use.
-        fileName = removeFileExtension(fileName);
+        // Replace file extension with the format one.
+        fileName = exportFormat.toFileName(fileName);
+        LOGGER.info(String.format("Exporting data to: %s, format: %s", fileName, exportFormat));
 
-        try {
-            switch (exportFormat) {
-                case JSON -> {
-                    fileName += ".json";
-                    LOGGER.info("Exporting data to: " + fileName);
-                    exportToJson(fileName);
-                }
-                // case XML ...
-                // case YAML ...
+        try (MedicineWriter writer = MedicineFormats.newWriter(exportFormat, fileName)) {
+            for (Medicine medicine : medicines) {
+                writer.write(medicine);
             }
         } catch (IOException e) {
             throw new InvalidMedicineException("Cannot export medicine data!", e);
         }
     }
 
-    /**
-     * Exports data to JSON file via implemented JSON serializer.
-     *
-     * @param fileName filename to export data.
-     * @throws IOException if some I/O error happened.
-     */
-    private void exportToJson(String fileName) throws IOException {
-        try (FileWriter fileWriter = new FileWriter(fileName)) {
-            fileWriter.write(toJson());
-        } // Close writer even if something went wrong.
-    }
-
     /**
      * Converts object to the JSON string.
      *
      * @return JSON representation of an object.
      */
     public String toJson() {
-        StringBuilder serializedObject = new StringBuilder("[ \n");
-
-        for (Medicine medicine : medicines) {
-            serializedObject.append(medicine.toJson()).append(",\n");
-        }
-
-        return cutEndChars(serializedObject.toString(), 2) + "\n]";
+        return JsonMedicineWriter.toJson(medicines);
     }
 
     /**
@@ -189,9 +211,68 @@ public class MedicineContainer {
 
     // Enum representing possible formats for data exporting.
     public enum ExportType {
-        JSON
+        // Pretty-printed JSON array.
+        JSON(".json"),
+        // Length-prefixed binary rows.
+        BINARY(".medbin"),
+        // Gzip-compressed newline-delimited JSON, one medicine per line.
+        NDJSON_GZ(".ndjson.gz"),
+        // Columnar row groups, with dictionary encoding of the string columns.
+        COLUMNAR(".medcol");
         // XML
         // YAML
         // etc...
+
+        private final String extension;
+
+        /**
+         * Constructs ExportType.
+         *
+         * @param extension file extension of the format (with dot).
+         */
+        ExportType(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * Returns file extension of the format.
+         *
+         * @return file extension (with dot).
+         */
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * Replaces the extension of the given file with the extension of the format, if it's different.
+         *
+         * @param fileName file name.
+         * @return file name with the format extension.
+         */
+        public String toFileName(String fileName) {
+            if (fileName.toLowerCase().endsWith(extension)) {
+                return fileName;
+            }
+
+            return removeFileExtension(fileName) + extension;
+        }
+
+        /**
+         * Returns the format of the given file by its extension.
+         *
+         * @param fileName file name.
+         * @return format of the file, or null if extension isn't one of the formats.
+         */
+        public static ExportType fromFileName(String fileName) {
+            String lowerName = fileName.toLowerCase();
+
+            for (ExportType type : values()) {
+                if (lowerName.endsWith(type.extension)) {
+                    return type;
+                }
+            }
+
+            return null;
+        }
     }
 }
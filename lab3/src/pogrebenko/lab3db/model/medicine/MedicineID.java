@@ -5,8 +5,6 @@ import pogrebenko.loggerwrapper.LoggerWrapper;
 import java.util.Date;
 import java.util.logging.Logger;
 
-import static pogrebenko.lab3db.commonutil.CommonUtil.cutEndChars;
-
 /**
  * Extends the Medicine class, adds ID to an object.
  *
@@ -24,6 +22,16 @@ public class MedicineID extends Medicine {
         super();
     }
 
+    /**
+     * Constructs copy of the given medicine.
+     *
+     * @param medicine medicine to copy.
+     */
+    public MedicineID(MedicineID medicine) {
+        super(medicine);
+        this.id = medicine.id;
+    }
+
     public MedicineID(
             String name,
             String form,
@@ -81,17 +89,4 @@ public class MedicineID extends Medicine {
         return super.toString() + "\n\tID = " + getId();
 
     }
-
-    /**
-     * Converts object to the JSON string.
-     *
-     * @return JSON representation of an object.
-     */
-    @Override
-    public String toJson() {
-        // Remove closing brace.
-        String superJSON = cutEndChars(super.toJson(), 1);
-        // Add ID to JSON:
-        return String.format("%s,\n\t\"ID\": %d \n}", superJSON, id);
-    }
 }
@@ -0,0 +1,134 @@
+package pogrebenko.lab3db.model.medicine;
+
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.util.logging.Logger;
+
+/**
+ * Parser of the csv\tsv data lines into medicines, compiled once per file from its headers.
+ * <p>
+ * Headers are resolved into the column plan (field parser for each column) once,
+ * so lines are parsed without header lookups, String.split and per-line strings:
+ * values are parsed right from the slices of the given char sequence.
+ * Only string fields (and dates) allocate their values.
+ * <p>
+ * Parser is immutable, so single instance may be used by several threads.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class MedicineRowParser {
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    // Field parser for each column, null for unrecognizable headers.
+    private final Medicine.FieldParser[] plan;
+    private final char delimiter;
+
+    /**
+     * Compiles parser for the given headers.
+     *
+     * @param headers   csv headers in some specific order.
+     * @param delimiter delimiter of the values.
+     */
+    public MedicineRowParser(String[] headers, char delimiter) {
+        this.plan = new Medicine.FieldParser[headers.length];
+        this.delimiter = delimiter;
+
+        for (int i = 0; i < headers.length; i++) {
+            plan[i] = Medicine.FIELD_PARSERS.get(headers[i]);
+
+            if (plan[i] == null) {
+                LOGGER.warning("Given unrecognizable header field: " + headers[i]);
+            }
+        }
+    }
+
+    /**
+     * Parses medicine from the given line (slice of the char sequence, without line break).
+     * Trailing empty values are ignored, same as String.split does.
+     *
+     * @param chars char sequence with the line.
+     * @param begin first char of the line.
+     * @param end   char after the last char of the line.
+     * @return parsed medicine.
+     * @throws InvalidMedicineException if invalid number of headers or values were passed, or values are invalid.
+     */
+    public MedicineID parse(CharSequence chars, int begin, int end) throws InvalidMedicineException {
+        int values = countValues(chars, begin, end);
+        // Check if given data valid.
+        if (plan.length != Medicine.fieldsNum || values != Medicine.fieldsNum) {
+            throw new InvalidMedicineException(
+                    String.format(
+                            "Length of headers (%d) or values (%d) doesn't match the number of the class fields (%d)",
+                            plan.length,
+                            values,
+                            Medicine.fieldsNum
+                    )
+            );
+        }
+
+        MedicineID medicine = new MedicineID();
+        int valueStart = begin;
+
+        for (int column = 0; column < plan.length; column++) {
+            int valueEnd = indexOf(chars, valueStart, end);
+
+            if (plan[column] != null) {
+                plan[column].parse(medicine, chars, valueStart, valueEnd);
+            }
+
+            valueStart = valueEnd + 1;
+        }
+
+        return medicine;
+    }
+
+    /**
+     * Counts values in the line, trailing empty values aren't counted.
+     *
+     * @param chars char sequence with the line.
+     * @param begin first char of the line.
+     * @param end   char after the last char of the line.
+     * @return number of values.
+     */
+    private int countValues(CharSequence chars, int begin, int end) {
+        if (begin == end) {
+            return 1;
+        }
+
+        int values = 0;
+        int nonEmpty = 0;
+        int valueStart = begin;
+
+        while (valueStart <= end) {
+            int valueEnd = indexOf(chars, valueStart, end);
+            values++;
+
+            if (valueEnd > valueStart) {
+                nonEmpty = values;
+            }
+
+            valueStart = valueEnd + 1;
+        }
+
+        return nonEmpty;
+    }
+
+    /**
+     * Finds the next delimiter.
+     *
+     * @param chars char sequence with the line.
+     * @param from  char to search from.
+     * @param end   char after the last char of the line.
+     * @return position of the delimiter, or end of the line.
+     */
+    private int indexOf(CharSequence chars, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (chars.charAt(i) == delimiter) {
+                return i;
+            }
+        }
+
+        return end;
+    }
+}
@@ -0,0 +1,493 @@
+package pogrebenko.lab3db.model.medicine;
+
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Parallel import engine for the csv\tsv medicine files.
+ * <p>
+ * File is split into byte chunks on the line boundaries, each chunk is memory-mapped
+ * and parsed on the fork-join pool independently. Results are merged in the file order,
+ * and line numbers of the invalid lines are restored from the line counts of the previous chunks.
+ * Line numbers are counted the same way as before: header isn't counted, first data line is line 1.
+ * <p>
+ * With the sink, parsed medicines aren't collected, but passed to the sink by batches right while parsing,
+ * so sink that blocks (e.g. on the bounded queue) slows the parsers down (back-pressure).
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class ParallelMedicineImporter {
+    // Default size of the single parsed chunk, in bytes.
+    private final static int defaultChunkSize = 8 * 1024 * 1024;
+    // Bytes read at once while looking for the line end near the chunk boundary.
+    private final static int boundaryScanSize = 4 * 1024;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    private final int chunkSize;
+    private final int parallelism;
+
+    /**
+     * Creates importer with default chunk size, that uses all available processors.
+     */
+    public ParallelMedicineImporter() {
+        this(defaultChunkSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates importer with default chunk size.
+     *
+     * @param parallelism number of the parser threads.
+     */
+    public ParallelMedicineImporter(int parallelism) {
+        this(defaultChunkSize, parallelism);
+    }
+
+    /**
+     * Creates importer.
+     *
+     * @param chunkSize   size of the single parsed chunk, in bytes.
+     * @param parallelism number of the parser threads.
+     */
+    public ParallelMedicineImporter(int chunkSize, int parallelism) {
+        if (chunkSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid importer settings: chunkSize=%d, parallelism=%d",
+                    chunkSize,
+                    parallelism
+            ));
+        }
+
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Imports medicines from the given file.
+     *
+     * @param fileName  file to load from.
+     * @param delimiter delimiter of the file.
+     * @return parsed medicines (in file order) and invalid lines.
+     * @throws IOException if some I/O error occurred.
+     */
+    public Result importFile(String fileName, char delimiter) throws IOException {
+        try {
+            return importFile(fileName, delimiter, null, 0);
+        } catch (InterruptedException e) {
+            // Not possible without the sink.
+            Thread.currentThread().interrupt();
+            throw new IOException("Import was interrupted!", e);
+        }
+    }
+
+    /**
+     * Imports medicines from the given file, and passes them to the sink by batches.
+     * Sink is called from the parser threads, concurrently. Batches are passed not in the file order.
+     *
+     * @param fileName  file to load from.
+     * @param delimiter delimiter of the file.
+     * @param sink      receiver of the parsed medicines, null to collect them in the result.
+     * @param batchSize number of medicines in the single batch.
+     * @return invalid lines (and parsed medicines, if there is no sink).
+     * @throws IOException          if some I/O error occurred.
+     * @throws InterruptedException if sink was interrupted.
+     */
+    public Result importFile(
+            String fileName,
+            char delimiter,
+            MedicineSink sink,
+            int batchSize
+    ) throws IOException, InterruptedException {
+        LOGGER.info(String.format("Importing '%s' in parallel, delimiter: '%s'", fileName, escape(delimiter)));
+
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long headerEnd = findLineEnd(channel, 0, size);
+
+            if (headerEnd == 0 || size == 0) {
+                throw new IOException("Data file has no header line: " + fileName);
+            }
+
+            String headerLine = stripCarriageReturn(decode(channel, 0, headerEnd));
+            // Headers are resolved once, all lines are parsed by the same column plan.
+            MedicineRowParser parser = new MedicineRowParser(
+                    headerLine.split(Pattern.quote(String.valueOf(delimiter))),
+                    delimiter
+            );
+            List<long[]> chunks = splitChunks(channel, Math.min(headerEnd + 1, size), size);
+            LOGGER.info(String.format("File size: %d bytes, chunks: %d", size, chunks.size()));
+
+            return parseChunks(channel, chunks, parser, sink, batchSize);
+        }
+    }
+
+    /**
+     * Parses all chunks on the fork-join pool and merges the results.
+     *
+     * @param channel   file channel.
+     * @param chunks    chunk bounds, [start, end).
+     * @param parser    parser of the file lines.
+     * @param sink      receiver of the parsed medicines, may be null.
+     * @param batchSize number of medicines in the single batch.
+     * @return merged result.
+     * @throws IOException          if some I/O error occurred.
+     * @throws InterruptedException if sink was interrupted.
+     */
+    private Result parseChunks(
+            FileChannel channel,
+            List<long[]> chunks,
+            MedicineRowParser parser,
+            MedicineSink sink,
+            int batchSize
+    ) throws IOException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            List<ForkJoinTask<ChunkResult>> tasks = new ArrayList<>(chunks.size());
+
+            for (long[] chunk : chunks) {
+                tasks.add(pool.submit(
+                        () -> parseChunk(channel, chunk[0], chunk[1], parser, sink, batchSize)
+                ));
+            }
+
+            ArrayList<MedicineID> medicines = new ArrayList<>();
+            ArrayList<LineError> errors = new ArrayList<>();
+            long lines = 0;
+
+            for (ForkJoinTask<ChunkResult> task : tasks) {
+                ChunkResult chunk = task.join();
+                medicines.addAll(chunk.medicines);
+                // Local line numbers of the chunk are shifted by the number of lines in all previous chunks.
+                for (LineError error : chunk.errors) {
+                    errors.add(new LineError(lines + error.line, error.error));
+                }
+
+                lines += chunk.lines;
+            }
+
+            return new Result(medicines, errors, lines);
+        } catch (RuntimeException e) {
+            // Fork-join may rethrow a copy of the task exception, with original one as cause,
+            // so the whole chain is checked.
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException io) {
+                    throw io;
+                }
+
+                if (cause instanceof InterruptedException interrupted) {
+                    throw interrupted;
+                }
+            }
+
+            throw e;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses single chunk of the file.
+     *
+     * @param channel   file channel.
+     * @param start     first byte of the chunk.
+     * @param end       byte after the last byte of the chunk.
+     * @param parser    parser of the file lines.
+     * @param sink      receiver of the parsed medicines, may be null.
+     * @param batchSize number of medicines in the single batch.
+     * @return parsed chunk, line numbers are local to the chunk.
+     */
+    private static ChunkResult parseChunk(
+            FileChannel channel,
+            long start,
+            long end,
+            MedicineRowParser parser,
+            MedicineSink sink,
+            int batchSize
+    ) {
+        CharBuffer chars;
+
+        try {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            // Chunks are split on '\n', so no multibyte UTF-8 char is cut.
+            chars = StandardCharsets.UTF_8.decode(mapped);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        ChunkResult result = new ChunkResult();
+        int lineStart = 0;
+        int length = chars.length();
+
+        for (int i = 0; i <= length; i++) {
+            // Last line may have no line break at the end of the file.
+            if (i < length && chars.get(i) != '\n') {
+                continue;
+            }
+
+            if (i == length && lineStart == length) {
+                break;
+            }
+
+            result.lines++;
+            int lineEnd = i > lineStart && chars.get(i - 1) == '\r' ? i - 1 : i;
+            int begin = lineStart;
+            lineStart = i + 1;
+
+            try {
+                // Line is parsed right from the chunk chars, no per-line string is created.
+                result.medicines.add(parser.parse(chars, begin, lineEnd));
+            } catch (InvalidMedicineException e) {
+                result.errors.add(new LineError(result.lines, e));
+            }
+
+            if (sink != null && result.medicines.size() >= batchSize) {
+                flush(sink, result);
+            }
+        }
+
+        if (sink != null && !result.medicines.isEmpty()) {
+            flush(sink, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Passes parsed medicines of the chunk to the sink.
+     *
+     * @param sink   receiver of the parsed medicines.
+     * @param result parsed chunk.
+     */
+    private static void flush(MedicineSink sink, ChunkResult result) {
+        try {
+            sink.accept(new ArrayList<>(result.medicines));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+
+        result.medicines.clear();
+    }
+
+    /**
+     * Splits byte range of the file into chunks, that end right after the line break.
+     *
+     * @param channel file channel.
+     * @param from    first byte of the range.
+     * @param size    file size.
+     * @return chunk bounds, [start, end).
+     * @throws IOException if some I/O error occurred.
+     */
+    private List<long[]> splitChunks(FileChannel channel, long from, long size) throws IOException {
+        ArrayList<long[]> chunks = new ArrayList<>();
+        long start = from;
+
+        while (start < size) {
+            long end = size;
+
+            if (size - start > chunkSize) {
+                end = Math.min(findLineEnd(channel, start + chunkSize - 1, size) + 1, size);
+            }
+
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Finds the first line break at or after the given position.
+     *
+     * @param channel file channel.
+     * @param from    position to search from.
+     * @param size    file size.
+     * @return position of the line break, or file size if there is no line break.
+     * @throws IOException if some I/O error occurred.
+     */
+    private static long findLineEnd(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(boundaryScanSize);
+        long position = from;
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+
+            if (read <= 0) {
+                break;
+            }
+
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i;
+                }
+            }
+
+            position += read;
+        }
+
+        return size;
+    }
+
+    /**
+     * Reads and decodes the given byte range of the file.
+     *
+     * @param channel file channel.
+     * @param start   first byte.
+     * @param end     byte after the last byte.
+     * @return decoded string.
+     * @throws IOException if some I/O error occurred.
+     */
+    private static String decode(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) <= 0) {
+                break;
+            }
+        }
+
+        return StandardCharsets.UTF_8.decode(buffer.flip()).toString();
+    }
+
+    /**
+     * Returns printable delimiter for the logs.
+     *
+     * @param delimiter delimiter of the file.
+     * @return delimiter, with tab escaped.
+     */
+    private static String escape(char delimiter) {
+        return delimiter == '\t' ? "\\t" : String.valueOf(delimiter);
+    }
+
+    /**
+     * Removes '\r' of the Windows line break.
+     *
+     * @param line line to process.
+     * @return line without trailing '\r'.
+     */
+    private static String stripCarriageReturn(String line) {
+        if (!line.isEmpty() && line.charAt(line.length() - 1) == '\r') {
+            return line.substring(0, line.length() - 1);
+        }
+
+        return line;
+    }
+
+    /**
+     * Receiver of the parsed medicines.
+     *
+     * @author Pogrebenko Vasily, BS-81
+     * @version 1.4.0
+     * @since 1.4.0
+     */
+    @FunctionalInterface
+    public interface MedicineSink {
+        /**
+         * Receives the batch of parsed medicines. May block to slow the parsers down.
+         *
+         * @param medicines parsed medicines.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        void accept(ArrayList<MedicineID> medicines) throws InterruptedException;
+    }
+
+    /**
+     * Result of the single chunk parsing.
+     */
+    private static final class ChunkResult {
+        private final ArrayList<MedicineID> medicines = new ArrayList<>();
+        private final ArrayList<LineError> errors = new ArrayList<>();
+        private long lines = 0;
+    }
+
+    /**
+     * Invalid line of the imported file.
+     *
+     * @author Pogrebenko Vasily, BS-81
+     * @version 1.4.0
+     * @since 1.4.0
+     */
+    public static final class LineError {
+        // Number of the line, header isn't counted.
+        private final long line;
+        private final InvalidMedicineException error;
+
+        /**
+         * Creates line error.
+         *
+         * @param line  number of the line.
+         * @param error parse error.
+         */
+        LineError(long line, InvalidMedicineException error) {
+            this.line = line;
+            this.error = error;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public InvalidMedicineException getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Result of the file import.
+     *
+     * @author Pogrebenko Vasily, BS-81
+     * @version 1.4.0
+     * @since 1.4.0
+     */
+    public static final class Result {
+        private final List<MedicineID> medicines;
+        private final List<LineError> errors;
+        // Number of the data lines (valid and invalid).
+        private final long lines;
+
+        /**
+         * Creates import result.
+         *
+         * @param medicines parsed medicines.
+         * @param errors    invalid lines.
+         * @param lines     number of the data lines.
+         */
+        Result(List<MedicineID> medicines, List<LineError> errors, long lines) {
+            this.medicines = Collections.unmodifiableList(medicines);
+            this.errors = Collections.unmodifiableList(errors);
+            this.lines = lines;
+        }
+
+        public List<MedicineID> getMedicines() {
+            return medicines;
+        }
+
+        public List<LineError> getErrors() {
+            return errors;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.InvalidMedicineException;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static pogrebenko.lab3db.model.medicine.format.FormatUtil.*;
+
+/**
+ * Streaming reader of the length-prefixed binary medicine rows, see {@link BinaryMedicineWriter}.
+ * Row is read fully by its length first, so invalid row doesn't break reading of the next ones.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class BinaryMedicineReader implements MedicineReader {
+    private final DataInputStream in;
+    private boolean finished = false;
+
+    /**
+     * Creates binary reader, and checks the format header.
+     *
+     * @param in input to read from (should be buffered), it's closed along with this reader.
+     * @throws IOException if some I/O error happened, or input isn't in the binary format.
+     */
+    public BinaryMedicineReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        checkHeader(this.in, BinaryMedicineWriter.magic, BinaryMedicineWriter.version, "binary medicine");
+    }
+
+    @Override
+    public MedicineID read() throws IOException, InvalidMedicineException {
+        if (finished) {
+            return null;
+        }
+
+        int length = in.readInt();
+
+        if (length == -1) {
+            finished = true;
+            return null;
+        }
+
+        if (length < 0) {
+            throw new IOException("Corrupted data: invalid row length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        DataInputStream row = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        return newMedicine(
+                readString(row),
+                readString(row),
+                readString(row),
+                toDate(row.readLong()),
+                toDate(row.readLong()),
+                row.readInt(),
+                row.readBoolean(),
+                row.readInt()
+        );
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
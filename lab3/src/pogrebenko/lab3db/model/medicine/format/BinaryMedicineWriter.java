@@ -0,0 +1,98 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.Medicine;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static pogrebenko.lab3db.model.medicine.format.FormatUtil.noId;
+import static pogrebenko.lab3db.model.medicine.format.FormatUtil.toMillis;
+import static pogrebenko.lab3db.model.medicine.format.FormatUtil.writeString;
+
+/**
+ * Streaming writer of the length-prefixed binary medicine rows.
+ * <p>
+ * Format: magic 'MEDB', version (short), then rows, each as its length (int) and the row bytes:
+ * name, form, producer (UTF-8 length + bytes, -1 for null), expiration and production dates
+ * (epoch millis, Long.MIN_VALUE for null), cost (int), prescription only (byte), ID (int, Integer.MIN_VALUE if none).
+ * Rows end with the length -1, so truncated files are detected.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class BinaryMedicineWriter implements MedicineWriter {
+    final static int magic = 0x4D454442;
+    final static short version = 1;
+
+    private final DataOutputStream out;
+    // Reusable buffer of the single encoded row.
+    private final ByteArrayOutputStream rowBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream row = new DataOutputStream(rowBytes);
+    private long count = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates binary writer, and writes the format header.
+     *
+     * @param out output to write to (should be buffered), it's closed along with this writer.
+     * @throws IOException if some I/O error happened.
+     */
+    public BinaryMedicineWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.out.writeInt(magic);
+        this.out.writeShort(version);
+    }
+
+    /**
+     * Writes the medicine as the next row.
+     *
+     * @param medicine medicine to write.
+     * @throws IOException if some I/O error happened.
+     */
+    @Override
+    public void write(Medicine medicine) throws IOException {
+        rowBytes.reset();
+        writeString(row, medicine.getName());
+        writeString(row, medicine.getForm());
+        writeString(row, medicine.getProducer());
+        row.writeLong(toMillis(medicine.getExpirationDate()));
+        row.writeLong(toMillis(medicine.getProductionDate()));
+        row.writeInt(medicine.getCost());
+        row.writeBoolean(medicine.getPrescriptionOnly());
+        row.writeInt(medicine instanceof MedicineID medicineID && medicineID.getId() != null
+                ? medicineID.getId()
+                : noId
+        );
+
+        out.writeInt(rowBytes.size());
+        rowBytes.writeTo(out);
+        count++;
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Writes the end of the rows, and closes the output.
+     *
+     * @throws IOException if some I/O error happened.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try (out) {
+            out.writeInt(-1);
+        }
+    }
+}
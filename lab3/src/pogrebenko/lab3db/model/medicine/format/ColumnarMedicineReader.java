@@ -0,0 +1,183 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.InvalidMedicineException;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static pogrebenko.lab3db.model.medicine.format.FormatUtil.*;
+
+/**
+ * Streaming reader of the columnar medicine format, see {@link ColumnarMedicineWriter}.
+ * Whole row group is read at once, then medicines are returned one by one.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class ColumnarMedicineReader implements MedicineReader {
+    private final DataInputStream in;
+    private boolean finished = false;
+
+    // Columns of the current group.
+    private int groupRows = 0;
+    private int row = 0;
+    private String[] names;
+    private String[] forms;
+    private String[] producers;
+    private long[] expirationDates;
+    private long[] productionDates;
+    private int[] costs;
+    private byte[] prescriptionOnly;
+    private int[] ids;
+
+    /**
+     * Creates columnar reader, and checks the format header.
+     *
+     * @param in input to read from (should be buffered), it's closed along with this reader.
+     * @throws IOException if some I/O error happened, or input isn't in the columnar format.
+     */
+    public ColumnarMedicineReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        checkHeader(this.in, ColumnarMedicineWriter.magic, ColumnarMedicineWriter.version, "columnar medicine");
+    }
+
+    @Override
+    public MedicineID read() throws IOException, InvalidMedicineException {
+        if (row >= groupRows && !readGroup()) {
+            return null;
+        }
+
+        int i = row++;
+
+        return newMedicine(
+                names[i],
+                forms[i],
+                producers[i],
+                toDate(expirationDates[i]),
+                toDate(productionDates[i]),
+                costs[i],
+                (prescriptionOnly[i / 8] & (1 << (i % 8))) != 0,
+                ids[i]
+        );
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Reads the next row group.
+     *
+     * @return false if there are no more groups.
+     * @throws IOException if some I/O error happened, or data is corrupted.
+     */
+    private boolean readGroup() throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        int rows = in.readInt();
+
+        if (rows == 0) {
+            finished = true;
+            return false;
+        }
+
+        if (rows < 0) {
+            throw new IOException("Corrupted data: invalid group size " + rows);
+        }
+
+        names = readDictionaryColumn(rows);
+        forms = readDictionaryColumn(rows);
+        producers = readDictionaryColumn(rows);
+        expirationDates = readLongs(rows);
+        productionDates = readLongs(rows);
+        costs = readInts(rows);
+        prescriptionOnly = new byte[(rows + 7) / 8];
+        in.readFully(prescriptionOnly);
+        ids = readInts(rows);
+
+        groupRows = rows;
+        row = 0;
+
+        return true;
+    }
+
+    /**
+     * Reads dictionary-encoded string column. Rows share the dictionary strings.
+     *
+     * @param rows number of rows in the group.
+     * @return column values.
+     * @throws IOException if some I/O error happened, or data is corrupted.
+     */
+    private String[] readDictionaryColumn(int rows) throws IOException {
+        int dictionarySize = in.readInt();
+
+        if (dictionarySize < 0 || dictionarySize > rows) {
+            throw new IOException("Corrupted data: invalid dictionary size " + dictionarySize);
+        }
+
+        String[] dictionary = new String[dictionarySize];
+
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary[i] = readString(in);
+        }
+
+        int indexSize = ColumnarMedicineWriter.getIndexSize(dictionarySize);
+        String[] values = new String[rows];
+
+        for (int i = 0; i < rows; i++) {
+            int index = switch (indexSize) {
+                case 1 -> in.readUnsignedByte();
+                case 2 -> in.readUnsignedShort();
+                default -> in.readInt();
+            };
+
+            if (index < 0 || index >= dictionarySize) {
+                throw new IOException("Corrupted data: invalid dictionary index " + index);
+            }
+
+            values[i] = dictionary[index];
+        }
+
+        return values;
+    }
+
+    /**
+     * Reads long column.
+     *
+     * @param rows number of rows in the group.
+     * @return column values.
+     * @throws IOException if some I/O error happened.
+     */
+    private long[] readLongs(int rows) throws IOException {
+        long[] values = new long[rows];
+
+        for (int i = 0; i < rows; i++) {
+            values[i] = in.readLong();
+        }
+
+        return values;
+    }
+
+    /**
+     * Reads int column.
+     *
+     * @param rows number of rows in the group.
+     * @return column values.
+     * @throws IOException if some I/O error happened.
+     */
+    private int[] readInts(int rows) throws IOException {
+        int[] values = new int[rows];
+
+        for (int i = 0; i < rows; i++) {
+            values[i] = in.readInt();
+        }
+
+        return values;
+    }
+}
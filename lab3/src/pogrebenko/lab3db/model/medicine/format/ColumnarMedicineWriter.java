@@ -0,0 +1,232 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.Medicine;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static pogrebenko.lab3db.model.medicine.format.FormatUtil.noId;
+import static pogrebenko.lab3db.model.medicine.format.FormatUtil.toMillis;
+import static pogrebenko.lab3db.model.medicine.format.FormatUtil.writeString;
+
+/**
+ * Streaming writer of the columnar medicine format.
+ * <p>
+ * Medicines are buffered into row groups, each group is written column by column, so memory usage
+ * is limited by the group size. String columns (name, form, producer) are dictionary-encoded per group:
+ * dictionary of distinct values, then index of the value for each row (1, 2 or 4 bytes, by dictionary size).
+ * <p>
+ * Format: magic 'MEDC', version (short), then groups: row count (int), name, form, producer columns,
+ * expiration and production date columns (epoch millis, Long.MIN_VALUE for null), cost column (int),
+ * prescription only column (bit set), ID column (int, Integer.MIN_VALUE if none). Groups end with the row count 0.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class ColumnarMedicineWriter implements MedicineWriter {
+    final static int magic = 0x4D454443;
+    final static short version = 1;
+    // Default number of rows in the single group.
+    private final static int defaultGroupSize = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int groupSize;
+    // Medicines of the current group.
+    private final ArrayList<Medicine> group;
+    // Reusable dictionary of the string column.
+    private final HashMap<String, Integer> dictionary = new HashMap<>();
+    private final ArrayList<String> dictionaryValues = new ArrayList<>();
+    private long count = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates columnar writer with default group size, and writes the format header.
+     *
+     * @param out output to write to (should be buffered), it's closed along with this writer.
+     * @throws IOException if some I/O error happened.
+     */
+    public ColumnarMedicineWriter(OutputStream out) throws IOException {
+        this(out, defaultGroupSize);
+    }
+
+    /**
+     * Creates columnar writer, and writes the format header.
+     *
+     * @param out       output to write to (should be buffered), it's closed along with this writer.
+     * @param groupSize number of rows in the single group.
+     * @throws IOException if some I/O error happened.
+     */
+    public ColumnarMedicineWriter(OutputStream out, int groupSize) throws IOException {
+        if (groupSize <= 0) {
+            throw new IllegalArgumentException("Invalid group size: " + groupSize);
+        }
+
+        this.out = new DataOutputStream(out);
+        this.groupSize = groupSize;
+        this.group = new ArrayList<>(Math.min(groupSize, defaultGroupSize));
+        this.out.writeInt(magic);
+        this.out.writeShort(version);
+    }
+
+    /**
+     * Adds the medicine to the current group, and writes the group once it's full.
+     *
+     * @param medicine medicine to write.
+     * @throws IOException if some I/O error happened.
+     */
+    @Override
+    public void write(Medicine medicine) throws IOException {
+        group.add(medicine);
+        count++;
+
+        if (group.size() >= groupSize) {
+            writeGroup();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Writes the last group and the end of the groups, and closes the output.
+     *
+     * @throws IOException if some I/O error happened.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try (out) {
+            writeGroup();
+            out.writeInt(0);
+        }
+    }
+
+    /**
+     * Writes the current group column by column.
+     *
+     * @throws IOException if some I/O error happened.
+     */
+    private void writeGroup() throws IOException {
+        if (group.isEmpty()) {
+            return;
+        }
+
+        out.writeInt(group.size());
+        writeDictionaryColumn(0);
+        writeDictionaryColumn(1);
+        writeDictionaryColumn(2);
+
+        for (Medicine medicine : group) {
+            out.writeLong(toMillis(medicine.getExpirationDate()));
+        }
+
+        for (Medicine medicine : group) {
+            out.writeLong(toMillis(medicine.getProductionDate()));
+        }
+
+        for (Medicine medicine : group) {
+            out.writeInt(medicine.getCost());
+        }
+
+        byte[] prescriptionOnly = new byte[(group.size() + 7) / 8];
+
+        for (int i = 0; i < group.size(); i++) {
+            if (group.get(i).getPrescriptionOnly()) {
+                prescriptionOnly[i / 8] |= (byte) (1 << (i % 8));
+            }
+        }
+
+        out.write(prescriptionOnly);
+
+        for (Medicine medicine : group) {
+            out.writeInt(medicine instanceof MedicineID medicineID && medicineID.getId() != null
+                    ? medicineID.getId()
+                    : noId
+            );
+        }
+
+        group.clear();
+    }
+
+    /**
+     * Writes dictionary-encoded string column of the current group.
+     *
+     * @param column 0 for name, 1 for form, 2 for producer.
+     * @throws IOException if some I/O error happened.
+     */
+    private void writeDictionaryColumn(int column) throws IOException {
+        dictionary.clear();
+        dictionaryValues.clear();
+        int[] indices = new int[group.size()];
+
+        for (int i = 0; i < group.size(); i++) {
+            String value = getColumnValue(group.get(i), column);
+            Integer index = dictionary.get(value);
+
+            if (index == null) {
+                index = dictionaryValues.size();
+                dictionary.put(value, index);
+                dictionaryValues.add(value);
+            }
+
+            indices[i] = index;
+        }
+
+        out.writeInt(dictionaryValues.size());
+
+        for (String value : dictionaryValues) {
+            writeString(out, value);
+        }
+
+        int indexSize = getIndexSize(dictionaryValues.size());
+
+        for (int index : indices) {
+            switch (indexSize) {
+                case 1 -> out.writeByte(index);
+                case 2 -> out.writeShort(index);
+                default -> out.writeInt(index);
+            }
+        }
+    }
+
+    /**
+     * Returns the value of the string column.
+     *
+     * @param medicine medicine.
+     * @param column   0 for name, 1 for form, 2 for producer.
+     * @return column value.
+     */
+    private static String getColumnValue(Medicine medicine, int column) {
+        return switch (column) {
+            case 0 -> medicine.getName();
+            case 1 -> medicine.getForm();
+            default -> medicine.getProducer();
+        };
+    }
+
+    /**
+     * Returns size of the dictionary index in bytes.
+     *
+     * @param dictionarySize number of values in the dictionary.
+     * @return 1, 2 or 4.
+     */
+    static int getIndexSize(int dictionarySize) {
+        if (dictionarySize <= 1 << 8) {
+            return 1;
+        }
+
+        return dictionarySize <= 1 << 16 ? 2 : 4;
+    }
+}
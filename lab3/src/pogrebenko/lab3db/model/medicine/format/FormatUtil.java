@@ -0,0 +1,163 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.InvalidMedicineException;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Util methods shared by the binary medicine formats.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+final class FormatUtil {
+    // Marks null date in the binary formats.
+    final static long nullDate = Long.MIN_VALUE;
+    // Marks medicine without ID in the binary formats.
+    final static int noId = Integer.MIN_VALUE;
+
+    /**
+     * Private constructor that throws an exception to prevent instantiation.
+     */
+    private FormatUtil() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Writes nullable string as its UTF-8 length (-1 for null) and UTF-8 bytes.
+     * Unlike DataOutput.writeUTF, string isn't limited by 64KB.
+     *
+     * @param out output to write to.
+     * @param str string to write.
+     * @throws IOException if some I/O error happened.
+     */
+    static void writeString(DataOutput out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads nullable string, written by writeString.
+     *
+     * @param in input to read from.
+     * @return read string.
+     * @throws IOException if some I/O error happened, or data is corrupted.
+     */
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+
+        if (length == -1) {
+            return null;
+        }
+
+        if (length < 0) {
+            throw new IOException("Corrupted data: invalid string length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Converts nullable date to millis.
+     *
+     * @param date date to convert.
+     * @return date millis, or nullDate.
+     */
+    static long toMillis(Date date) {
+        return date == null ? nullDate : date.getTime();
+    }
+
+    /**
+     * Converts millis to nullable date.
+     *
+     * @param millis date millis, or nullDate.
+     * @return date or null.
+     */
+    static Date toDate(long millis) {
+        return millis == nullDate ? null : new Date(millis);
+    }
+
+    /**
+     * Creates medicine from the read fields. Null dates are left unset,
+     * so the date order check is done only if both dates are present.
+     *
+     * @param name               medicine name.
+     * @param form               medicine form.
+     * @param producer           medicine producer.
+     * @param expirationDate     medicine expiration date, may be null.
+     * @param productionDate     medicine production date, may be null.
+     * @param cost               medicine cost.
+     * @param isPrescriptionOnly is medicine for prescription only.
+     * @param id                 medicine ID, or noId.
+     * @return created medicine.
+     * @throws InvalidMedicineException if invalid fields were read.
+     */
+    static MedicineID newMedicine(
+            String name,
+            String form,
+            String producer,
+            Date expirationDate,
+            Date productionDate,
+            int cost,
+            boolean isPrescriptionOnly,
+            int id
+    ) throws InvalidMedicineException {
+        MedicineID medicine = new MedicineID();
+        medicine.setName(name);
+        medicine.setForm(form);
+        medicine.setProducer(producer);
+
+        if (expirationDate != null) {
+            medicine.setExpirationDate(expirationDate);
+        }
+
+        if (productionDate != null) {
+            medicine.setProductionDate(productionDate);
+        }
+
+        medicine.setCost(cost);
+        medicine.setPrescriptionOnly(isPrescriptionOnly);
+
+        if (id != noId) {
+            medicine.setId(id);
+        }
+
+        return medicine;
+    }
+
+    /**
+     * Checks the format header.
+     *
+     * @param in      input to read from.
+     * @param magic   expected magic number of the format.
+     * @param version expected version of the format.
+     * @param format  name of the format for the error message.
+     * @throws IOException if header is invalid.
+     */
+    static void checkHeader(DataInput in, int magic, short version, String format) throws IOException {
+        if (in.readInt() != magic) {
+            throw new IOException("File is not in the " + format + " format!");
+        }
+
+        short fileVersion = in.readShort();
+
+        if (fileVersion != version) {
+            throw new IOException(String.format("Unsupported %s format version: %d", format, fileVersion));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.Medicine;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Date;
+
+/**
+ * Streaming JSON writer of the medicines: writes JSON array, one object per medicine.
+ * <p>
+ * Each medicine is encoded into the reusable buffer, which is then written to the output,
+ * so no intermediate strings are created per field. Strings are escaped according to RFC 8259.
+ * Output should be buffered (e.g. BufferedWriter), writer doesn't buffer the whole export.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class JsonMedicineWriter implements MedicineWriter {
+    // Hex digits for the unicode escapes of the control chars.
+    private final static char[] hexDigits = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    // Reusable buffer of the single encoded medicine.
+    private final StringBuilder buffer = new StringBuilder(256);
+    private long count = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates JSON writer, and writes the array beginning.
+     *
+     * @param out output to write to, it's closed along with this writer.
+     * @throws IOException if some I/O error happened.
+     */
+    public JsonMedicineWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write("[");
+    }
+
+    /**
+     * Converts single medicine to the JSON string.
+     *
+     * @param medicine medicine to convert.
+     * @return JSON representation of the medicine.
+     */
+    public static String toJson(Medicine medicine) {
+        StringBuilder json = new StringBuilder(256);
+        encode(json, medicine);
+
+        return json.toString();
+    }
+
+    /**
+     * Converts medicines to the JSON array string.
+     *
+     * @param medicines medicines to convert.
+     * @return JSON representation of the medicines.
+     */
+    public static String toJson(Iterable<? extends Medicine> medicines) {
+        StringWriter json = new StringWriter();
+
+        try (JsonMedicineWriter writer = new JsonMedicineWriter(json)) {
+            for (Medicine medicine : medicines) {
+                writer.write(medicine);
+            }
+        } catch (IOException e) {
+            // Not possible for StringWriter.
+            throw new IllegalStateException(e);
+        }
+
+        return json.toString();
+    }
+
+    /**
+     * Writes the medicine as the next array element.
+     *
+     * @param medicine medicine to write.
+     * @throws IOException if some I/O error happened.
+     */
+    @Override
+    public void write(Medicine medicine) throws IOException {
+        buffer.setLength(0);
+        buffer.append(count == 0 ? " \n" : ",\n");
+        encode(buffer, medicine);
+
+        out.append(buffer);
+        count++;
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Writes the array ending, and closes the output.
+     *
+     * @throws IOException if some I/O error happened.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try (out) {
+            out.write("\n]");
+        }
+    }
+
+    /**
+     * Encodes medicine as pretty-printed JSON object.
+     *
+     * @param json     buffer to encode to.
+     * @param medicine medicine to encode.
+     */
+    private static void encode(StringBuilder json, Medicine medicine) {
+        encode(json, medicine, true);
+    }
+
+    /**
+     * Encodes medicine as JSON object.
+     *
+     * @param json     buffer to encode to.
+     * @param medicine medicine to encode.
+     * @param pretty   pretty-printed (field per line), or compact (single line) object.
+     */
+    static void encode(StringBuilder json, Medicine medicine, boolean pretty) {
+        String next = pretty ? ",\n\t\"" : ",\"";
+        String colon = pretty ? "\": " : "\":";
+
+        json.append(pretty ? "{\n\t\"" : "{\"").append("name").append(colon);
+        appendString(json, medicine.getName());
+        json.append(next).append("form").append(colon);
+        appendString(json, medicine.getForm());
+        json.append(next).append("producer").append(colon);
+        appendString(json, medicine.getProducer());
+        json.append(next).append("expirationDate").append(colon);
+        appendDate(json, medicine.getExpirationDate());
+        json.append(next).append("productionDate").append(colon);
+        appendDate(json, medicine.getProductionDate());
+        json.append(next).append("cost").append(colon).append(medicine.getCost());
+        // Written as string, as it always was, so existing consumers of the export won't break.
+        json.append(next).append("prescriptionOnly").append(colon)
+                .append('"').append(medicine.getPrescriptionOnly()).append('"');
+
+        if (medicine instanceof MedicineID medicineID && medicineID.getId() != null) {
+            json.append(next).append("ID").append(colon).append(medicineID.getId());
+            // Pretty ID objects were always closed on the separate line, keep it as it was.
+            json.append(pretty ? " \n}" : "}");
+        } else {
+            json.append('}');
+        }
+    }
+
+    /**
+     * Appends date in the medicine date format, or null.
+     *
+     * @param json buffer to encode to.
+     * @param date date to append.
+     */
+    private static void appendDate(StringBuilder json, Date date) {
+        if (date == null) {
+            json.append("null");
+            return;
+        }
+
+        json.append('"').append(Medicine.DateFmt.format(date)).append('"');
+    }
+
+    /**
+     * Appends escaped JSON string, or null.
+     *
+     * @param json buffer to encode to.
+     * @param str  string to append.
+     */
+    private static void appendString(StringBuilder json, String str) {
+        if (str == null) {
+            json.append("null");
+            return;
+        }
+
+        json.append('"');
+
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                case '\b' -> json.append("\\b");
+                case '\f' -> json.append("\\f");
+                default -> {
+                    if (c < 0x20) {
+                        json.append("\\u00").append(hexDigits[c >> 4]).append(hexDigits[c & 0xF]);
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+
+        json.append('"');
+    }
+}
@@ -0,0 +1,95 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.MedicineContainer.ExportType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Creates medicine writers and readers for the export formats.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class MedicineFormats {
+    // Size of the file buffers.
+    private final static int bufferSize = 64 * 1024;
+
+    /**
+     * Private constructor that throws an exception to prevent instantiation.
+     */
+    private MedicineFormats() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Creates writer of the given format to the given file.
+     *
+     * @param type     export format.
+     * @param fileName file to write to (created or truncated).
+     * @return medicine writer.
+     * @throws IOException if some I/O error happened.
+     */
+    public static MedicineWriter newWriter(ExportType type, String fileName) throws IOException {
+        Path path = Path.of(fileName);
+
+        if (type == ExportType.JSON) {
+            return new JsonMedicineWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+        }
+
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), bufferSize);
+
+        try {
+            return switch (type) {
+                case BINARY -> new BinaryMedicineWriter(out);
+                case NDJSON_GZ -> new NdjsonMedicineWriter(out);
+                case COLUMNAR -> new ColumnarMedicineWriter(out);
+                default -> throw new IllegalArgumentException("Unsupported export format: " + type);
+            };
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates reader of the given format from the given file.
+     *
+     * @param type     export format (JSON isn't supported).
+     * @param fileName file to read from.
+     * @return medicine reader.
+     * @throws IOException if some I/O error happened, or file is not in the given format.
+     */
+    public static MedicineReader newReader(ExportType type, String fileName) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(Path.of(fileName)), bufferSize);
+
+        try {
+            return switch (type) {
+                case BINARY -> new BinaryMedicineReader(in);
+                case NDJSON_GZ -> new NdjsonMedicineReader(in);
+                case COLUMNAR -> new ColumnarMedicineReader(in);
+                default -> throw new IllegalArgumentException("Unsupported import format: " + type);
+            };
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks if medicines may be imported from the given format.
+     *
+     * @param type export format.
+     * @return true if there is reader of the format.
+     */
+    public static boolean isImportable(ExportType type) {
+        return type != null && type != ExportType.JSON;
+    }
+}
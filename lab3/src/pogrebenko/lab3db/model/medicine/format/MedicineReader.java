@@ -0,0 +1,27 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.InvalidMedicineException;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Streaming reader of the medicines from some export format.
+ * Medicines are read one by one, so import of any size needs constant memory (except the read medicines).
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public interface MedicineReader extends Closeable {
+    /**
+     * Reads the next medicine. If the medicine is invalid, it's skipped by the reader,
+     * so the next call reads the next medicine.
+     *
+     * @return read medicine, or null if there are no more medicines.
+     * @throws IOException              if some I/O error happened, or data is corrupted.
+     * @throws InvalidMedicineException if the read medicine is invalid.
+     */
+    MedicineID read() throws IOException, InvalidMedicineException;
+}
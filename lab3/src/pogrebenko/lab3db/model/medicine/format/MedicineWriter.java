@@ -0,0 +1,40 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.Medicine;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Streaming writer of the medicines into some export format.
+ * Medicines are written one by one right to the output, so export of any size needs constant memory.
+ * Writer isn't thread-safe, but may be passed between threads (e.g. filled on the DB thread, closed on the FX one).
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public interface MedicineWriter extends Closeable {
+    /**
+     * Writes the medicine.
+     *
+     * @param medicine medicine to write.
+     * @throws IOException if some I/O error happened.
+     */
+    void write(Medicine medicine) throws IOException;
+
+    /**
+     * Returns number of the written medicines.
+     *
+     * @return number of the written medicines.
+     */
+    long getCount();
+
+    /**
+     * Finishes the export (writes the format ending, if any), and closes the output.
+     *
+     * @throws IOException if some I/O error happened.
+     */
+    @Override
+    void close() throws IOException;
+}
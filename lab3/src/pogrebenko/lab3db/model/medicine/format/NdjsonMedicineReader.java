@@ -0,0 +1,320 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.InvalidMedicineException;
+import pogrebenko.lab3db.model.medicine.Medicine;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader of the gzip-compressed newline-delimited JSON, see {@link NdjsonMedicineWriter}.
+ * <p>
+ * Each line is parsed by the small parser of the flat JSON objects (string, number, boolean and null values),
+ * that is enough for the medicine objects. Unknown fields are ignored, empty lines are skipped.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class NdjsonMedicineReader implements MedicineReader {
+    // Size of the gzip and the text buffers.
+    private final static int bufferSize = 64 * 1024;
+
+    private final BufferedReader in;
+    // Number of the current line, for the error messages.
+    private long lineNumber = 0;
+
+    /**
+     * Creates NDJSON reader.
+     *
+     * @param in input to read compressed data from, it's closed along with this reader.
+     * @throws IOException if some I/O error happened, or input isn't gzip-compressed.
+     */
+    public NdjsonMedicineReader(InputStream in) throws IOException {
+        this.in = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(in, bufferSize), StandardCharsets.UTF_8),
+                bufferSize
+        );
+    }
+
+    @Override
+    public MedicineID read() throws IOException, InvalidMedicineException {
+        String line;
+
+        do {
+            line = in.readLine();
+            lineNumber++;
+
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+
+        return new LineParser(line, lineNumber).parse();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Parser of the single line (flat JSON object) into medicine.
+     */
+    private static final class LineParser {
+        private final String line;
+        private final long lineNumber;
+        private int pos = 0;
+
+        private String name = null;
+        private String form = null;
+        private String producer = null;
+        private Date expirationDate = null;
+        private Date productionDate = null;
+        private int cost = 0;
+        private boolean isPrescriptionOnly = false;
+        private int id = FormatUtil.noId;
+
+        /**
+         * Creates line parser.
+         *
+         * @param line       line to parse.
+         * @param lineNumber number of the line.
+         */
+        LineParser(String line, long lineNumber) {
+            this.line = line;
+            this.lineNumber = lineNumber;
+        }
+
+        /**
+         * Parses the line.
+         *
+         * @return parsed medicine.
+         * @throws InvalidMedicineException if line isn't a valid medicine object.
+         */
+        MedicineID parse() throws InvalidMedicineException {
+            expect('{');
+
+            if (peek() == '}') {
+                pos++;
+            } else {
+                do {
+                    String key = parseString();
+                    expect(':');
+                    setField(key, parseValue());
+                } while (tryConsume(','));
+
+                expect('}');
+            }
+
+            if (peek() != 0) {
+                throw error("unexpected data after the object");
+            }
+
+            return FormatUtil.newMedicine(
+                    name, form, producer, expirationDate, productionDate, cost, isPrescriptionOnly, id
+            );
+        }
+
+        /**
+         * Sets the parsed field value.
+         *
+         * @param key   field name.
+         * @param value field value (String, Long, Boolean or null).
+         * @throws InvalidMedicineException if value has invalid type or format.
+         */
+        private void setField(String key, Object value) throws InvalidMedicineException {
+            try {
+                switch (key) {
+                    case "name" -> name = (String) value;
+                    case "form" -> form = (String) value;
+                    case "producer" -> producer = (String) value;
+                    case "expirationDate" -> expirationDate = parseDate(value);
+                    case "productionDate" -> productionDate = parseDate(value);
+                    case "cost" -> cost = Math.toIntExact((Long) value);
+                    // Written as string by the writers, but JSON boolean is accepted as well.
+                    case "prescriptionOnly" -> isPrescriptionOnly = value instanceof Boolean bool
+                            ? bool
+                            : Boolean.parseBoolean((String) value);
+                    case "ID" -> id = value == null ? FormatUtil.noId : Math.toIntExact((Long) value);
+                    default -> {
+                        // Unknown fields are ignored.
+                    }
+                }
+            } catch (ClassCastException | ArithmeticException | NullPointerException e) {
+                throw error(String.format("invalid value of the field '%s'", key));
+            }
+        }
+
+        /**
+         * Parses nullable date in the medicine date format.
+         *
+         * @param value date string or null.
+         * @return parsed date or null.
+         * @throws InvalidMedicineException if date is invalid.
+         */
+        private Date parseDate(Object value) throws InvalidMedicineException {
+            if (value == null) {
+                return null;
+            }
+
+            try {
+                return Medicine.DateFmt.parse((String) value);
+            } catch (ParseException e) {
+                throw error("invalid date " + value);
+            }
+        }
+
+        /**
+         * Parses JSON value.
+         *
+         * @return String, Long, Boolean or null.
+         * @throws InvalidMedicineException if value is invalid.
+         */
+        private Object parseValue() throws InvalidMedicineException {
+            char c = peek();
+
+            if (c == '"') {
+                return parseString();
+            }
+
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                int start = pos;
+                pos++;
+
+                while (pos < line.length() && Character.isDigit(line.charAt(pos))) {
+                    pos++;
+                }
+
+                try {
+                    return Long.parseLong(line, start, pos, 10);
+                } catch (NumberFormatException e) {
+                    throw error("invalid number");
+                }
+            }
+
+            for (String literal : new String[]{"null", "true", "false"}) {
+                if (line.startsWith(literal, pos)) {
+                    pos += literal.length();
+                    return literal.equals("null") ? null : Boolean.valueOf(literal);
+                }
+            }
+
+            throw error("unexpected value");
+        }
+
+        /**
+         * Parses JSON string with escapes.
+         *
+         * @return parsed string.
+         * @throws InvalidMedicineException if string is invalid.
+         */
+        private String parseString() throws InvalidMedicineException {
+            expect('"');
+            StringBuilder str = new StringBuilder();
+
+            while (pos < line.length()) {
+                char c = line.charAt(pos++);
+
+                if (c == '"') {
+                    return str.toString();
+                }
+
+                if (c != '\\') {
+                    str.append(c);
+                    continue;
+                }
+
+                if (pos >= line.length()) {
+                    break;
+                }
+
+                char escaped = line.charAt(pos++);
+
+                switch (escaped) {
+                    case '"', '\\', '/' -> str.append(escaped);
+                    case 'n' -> str.append('\n');
+                    case 'r' -> str.append('\r');
+                    case 't' -> str.append('\t');
+                    case 'b' -> str.append('\b');
+                    case 'f' -> str.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > line.length()) {
+                            throw error("invalid unicode escape");
+                        }
+
+                        try {
+                            str.append((char) Integer.parseInt(line, pos, pos + 4, 16));
+                        } catch (NumberFormatException e) {
+                            throw error("invalid unicode escape");
+                        }
+
+                        pos += 4;
+                    }
+                    default -> throw error("invalid escape");
+                }
+            }
+
+            throw error("unterminated string");
+        }
+
+        /**
+         * Skips whitespaces and returns the next char.
+         *
+         * @return next char, or 0 at the end of the line.
+         */
+        private char peek() {
+            while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+
+            return pos < line.length() ? line.charAt(pos) : 0;
+        }
+
+        /**
+         * Consumes the next char if it's the given one.
+         *
+         * @param c char to consume.
+         * @return true if consumed.
+         */
+        private boolean tryConsume(char c) {
+            if (peek() == c) {
+                pos++;
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Consumes the given char.
+         *
+         * @param c char to consume.
+         * @throws InvalidMedicineException if the next char is different.
+         */
+        private void expect(char c) throws InvalidMedicineException {
+            if (!tryConsume(c)) {
+                throw error(String.format("'%c' expected", c));
+            }
+        }
+
+        /**
+         * Creates parse error.
+         *
+         * @param message error description.
+         * @return parse error.
+         */
+        private InvalidMedicineException error(String message) {
+            return new InvalidMedicineException(
+                    String.format("Invalid JSON at line %d, position %d: %s", lineNumber, pos, message)
+            );
+        }
+    }
+}
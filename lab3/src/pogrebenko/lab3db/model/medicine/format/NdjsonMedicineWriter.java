@@ -0,0 +1,73 @@
+package pogrebenko.lab3db.model.medicine.format;
+
+import pogrebenko.lab3db.model.medicine.Medicine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming writer of the gzip-compressed newline-delimited JSON: one compact JSON object per line,
+ * same fields as in {@link JsonMedicineWriter}.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class NdjsonMedicineWriter implements MedicineWriter {
+    // Size of the gzip and the text buffers.
+    private final static int bufferSize = 64 * 1024;
+
+    private final Writer out;
+    // Reusable buffer of the single encoded medicine.
+    private final StringBuilder buffer = new StringBuilder(256);
+    private long count = 0;
+
+    /**
+     * Creates NDJSON writer.
+     *
+     * @param out output to write compressed data to, it's closed along with this writer.
+     * @throws IOException if some I/O error happened.
+     */
+    public NdjsonMedicineWriter(OutputStream out) throws IOException {
+        this.out = new BufferedWriter(
+                new OutputStreamWriter(new GZIPOutputStream(out, bufferSize), StandardCharsets.UTF_8),
+                bufferSize
+        );
+    }
+
+    /**
+     * Writes the medicine as the next line.
+     *
+     * @param medicine medicine to write.
+     * @throws IOException if some I/O error happened.
+     */
+    @Override
+    public void write(Medicine medicine) throws IOException {
+        buffer.setLength(0);
+        JsonMedicineWriter.encode(buffer, medicine, false);
+        buffer.append('\n');
+
+        out.append(buffer);
+        count++;
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Finishes the gzip stream, and closes the output.
+     *
+     * @throws IOException if some I/O error happened.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
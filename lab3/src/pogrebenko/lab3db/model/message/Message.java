@@ -1,6 +1,7 @@
 package pogrebenko.lab3db.model.message;
 
-import java.text.SimpleDateFormat;
+import pogrebenko.lab3db.model.util.DateCodec;
+
 import java.util.Date;
 
 /**
@@ -11,12 +12,14 @@ import java.util.Date;
  * @since 1.3.0
  */
 public class Message {
-    // DateTime format for the log message.
-    public final static SimpleDateFormat messageDateFmt = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
+    // DateTime format for the log message. Thread-safe, messages are logged from different threads.
+    public final static DateCodec messageDateFmt = DateCodec.ofDateTime("dd-MM-uuuu HH:mm:ss");
     // Log message.
     private String message;
     // Log Time
     private Date messageTime;
+    // ID of the message in DB, 0 if message isn't read from DB.
+    private int messageId;
 
     /**
      * Constructs new empty message.
@@ -70,6 +73,24 @@ public class Message {
         this.messageTime = messageTime;
     }
 
+    /**
+     * Returns ID of the message in DB.
+     *
+     * @return message ID, 0 if message isn't read from DB.
+     */
+    public int getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * Sets ID of the message in DB.
+     *
+     * @param messageId message ID.
+     */
+    public void setMessageId(int messageId) {
+        this.messageId = messageId;
+    }
+
     /**
      * Converts the message object to the string.
      *
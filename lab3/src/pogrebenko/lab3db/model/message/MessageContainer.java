@@ -2,7 +2,7 @@ package pogrebenko.lab3db.model.message;
 
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.logging.Logger;
@@ -37,8 +37,10 @@ public class MessageContainer {
     public void exportToLog(String fileName) throws IOException {
         LOGGER.info("Exporting data to the log file...");
 
-        try (FileWriter fileWriter = new FileWriter(fileName)) {
-            fileWriter.write(toLog());
+        try (MessageLogWriter writer = new MessageLogWriter(new FileOutputStream(fileName))) {
+            for (Message message : messages) {
+                writer.write(message);
+            }
         }
     }
 
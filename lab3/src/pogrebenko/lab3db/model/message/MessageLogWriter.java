@@ -0,0 +1,65 @@
+package pogrebenko.lab3db.model.message;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming writer of the messages into the log file, one message per line.
+ * Messages are written right to the output, so log of any size needs constant memory.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class MessageLogWriter implements Closeable {
+    // Size of the text buffer.
+    private final static int bufferSize = 64 * 1024;
+
+    private final Writer out;
+    private long count = 0;
+
+    /**
+     * Creates log writer.
+     *
+     * @param out output to write log to, it's closed along with this writer.
+     */
+    public MessageLogWriter(OutputStream out) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), bufferSize);
+    }
+
+    /**
+     * Writes the message as the next line.
+     *
+     * @param message message to write.
+     * @throws IOException if some I/O error happened.
+     */
+    public void write(Message message) throws IOException {
+        out.write(message.toString());
+        out.write('\n');
+        count++;
+    }
+
+    /**
+     * Returns number of the written messages.
+     *
+     * @return number of the written messages.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Flushes and closes the output.
+     *
+     * @throws IOException if some I/O error happened.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
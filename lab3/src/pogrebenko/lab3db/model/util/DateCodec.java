@@ -0,0 +1,160 @@
+package pogrebenko.lab3db.model.util;
+
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe date codec, that converts Date objects to strings and back, built on java.time.
+ * Unlike SimpleDateFormat, single instance may be shared by all threads (e.g. parallel import).
+ * <p>
+ * Data files usually contain just a few distinct dates, so parsed and formatted values are interned
+ * in the small bounded caches. Once the cache is full, new values are converted without caching.
+ * Cache holds epoch millis, not Date objects (Date is mutable), so each parse returns new Date.
+ * Dates with time (e.g. message times) almost never repeat to the millisecond, so their codecs don't cache.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class DateCodec {
+    // Default max number of the cached values in each direction.
+    private final static int defaultCacheSize = 4_096;
+
+    // Parses strings (may be more lenient to the input than output pattern, e.g. single digit days).
+    private final DateTimeFormatter parser;
+    // Formats dates.
+    private final DateTimeFormatter formatter;
+    private final String pattern;
+    // Date without time (parsed as start of the day), or date with time.
+    private final boolean dateOnly;
+    private final ZoneId zone;
+    private final int cacheSize;
+    private final ConcurrentHashMap<String, Long> parsed = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, String> formatted = new ConcurrentHashMap<>();
+
+    /**
+     * Creates date codec.
+     *
+     * @param parsePattern  pattern to parse strings with.
+     * @param formatPattern pattern to format dates with.
+     * @param dateOnly      true for date without time, false for date with time.
+     * @param zone          time zone of the dates.
+     * @param cacheSize     max number of the cached values in each direction, 0 to disable caching.
+     */
+    private DateCodec(String parsePattern, String formatPattern, boolean dateOnly, ZoneId zone, int cacheSize) {
+        // STRICT resolver rejects invalid dates (e.g. 31/02), instead of rolling them over as lenient parsing does.
+        this.parser = DateTimeFormatter.ofPattern(parsePattern).withResolverStyle(ResolverStyle.STRICT);
+        this.formatter = DateTimeFormatter.ofPattern(formatPattern);
+        this.pattern = formatPattern;
+        this.dateOnly = dateOnly;
+        this.zone = zone;
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Creates codec for the dates without time, in the system time zone.
+     *
+     * @param parsePattern  pattern to parse strings with (use 'u' for year, 'y' requires era in STRICT mode).
+     * @param formatPattern pattern to format dates with.
+     * @return date codec.
+     */
+    public static DateCodec ofDate(String parsePattern, String formatPattern) {
+        return new DateCodec(parsePattern, formatPattern, true, ZoneId.systemDefault(), defaultCacheSize);
+    }
+
+    /**
+     * Creates codec for the dates with time, in the system time zone.
+     *
+     * @param pattern pattern to parse strings with, and format dates with (use 'u' for year).
+     * @return date codec.
+     */
+    public static DateCodec ofDateTime(String pattern) {
+        return new DateCodec(pattern, pattern, false, ZoneId.systemDefault(), 0);
+    }
+
+    /**
+     * Parses date from the given string.
+     *
+     * @param text string to parse.
+     * @return new Date object.
+     * @throws ParseException if string is null, or isn't a valid date.
+     */
+    public Date parse(String text) throws ParseException {
+        if (text == null) {
+            throw new ParseException("Date string cannot be null!", 0);
+        }
+
+        Long millis = cacheSize == 0 ? null : parsed.get(text);
+
+        if (millis == null) {
+            try {
+                millis = toMillis(text);
+            } catch (DateTimeParseException e) {
+                ParseException error = new ParseException(e.getMessage(), e.getErrorIndex());
+                error.initCause(e);
+
+                throw error;
+            }
+
+            if (parsed.size() < cacheSize) {
+                parsed.putIfAbsent(text, millis);
+            }
+        }
+
+        return new Date(millis);
+    }
+
+    /**
+     * Formats the given date.
+     *
+     * @param date date to format.
+     * @return formatted date.
+     */
+    public String format(Date date) {
+        long millis = date.getTime();
+        String text = cacheSize == 0 ? null : formatted.get(millis);
+
+        if (text == null) {
+            LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+            text = formatter.format(dateOnly ? dateTime.toLocalDate() : dateTime);
+
+            if (formatted.size() < cacheSize) {
+                formatted.putIfAbsent(millis, text);
+            }
+        }
+
+        return text;
+    }
+
+    /**
+     * Returns the pattern, that dates are formatted with.
+     *
+     * @return format pattern.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Parses string into epoch millis.
+     *
+     * @param text string to parse.
+     * @return epoch millis.
+     * @throws DateTimeParseException if string isn't a valid date.
+     */
+    private long toMillis(String text) throws DateTimeParseException {
+        if (dateOnly) {
+            return LocalDate.parse(text, parser).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+
+        return LocalDateTime.parse(text, parser).atZone(zone).toInstant().toEpochMilli();
+    }
+}
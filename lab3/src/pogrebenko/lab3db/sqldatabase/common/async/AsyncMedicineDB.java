@@ -0,0 +1,363 @@
+package pogrebenko.lab3db.sqldatabase.common.async;
+
+import pogrebenko.lab3db.model.medicine.Medicine;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+import pogrebenko.lab3db.sqldatabase.common.contract.IMedicineDB;
+import pogrebenko.lab3db.sqldatabase.common.contract.RowVisitor;
+import pogrebenko.lab3db.sqldatabase.common.metrics.AsyncLatencyStats;
+import pogrebenko.lab3db.sqldatabase.common.metrics.ImportReport;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.FilterField;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.MedicineQuery;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous layer over IMedicineDB.
+ * Every call is executed on the dedicated background executor, and returned future is completed
+ * on the callback executor (e.g. Platform::runLater), so callbacks may safely touch the UI.
+ * Futures are completed exceptionally with the original exception (e.g. SQLException), not with CompletionException.
+ * <p>
+ * Reads are executed in parallel (up to number of threads), so they are not ordered.
+ * Writes are executed one by one on the single write thread, in the order they were called,
+ * so quick edits of the same medicine are committed in the order they were made.
+ * Reads aren't ordered with writes, if order matters, chain the futures.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class AsyncMedicineDB implements AutoCloseable {
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+
+    // Synchronous medicine DB, all calls are delegated to it.
+    private final IMedicineDB medicineDB;
+    // Executes DB reads.
+    private final ExecutorService executor;
+    // Executes DB writes in the call order.
+    private final ExecutorService writeExecutor;
+    // Completes returned futures.
+    private final Executor callbackExecutor;
+    private final LatencyRecorder latency = new LatencyRecorder();
+
+    /**
+     * Creates async medicine DB.
+     * Java 17 has no virtual threads, so fixed pool of daemon threads is used.
+     * Number of threads should match the number of DB connections, more threads will just wait for connection.
+     * Single write thread is created in addition to them.
+     *
+     * @param medicineDB       medicine DB to wrap.
+     * @param threads          number of the background read threads.
+     * @param callbackExecutor executor to complete returned futures on.
+     */
+    public AsyncMedicineDB(IMedicineDB medicineDB, int threads, Executor callbackExecutor) {
+        LOGGER.info("Creating async medicine DB with " + threads + " threads...");
+        AtomicInteger counter = new AtomicInteger(0);
+
+        this.medicineDB = medicineDB;
+        this.callbackExecutor = callbackExecutor;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "db-medicine-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-medicine-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Deletes all values from medicine table in DB.
+     *
+     * @return future, that completes once table is truncated.
+     */
+    public CompletableFuture<Void> truncateTable() {
+        return run(medicineDB::truncateTable);
+    }
+
+    /**
+     * Writes medicines array to DB.
+     *
+     * @param medicines medicines to insert via batch.
+     * @return future, that completes once medicines are written.
+     */
+    public CompletableFuture<Void> writeMedicines(ArrayList<? extends Medicine> medicines) {
+        return run(() -> medicineDB.writeMedicines(medicines));
+    }
+
+    /**
+     * Imports csv\tsv file into DB via the import pipeline (parsing overlaps with batch inserts).
+     * Write thread is occupied by the call, pipeline uses its own parser and writer threads.
+     * Writes called later are executed once import is done.
+     *
+     * @param fileName csv\tsv file to import.
+     * @return future with import report.
+     */
+    public CompletableFuture<ImportReport> importFile(String fileName) {
+        return write(() -> new MedicineImportPipeline(medicineDB).run(fileName));
+    }
+
+    /**
+     * Writes medicine to DB.
+     *
+     * @param medicine medicine to insert to DB.
+     * @return future with index of the inserted medicine.
+     */
+    public CompletableFuture<Integer> writeMedicine(Medicine medicine) {
+        return write(() -> medicineDB.writeMedicine(medicine));
+    }
+
+    /**
+     * Returns medicines filtered by the specified parameters.
+     *
+     * @param filter the medicine field by which the filtering will be performed.
+     * @param param  the medicine field value by which the filtering will be performed.
+     * @return future with medicines from DB that have been filtered by the specified field and its value.
+     */
+    public CompletableFuture<ArrayList<MedicineID>> getFilteredMedicines(FilterField filter, Object param) {
+        return supply(() -> medicineDB.getFilteredMedicines(filter, param));
+    }
+
+    /**
+     * Returns medicines found by the composite query (several predicates, sort and limit).
+     *
+     * @param query search query.
+     * @return future with medicines from DB that match the query.
+     */
+    public CompletableFuture<ArrayList<MedicineID>> searchMedicines(MedicineQuery query) {
+        return supply(() -> medicineDB.searchMedicines(query));
+    }
+
+    /**
+     * Streams medicines filtered by the specified parameters into the visitor.
+     * Visitor is called on the background thread, only the returned future is completed on the callback executor.
+     * Exceptions of the visitor complete the future exceptionally as well.
+     *
+     * @param filter  the medicine field by which the filtering will be performed.
+     * @param param   the medicine field value by which the filtering will be performed.
+     * @param visitor visitor of the medicines.
+     * @return future with number of visited medicines.
+     */
+    public CompletableFuture<Long> visitMedicines(
+            FilterField filter,
+            Object param,
+            RowVisitor<? super MedicineID, ? extends Exception> visitor
+    ) {
+        return supply(() -> medicineDB.visitMedicines(filter, param, visitor));
+    }
+
+    /**
+     * Streams medicines filtered by the specified parameters into the visitor, and closes the resource
+     * on the background thread once the medicines are visited, even if visiting failed.
+     * So resource (e.g. file writer) is finished on the thread that produced the rows, not on the callback executor.
+     *
+     * @param filter   the medicine field by which the filtering will be performed.
+     * @param param    the medicine field value by which the filtering will be performed.
+     * @param visitor  visitor of the medicines.
+     * @param resource resource to close after visiting.
+     * @return future with number of visited medicines.
+     */
+    public CompletableFuture<Long> visitMedicines(
+            FilterField filter,
+            Object param,
+            RowVisitor<? super MedicineID, ? extends Exception> visitor,
+            AutoCloseable resource
+    ) {
+        return supply(() -> {
+            try (resource) {
+                return medicineDB.visitMedicines(filter, param, visitor);
+            }
+        });
+    }
+
+    /**
+     * Returns all medicines from DB.
+     *
+     * @return future with medicines from DB.
+     */
+    public CompletableFuture<ArrayList<MedicineID>> getMedicines() {
+        return supply(medicineDB::getMedicines);
+    }
+
+    /**
+     * Returns single page of medicines ordered by ID.
+     *
+     * @param afterId  ID after which the page starts (0 for the first page).
+     * @param pageSize max number of medicines in the page.
+     * @return future with page of medicines.
+     */
+    public CompletableFuture<ArrayList<MedicineID>> getMedicinesPage(int afterId, int pageSize) {
+        return supply(() -> medicineDB.getMedicinesPage(afterId, pageSize));
+    }
+
+    /**
+     * Returns medicine with given ID.
+     *
+     * @param medicineID id of the medicine to get from DB.
+     * @return future with medicine from DB.
+     */
+    public CompletableFuture<MedicineID> getMedicine(int medicineID) {
+        return supply(() -> medicineDB.getMedicine(medicineID));
+    }
+
+    /**
+     * Updates medicine with given ID with new parameters.
+     *
+     * @param medicine updated medicine to insert into DB.
+     * @return future, that completes once medicine is updated.
+     */
+    public CompletableFuture<Void> updateMedicine(MedicineID medicine) {
+        return run(() -> medicineDB.updateMedicine(medicine));
+    }
+
+    /**
+     * Deletes medicine with given ID.
+     *
+     * @param medicineID ID of the medicine to delete.
+     * @return future, that completes once medicine is deleted.
+     */
+    public CompletableFuture<Void> deleteMedicine(int medicineID) {
+        return run(() -> medicineDB.deleteMedicine(medicineID));
+    }
+
+    /**
+     * Returns the wrapped synchronous medicine DB.
+     *
+     * @return medicine DB.
+     */
+    public IMedicineDB getMedicineDB() {
+        return medicineDB;
+    }
+
+    /**
+     * Returns latency of the calls: how long the caller was blocked, and how long the calls actually took.
+     *
+     * @return async latency stats.
+     */
+    public AsyncLatencyStats getLatencyStats() {
+        return latency.snapshot();
+    }
+
+    /**
+     * Stops the background threads. Calls that are already running are interrupted.
+     */
+    @Override
+    public void close() {
+        LOGGER.info("Closing async medicine DB...");
+        executor.shutdownNow();
+        writeExecutor.shutdownNow();
+    }
+
+    /**
+     * Runs DB write without result on the write thread.
+     *
+     * @param call DB call.
+     * @return future, that completes on the callback executor.
+     */
+    private CompletableFuture<Void> run(DBAction call) {
+        return write(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs DB write on the write thread, after all previously called writes.
+     *
+     * @param call DB call.
+     * @param <T>  type of the call result.
+     * @return future with the call result, that completes on the callback executor.
+     */
+    private <T> CompletableFuture<T> write(DBCall<T> call) {
+        return supply(call, writeExecutor);
+    }
+
+    /**
+     * Runs DB read in background.
+     *
+     * @param call DB call.
+     * @param <T>  type of the call result.
+     * @return future with the call result, that completes on the callback executor.
+     */
+    private <T> CompletableFuture<T> supply(DBCall<T> call) {
+        return supply(call, executor);
+    }
+
+    /**
+     * Runs DB call on the given executor.
+     *
+     * @param call         DB call.
+     * @param callExecutor executor to run the call on.
+     * @param <T>          type of the call result.
+     * @return future with the call result, that completes on the callback executor.
+     */
+    private <T> CompletableFuture<T> supply(DBCall<T> call, ExecutorService callExecutor) {
+        long start = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        CompletableFuture.supplyAsync(() -> {
+            long executionStart = System.nanoTime();
+
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                latency.recordExecution(System.nanoTime() - executionStart);
+            }
+        }, callExecutor).whenCompleteAsync((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                        ? e.getCause()
+                        : e
+                );
+            }
+        }, callbackExecutor);
+
+        latency.recordCaller(System.nanoTime() - start);
+
+        return result;
+    }
+
+    /**
+     * DB call with result.
+     *
+     * @param <T> type of the call result.
+     */
+    @FunctionalInterface
+    interface DBCall<T> {
+        /**
+         * Executes the call.
+         *
+         * @return call result.
+         * @throws Exception on a database access error or visitor errors.
+         */
+        T get() throws Exception;
+    }
+
+    /**
+     * DB call without result.
+     */
+    @FunctionalInterface
+    interface DBAction {
+        /**
+         * Executes the call.
+         *
+         * @throws Exception on a database access error or other errors.
+         */
+        void run() throws Exception;
+    }
+}
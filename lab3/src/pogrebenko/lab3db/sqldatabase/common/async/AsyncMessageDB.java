@@ -0,0 +1,586 @@
+package pogrebenko.lab3db.sqldatabase.common.async;
+
+import pogrebenko.lab3db.model.message.Message;
+import pogrebenko.lab3db.sqldatabase.common.contract.IMessageDB;
+import pogrebenko.lab3db.sqldatabase.common.contract.RowVisitor;
+import pogrebenko.lab3db.sqldatabase.common.metrics.MessageWriterStats;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous batched writer over IMessageDB.
+ * Written messages are put into the bounded ring buffer, and the background thread writes them
+ * to DB in batches, so callers (e.g. UI thread) never wait for DB. Message time is taken on the client,
+ * when the message is written, not when it reaches DB.
+ * <p>
+ * Message equal to the last pending one isn't buffered again, its repeat counter is incremented instead.
+ * If the buffer is full, message is merged into any pending duplicate, or dropped otherwise,
+ * so error storm (e.g. on DB failures) doesn't multiply the load on DB. Number of dropped messages is written
+ * to DB with the next batch. Batch that cannot be written is dropped as well, it isn't retried.
+ * <p>
+ * Reads and truncation are passed to DB synchronously, pending messages are written (or discarded) before them.
+ * Pending messages are written by the writer thread, reader only waits for it.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class AsyncMessageDB implements IMessageDB, AutoCloseable {
+    // Max number of pending messages.
+    private final static int defaultCapacity = 1_024;
+    // Max number of messages in the single batch, writer wakes up once that many messages are pending.
+    private final static int defaultBatchSize = 100;
+    // Max time the message waits in the buffer.
+    private final static long defaultFlushIntervalMillis = 200;
+    // Max time close waits for the writer thread.
+    private final static long defaultCloseTimeoutMillis = 5_000;
+    // Max time flush waits for the writer thread.
+    private final static long defaultFlushTimeoutMillis = 5_000;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    // Synchronous message DB, all calls are delegated to it.
+    private final IMessageDB messageDB;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    // Guards the buffer and the counters.
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled once batch is full, flush is requested, or writer is closed.
+    private final Condition batchReady = lock.newCondition();
+    // Serializes DB writes, so messages are written in order.
+    private final Object writeLock = new Object();
+    // Ring buffer of pending messages, oldest one is at the head.
+    private final Pending[] ring;
+    private final Thread writer;
+    // Flush requests, completed by the writer thread once pending messages are written. Guarded by lock.
+    private final ArrayList<CompletableFuture<Void>> flushRequests = new ArrayList<>();
+
+    private int head = 0;
+    private int size = 0;
+    private boolean closed = false;
+    // Counters, guarded by lock.
+    private long accepted = 0;
+    private long written = 0;
+    private long batches = 0;
+    private long coalesced = 0;
+    private long dropped = 0;
+    private long failed = 0;
+    // Dropped messages that aren't reported to DB yet.
+    private long droppedUnreported = 0;
+
+    /**
+     * Creates async message writer with default buffer settings.
+     *
+     * @param messageDB message DB to wrap.
+     */
+    public AsyncMessageDB(IMessageDB messageDB) {
+        this(messageDB, defaultCapacity, defaultBatchSize, defaultFlushIntervalMillis);
+    }
+
+    /**
+     * Creates async message writer.
+     *
+     * @param messageDB           message DB to wrap.
+     * @param capacity            max number of pending messages.
+     * @param batchSize           max number of messages in the single batch.
+     * @param flushIntervalMillis max time the message waits in the buffer.
+     */
+    public AsyncMessageDB(IMessageDB messageDB, int capacity, int batchSize, long flushIntervalMillis) {
+        if (capacity <= 0 || batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Capacity, batch size and flush interval must be positive!");
+        }
+
+        LOGGER.info(String.format("Creating async message writer, capacity %d, batch size %d...", capacity, batchSize));
+        this.messageDB = messageDB;
+        this.ring = new Pending[capacity];
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.writer = new Thread(this::runWriter, "db-message-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Prepares all required tables in DB for work.
+     *
+     * @throws SQLException on a database access error or other errors.
+     */
+    public void initialize() throws SQLException {
+        messageDB.initialize();
+    }
+
+    /**
+     * Discards pending messages and deletes all values from messages table in DB.
+     *
+     * @throws SQLException on a database access error or other errors.
+     */
+    public void truncateTable() throws SQLException {
+        synchronized (writeLock) {
+            lock.lock();
+
+            try {
+                clearPending();
+            } finally {
+                lock.unlock();
+            }
+
+            messageDB.truncateTable();
+        }
+    }
+
+    /**
+     * Puts message into the buffer, it's written to DB later. Never blocks on DB.
+     *
+     * @param message message to write.
+     * @return always 0, message ID isn't known until the message is written.
+     */
+    public int writeMessage(Message message) {
+        offer(message.getMessage(), System.currentTimeMillis());
+
+        return 0;
+    }
+
+    /**
+     * Puts messages into the buffer, they are written to DB later. Never blocks on DB.
+     *
+     * @param messages messages to write.
+     */
+    public void writeMessages(ArrayList<? extends Message> messages) {
+        long now = System.currentTimeMillis();
+
+        for (Message message : messages) {
+            Date time = message.getMessageTime();
+            offer(message.getMessage(), time == null ? now : time.getTime());
+        }
+    }
+
+    /**
+     * Writes pending messages, and returns all messages from DB.
+     *
+     * @return array of messages from DB.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ArrayList<Message> getMessages() throws SQLException {
+        flush();
+
+        return messageDB.getMessages();
+    }
+
+    /**
+     * Writes pending messages, and returns single page of messages from the time range, newest first.
+     *
+     * @param from     start of the time range (inclusive), or null.
+     * @param to       end of the time range (exclusive), or null.
+     * @param after    last message of the previous page (read from DB), or null for the first page.
+     * @param pageSize max number of messages in the page.
+     * @return page of messages.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ArrayList<Message> getMessagesPage(Date from, Date to, Message after, int pageSize) throws SQLException {
+        flush();
+
+        return messageDB.getMessagesPage(from, to, after, pageSize);
+    }
+
+    /**
+     * Writes pending messages, and streams messages from the time range into the visitor, newest first.
+     *
+     * @param from    start of the time range (inclusive), or null.
+     * @param to      end of the time range (exclusive), or null.
+     * @param visitor visitor of the messages.
+     * @param <E>     type of the visitor exception.
+     * @return number of visited messages.
+     * @throws SQLException on a database access error or other errors.
+     * @throws E            on visitor errors.
+     */
+    public <E extends Exception> long visitMessages(
+            Date from,
+            Date to,
+            RowVisitor<? super Message, E> visitor
+    ) throws SQLException, E {
+        flush();
+
+        return messageDB.visitMessages(from, to, visitor);
+    }
+
+    /**
+     * Deletes up to limit oldest messages, that are older than the given time.
+     *
+     * @param before time to delete messages before (exclusive).
+     * @param limit  max number of messages to delete.
+     * @return number of deleted messages.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public int deleteMessagesBefore(Date before, int limit) throws SQLException {
+        return messageDB.deleteMessagesBefore(before, limit);
+    }
+
+    /**
+     * Asks the writer thread to write pending messages to DB, and waits until they are written.
+     * If writer is closed (or flush is called by the writer itself), messages are written on the calling thread.
+     */
+    public void flush() {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        lock.lock();
+
+        try {
+            if (!closed && Thread.currentThread() != writer) {
+                flushRequests.add(flushed);
+                batchReady.signal();
+            } else {
+                flushed = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (flushed == null) {
+            writePending();
+            return;
+        }
+
+        try {
+            flushed.get(defaultFlushTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.log(Level.WARNING, "Pending messages weren't flushed in time!", e);
+        }
+    }
+
+    /**
+     * Returns snapshot of the writer counters.
+     *
+     * @return message writer stats.
+     */
+    public MessageWriterStats getStats() {
+        lock.lock();
+
+        try {
+            return new MessageWriterStats(accepted, written, batches, coalesced, dropped, failed, size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the writer thread and writes pending messages. Messages written after close are dropped.
+     */
+    @Override
+    public void close() {
+        LOGGER.info("Closing async message writer...");
+        lock.lock();
+
+        try {
+            closed = true;
+            batchReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            writer.join(defaultCloseTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writePending();
+        ArrayList<CompletableFuture<Void>> requests;
+        lock.lock();
+
+        try {
+            requests = takeFlushRequests();
+        } finally {
+            lock.unlock();
+        }
+
+        completeFlushRequests(requests);
+        LOGGER.info("Async message writer closed: " + getStats());
+    }
+
+    /**
+     * Puts message into the buffer, or merges it into the pending duplicate, or drops it.
+     *
+     * @param text message text.
+     * @param time message time, epoch millis.
+     */
+    private void offer(String text, long time) {
+        lock.lock();
+
+        try {
+            accepted++;
+
+            if (closed) {
+                countDropped();
+                return;
+            }
+
+            if (size > 0 && Objects.equals(ring[index(size - 1)].text, text)) {
+                ring[index(size - 1)].repeats++;
+                coalesced++;
+                return;
+            }
+
+            if (size == ring.length) {
+                // Overload, buffer is full.
+                Pending duplicate = findPending(text);
+
+                if (duplicate != null) {
+                    duplicate.repeats++;
+                    coalesced++;
+                } else {
+                    countDropped();
+                }
+
+                return;
+            }
+
+            ring[index(size)] = new Pending(text, time);
+            size++;
+
+            if (size >= batchSize) {
+                batchReady.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Background writer loop: writes pending messages once batch is full, flush is requested,
+     * or flush interval is elapsed.
+     */
+    private void runWriter() {
+        while (true) {
+            ArrayList<CompletableFuture<Void>> requests;
+            lock.lock();
+
+            try {
+                if (!closed && size < batchSize && flushRequests.isEmpty()) {
+                    batchReady.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+
+                if (closed) {
+                    return;
+                }
+
+                // Taken before the write, so messages pending at the request time are written by it.
+                requests = takeFlushRequests();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            writePending();
+            completeFlushRequests(requests);
+        }
+    }
+
+    /**
+     * Takes all flush requests. Must be called under the lock.
+     *
+     * @return flush requests.
+     */
+    private ArrayList<CompletableFuture<Void>> takeFlushRequests() {
+        ArrayList<CompletableFuture<Void>> requests = new ArrayList<>(flushRequests);
+        flushRequests.clear();
+
+        return requests;
+    }
+
+    /**
+     * Completes flush requests, so waiting readers are woken up.
+     *
+     * @param requests flush requests.
+     */
+    private static void completeFlushRequests(ArrayList<CompletableFuture<Void>> requests) {
+        for (CompletableFuture<Void> request : requests) {
+            request.complete(null);
+        }
+    }
+
+    /**
+     * Writes all pending messages to DB in batches. Failed batch is dropped, and the rest is left for the next try.
+     */
+    private void writePending() {
+        synchronized (writeLock) {
+            ArrayList<Message> batch;
+
+            while (!(batch = drain()).isEmpty()) {
+                try {
+                    messageDB.writeMessages(batch);
+                    countWritten(batch.size());
+                } catch (SQLException | RuntimeException e) {
+                    // Logged to console and file only, writing it to DB would feed the storm.
+                    LOGGER.log(Level.WARNING, String.format("Cannot write %d messages to DB!", batch.size()), e);
+                    countFailed(batch.size());
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes up to batch size pending messages from the buffer.
+     * Repeated messages are written once, with number of repeats, dropped messages are reported as a message.
+     *
+     * @return batch of messages, empty if nothing is pending.
+     */
+    private ArrayList<Message> drain() {
+        lock.lock();
+
+        try {
+            int count = Math.min(size, batchSize);
+            ArrayList<Message> batch = new ArrayList<>(count + 1);
+
+            for (int i = 0; i < count; i++) {
+                batch.add(ring[head].toMessage());
+                ring[head] = null;
+                head = index(1);
+            }
+
+            size -= count;
+
+            if (droppedUnreported > 0) {
+                Message report = new Message(String.format(
+                        "%d messages were dropped, message buffer was full", droppedUnreported
+                ));
+                report.setMessageTime(new Date());
+                batch.add(report);
+                droppedUnreported = 0;
+            }
+
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds pending message with the same text. Must be called under the lock.
+     *
+     * @param text message text.
+     * @return pending message, or null if there is no such message.
+     */
+    private Pending findPending(String text) {
+        for (int i = size - 1; i >= 0; i--) {
+            Pending pending = ring[index(i)];
+
+            if (Objects.equals(pending.text, text)) {
+                return pending;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Discards all pending messages. Must be called under the lock.
+     */
+    private void clearPending() {
+        for (int i = 0; i < size; i++) {
+            ring[index(i)] = null;
+        }
+
+        head = 0;
+        size = 0;
+        droppedUnreported = 0;
+    }
+
+    /**
+     * Counts the dropped message. Must be called under the lock.
+     */
+    private void countDropped() {
+        dropped++;
+        droppedUnreported++;
+    }
+
+    /**
+     * Counts the written batch.
+     *
+     * @param count number of messages in the batch.
+     */
+    private void countWritten(int count) {
+        lock.lock();
+
+        try {
+            written += count;
+            batches++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts the failed batch.
+     *
+     * @param count number of messages in the batch.
+     */
+    private void countFailed(int count) {
+        lock.lock();
+
+        try {
+            failed += count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns ring index of the pending message.
+     *
+     * @param offset offset of the message from the head.
+     * @return index in the ring.
+     */
+    private int index(int offset) {
+        return (head + offset) % ring.length;
+    }
+
+    /**
+     * Pending message.
+     */
+    private static final class Pending {
+        private final String text;
+        // Time of the first occurrence, epoch millis.
+        private final long time;
+        // Number of merged duplicates.
+        private int repeats = 0;
+
+        /**
+         * Creates pending message.
+         *
+         * @param text message text.
+         * @param time message time, epoch millis.
+         */
+        Pending(String text, long time) {
+            this.text = text;
+            this.time = time;
+        }
+
+        /**
+         * Creates message to write.
+         *
+         * @return message.
+         */
+        Message toMessage() {
+            Message message = new Message(
+                    repeats == 0 ? text : String.format("%s (repeated %d times)", text, repeats + 1)
+            );
+            message.setMessageTime(new Date(time));
+
+            return message;
+        }
+    }
+}
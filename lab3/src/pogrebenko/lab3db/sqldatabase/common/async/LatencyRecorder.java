@@ -0,0 +1,57 @@
+package pogrebenko.lab3db.sqldatabase.common.async;
+
+import pogrebenko.lab3db.sqldatabase.common.metrics.AsyncLatencyStats;
+
+/**
+ * Collects caller and execution latency of the async DB calls.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+class LatencyRecorder {
+    // All fields are guarded by "this".
+    private long calls = 0;
+    private long totalCallerNanos = 0;
+    private long maxCallerNanos = 0;
+    private long executions = 0;
+    private long totalExecutionNanos = 0;
+    private long maxExecutionNanos = 0;
+
+    /**
+     * Records time the caller thread spent on the call (submitting it).
+     *
+     * @param callerNanos time the caller thread spent on the call.
+     */
+    synchronized void recordCaller(long callerNanos) {
+        calls++;
+        totalCallerNanos += callerNanos;
+        maxCallerNanos = Math.max(maxCallerNanos, callerNanos);
+    }
+
+    /**
+     * Records time the call took on the background thread.
+     *
+     * @param executionNanos time the call took on the background thread.
+     */
+    synchronized void recordExecution(long executionNanos) {
+        executions++;
+        totalExecutionNanos += executionNanos;
+        maxExecutionNanos = Math.max(maxExecutionNanos, executionNanos);
+    }
+
+    /**
+     * Returns snapshot of the collected latency.
+     *
+     * @return async latency stats.
+     */
+    synchronized AsyncLatencyStats snapshot() {
+        return new AsyncLatencyStats(
+                calls,
+                calls == 0 ? 0 : totalCallerNanos / 1e6 / calls,
+                maxCallerNanos / 1e6,
+                executions == 0 ? 0 : totalExecutionNanos / 1e6 / executions,
+                maxExecutionNanos / 1e6
+        );
+    }
+}
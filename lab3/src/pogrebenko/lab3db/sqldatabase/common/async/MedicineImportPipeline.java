@@ -0,0 +1,440 @@
+package pogrebenko.lab3db.sqldatabase.common.async;
+
+import pogrebenko.lab3db.model.medicine.InvalidMedicineException;
+import pogrebenko.lab3db.model.medicine.MedicineContainer;
+import pogrebenko.lab3db.model.medicine.MedicineContainer.ExportType;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+import pogrebenko.lab3db.model.medicine.ParallelMedicineImporter;
+import pogrebenko.lab3db.model.medicine.format.MedicineFormats;
+import pogrebenko.lab3db.model.medicine.format.MedicineReader;
+import pogrebenko.lab3db.sqldatabase.common.contract.IMedicineDB;
+import pogrebenko.lab3db.sqldatabase.common.metrics.ImportReport;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static pogrebenko.lab3db.commonutil.CommonUtil.isFileExists;
+
+/**
+ * Pipelined import of the csv\tsv medicine file (or file in one of the importable export formats) into DB.
+ * <p>
+ * Parser threads put batches of parsed medicines into the bounded queue,
+ * and writer threads take them and insert each batch in its own transaction.
+ * So parsing overlaps with DB writes, and since the queue is bounded, parsers wait for the writers,
+ * and memory usage doesn't depend on the file size.
+ * <p>
+ * If any batch insert fails (with SQLException, or unexpected runtime error), import is aborted:
+ * parsers stop, queued batches are dropped, and the error is thrown. Batches that were already written stay in DB.
+ * Producers never wait for the queue forever: if all writers are stopped, import is aborted as well.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class MedicineImportPipeline {
+    // Number of medicines in the single insert batch.
+    private final static int defaultBatchSize = 1_000;
+    // Number of batches that may wait in the queue.
+    private final static int defaultQueueCapacity = 4;
+    // Number of writer threads (each holds DB connection while writing).
+    private final static int defaultWriters = 2;
+    // Time the producer waits for the free space in the queue, before it checks that writers are alive.
+    private final static long defaultOfferTimeoutMillis = 500;
+    // Marks the end of the queue for the writers, compared by identity.
+    private final static ArrayList<MedicineID> END = new ArrayList<>();
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    private final IMedicineDB medicineDB;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final int writers;
+    private final int parsers;
+
+    /**
+     * Creates import pipeline with default settings.
+     *
+     * @param medicineDB medicine DB to write to.
+     */
+    public MedicineImportPipeline(IMedicineDB medicineDB) {
+        this(
+                medicineDB,
+                defaultBatchSize,
+                defaultQueueCapacity,
+                defaultWriters,
+                Math.max(1, Runtime.getRuntime().availableProcessors() - defaultWriters)
+        );
+    }
+
+    /**
+     * Creates import pipeline.
+     *
+     * @param medicineDB    medicine DB to write to.
+     * @param batchSize     number of medicines in the single insert batch.
+     * @param queueCapacity number of batches that may wait in the queue.
+     * @param writers       number of writer threads.
+     * @param parsers       number of parser threads.
+     */
+    public MedicineImportPipeline(IMedicineDB medicineDB, int batchSize, int queueCapacity, int writers, int parsers) {
+        if (batchSize <= 0 || queueCapacity <= 0 || writers <= 0 || parsers <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid import settings: batchSize=%d, queueCapacity=%d, writers=%d, parsers=%d",
+                    batchSize,
+                    queueCapacity,
+                    writers,
+                    parsers
+            ));
+        }
+
+        this.medicineDB = medicineDB;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.writers = writers;
+        this.parsers = parsers;
+    }
+
+    /**
+     * Imports the given file into DB. Blocks until import is finished.
+     *
+     * @param fileName csv\tsv file, or file in one of the importable export formats.
+     * @return import report.
+     * @throws InvalidMedicineException if file doesn't exist, or has unsupported extension.
+     * @throws IOException              if some I/O error occurred.
+     * @throws SQLException             if any batch insert failed.
+     * @throws InterruptedException     if import was interrupted.
+     */
+    public ImportReport run(String fileName)
+            throws InvalidMedicineException, IOException, SQLException, InterruptedException {
+        ExportType type = ExportType.fromFileName(fileName);
+        boolean exported = MedicineFormats.isImportable(type);
+        // Checks that the file exists and is supported before any thread is started.
+        char delimiter = exported ? 0 : MedicineContainer.getSeparatedValuesDelimiter(fileName);
+
+        if (exported && !isFileExists(fileName)) {
+            throw new InvalidMedicineException("Given file doesn't exists: " + fileName);
+        }
+
+        LOGGER.info(String.format(
+                "Starting pipelined import of '%s': batchSize=%d, queueCapacity=%d, writers=%d, parsers=%d",
+                fileName,
+                batchSize,
+                queueCapacity,
+                writers,
+                parsers
+        ));
+
+        long start = System.nanoTime();
+        BlockingQueue<ArrayList<MedicineID>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        ExecutorService writerPool = newWriterPool();
+        List<Future<WriterStats>> writerResults = new ArrayList<>();
+
+        for (int i = 0; i < writers; i++) {
+            writerResults.add(writerPool.submit(() -> write(queue, failure)));
+        }
+
+        ParallelMedicineImporter.MedicineSink sink = batch -> {
+            if (failure.get() != null) {
+                throw new IllegalStateException("Import is aborted due to DB write error!");
+            }
+
+            if (!offer(queue, batch, writerResults)) {
+                throw new IllegalStateException("Import is aborted, all DB writers are stopped!");
+            }
+        };
+        ParseStats parsed = new ParseStats();
+
+        try {
+            parsed = exported
+                    ? readExported(fileName, type, sink)
+                    : parseSeparatedValues(fileName, delimiter, sink);
+        } catch (IllegalStateException e) {
+            // Parsers were stopped because of the write error, which is thrown below.
+            if (failure.get() == null) {
+                throw e;
+            }
+        } finally {
+            stopWriters(queue, writerPool, writerResults);
+        }
+
+        WriterStats total = collect(writerResults);
+        Exception error = failure.get();
+
+        if (error instanceof SQLException sqlError) {
+            throw sqlError;
+        }
+
+        if (error != null) {
+            throw (RuntimeException) error;
+        }
+
+        ImportReport report = new ImportReport(
+                parsed.lines,
+                total.rows,
+                parsed.rejected,
+                total.batches,
+                total.batches == 0 ? 0 : total.batchNanos / 1e6 / total.batches,
+                total.maxBatchNanos / 1e6,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        );
+        LOGGER.info("Import finished: " + report);
+
+        return report;
+    }
+
+    /**
+     * Parses csv\tsv file in parallel, and passes parsed batches to the sink. Invalid lines are logged.
+     *
+     * @param fileName  csv\tsv file to import.
+     * @param delimiter delimiter of the file.
+     * @param sink      receiver of the parsed batches.
+     * @return parse stats.
+     * @throws IOException          if some I/O error occurred.
+     * @throws InterruptedException if import was interrupted.
+     */
+    private ParseStats parseSeparatedValues(
+            String fileName,
+            char delimiter,
+            ParallelMedicineImporter.MedicineSink sink
+    ) throws IOException, InterruptedException {
+        ParallelMedicineImporter.Result result = new ParallelMedicineImporter(parsers)
+                .importFile(fileName, delimiter, sink, batchSize);
+
+        for (ParallelMedicineImporter.LineError error : result.getErrors()) {
+            error.getError().writeToLog(
+                    Level.WARNING,
+                    String.format("Error reading line %d of the file %s;", error.getLine(), fileName)
+            );
+        }
+
+        ParseStats stats = new ParseStats();
+        stats.lines = result.getLines();
+        stats.rejected = result.getErrors().size();
+
+        return stats;
+    }
+
+    /**
+     * Reads file in one of the export formats, and passes read batches to the sink. Invalid medicines are logged.
+     * Binary formats are decoded much faster than csv\tsv is parsed, so single reader thread is used.
+     *
+     * @param fileName file to import.
+     * @param type     format of the file.
+     * @param sink     receiver of the read batches.
+     * @return parse stats.
+     * @throws IOException          if some I/O error occurred.
+     * @throws InterruptedException if import was interrupted.
+     */
+    private ParseStats readExported(
+            String fileName,
+            ExportType type,
+            ParallelMedicineImporter.MedicineSink sink
+    ) throws IOException, InterruptedException {
+        ParseStats stats = new ParseStats();
+        ArrayList<MedicineID> batch = new ArrayList<>(batchSize);
+
+        try (MedicineReader reader = MedicineFormats.newReader(type, fileName)) {
+            while (true) {
+                MedicineID medicine;
+
+                try {
+                    medicine = reader.read();
+                } catch (InvalidMedicineException e) {
+                    stats.lines++;
+                    stats.rejected++;
+                    e.writeToLog(Level.WARNING, String.format("Error reading medicine of the file %s;", fileName));
+                    continue;
+                }
+
+                if (medicine == null) {
+                    break;
+                }
+
+                stats.lines++;
+                batch.add(medicine);
+
+                if (batch.size() >= batchSize) {
+                    sink.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+
+        return stats;
+    }
+
+    /**
+     * Writer loop: takes batches from the queue and inserts them, until the end of the queue.
+     * After the first failure batches are only drained, so parsers are never blocked forever.
+     *
+     * @param queue   queue of the parsed batches.
+     * @param failure first write error, SQLException or RuntimeException.
+     * @return stats of this writer.
+     * @throws InterruptedException if writer was interrupted.
+     */
+    private WriterStats write(
+            BlockingQueue<ArrayList<MedicineID>> queue,
+            AtomicReference<Exception> failure
+    ) throws InterruptedException {
+        WriterStats stats = new WriterStats();
+
+        while (true) {
+            ArrayList<MedicineID> batch = queue.take();
+
+            if (batch == END) {
+                return stats;
+            }
+
+            if (failure.get() != null) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+
+            try {
+                medicineDB.writeMedicines(batch);
+            } catch (SQLException | RuntimeException e) {
+                // Writer keeps draining the queue after the failure, so it must not die on unexpected errors.
+                LOGGER.log(Level.SEVERE, "Cannot write medicines batch, aborting import: " + e.getMessage(), e);
+                failure.compareAndSet(null, e);
+                continue;
+            }
+
+            long latency = System.nanoTime() - start;
+            stats.rows += batch.size();
+            stats.batches++;
+            stats.batchNanos += latency;
+            stats.maxBatchNanos = Math.max(stats.maxBatchNanos, latency);
+        }
+    }
+
+    /**
+     * Puts batch into the queue, waits for the free space while any writer is running.
+     *
+     * @param queue         queue of the parsed batches.
+     * @param batch         batch to put.
+     * @param writerResults writer futures.
+     * @return true if batch is queued, false if all writers are stopped.
+     * @throws InterruptedException if interrupted while waiting for the free space in the queue.
+     */
+    private static boolean offer(
+            BlockingQueue<ArrayList<MedicineID>> queue,
+            ArrayList<MedicineID> batch,
+            List<Future<WriterStats>> writerResults
+    ) throws InterruptedException {
+        while (!queue.offer(batch, defaultOfferTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            if (writerResults.stream().allMatch(Future::isDone)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Sends the end of the queue to every writer and shuts the writer pool down.
+     *
+     * @param queue         queue of the parsed batches.
+     * @param writerPool    writer pool.
+     * @param writerResults writer futures.
+     * @throws InterruptedException if interrupted while waiting for the free space in the queue.
+     */
+    private void stopWriters(
+            BlockingQueue<ArrayList<MedicineID>> queue,
+            ExecutorService writerPool,
+            List<Future<WriterStats>> writerResults
+    ) throws InterruptedException {
+        try {
+            for (int i = 0; i < writers; i++) {
+                // All writers are stopped already, nobody takes the end marks.
+                if (!offer(queue, END, writerResults)) {
+                    break;
+                }
+            }
+
+            writerPool.shutdown();
+        } catch (InterruptedException e) {
+            writerPool.shutdownNow();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the writers and merges their stats.
+     *
+     * @param writerResults writer futures.
+     * @return total stats.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static WriterStats collect(List<Future<WriterStats>> writerResults) throws InterruptedException {
+        WriterStats total = new WriterStats();
+
+        for (Future<WriterStats> result : writerResults) {
+            WriterStats stats;
+
+            try {
+                stats = result.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Import writer failed unexpectedly!", e.getCause());
+            }
+
+            total.rows += stats.rows;
+            total.batches += stats.batches;
+            total.batchNanos += stats.batchNanos;
+            total.maxBatchNanos = Math.max(total.maxBatchNanos, stats.maxBatchNanos);
+        }
+
+        return total;
+    }
+
+    /**
+     * Creates pool of the writer threads.
+     *
+     * @return writer pool.
+     */
+    private ExecutorService newWriterPool() {
+        AtomicInteger counter = new AtomicInteger(0);
+
+        return Executors.newFixedThreadPool(writers, runnable -> {
+            Thread thread = new Thread(runnable, "db-import-writer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stats of the file parsing.
+     */
+    private static final class ParseStats {
+        // Number of the data lines (medicines for the export formats), valid and invalid.
+        private long lines = 0;
+        private long rejected = 0;
+    }
+
+    /**
+     * Stats of the single writer, used by its thread only.
+     */
+    private static final class WriterStats {
+        private long rows = 0;
+        private long batches = 0;
+        private long batchNanos = 0;
+        private long maxBatchNanos = 0;
+    }
+}
@@ -0,0 +1,158 @@
+package pogrebenko.lab3db.sqldatabase.common.async;
+
+import pogrebenko.lab3db.model.message.MessageLogWriter;
+import pogrebenko.lab3db.sqldatabase.common.contract.IMessageDB;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background job, that periodically removes messages older than the max age from the message DB.
+ * Old messages may be archived first: they are appended to the archive log file, newest first.
+ * Messages are deleted in bounded batches with a pause between them, so the job never locks the table for long.
+ * <p>
+ * Messages written with the past time between archiving and deletion aren't archived.
+ * It doesn't happen with AsyncMessageDB, that stamps messages with the current time.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class MessageRetention implements AutoCloseable {
+    // Max number of messages deleted by the single statement.
+    private final static int defaultBatchSize = 1_000;
+    // Pause between the delete statements.
+    private final static long defaultBatchPauseMillis = 50;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    private final IMessageDB messageDB;
+    private final Duration maxAge;
+    // Archive log file, null if old messages are just deleted.
+    private final Path archiveFile;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "db-message-retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates retention job, it isn't started until start is called.
+     *
+     * @param messageDB   message DB to clean up.
+     * @param maxAge      max age of the kept messages.
+     * @param archiveFile archive log file to append old messages to, or null to just delete them.
+     */
+    public MessageRetention(IMessageDB messageDB, Duration maxAge, Path archiveFile) {
+        if (maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException("Max age of the messages must be positive: " + maxAge);
+        }
+
+        this.messageDB = messageDB;
+        this.maxAge = maxAge;
+        this.archiveFile = archiveFile;
+    }
+
+    /**
+     * Starts the job, first run is done right away.
+     *
+     * @param interval interval between the runs.
+     */
+    public void start(Duration interval) {
+        LOGGER.info(String.format("Starting message retention, max age %s, every %s...", maxAge, interval));
+        scheduler.scheduleWithFixedDelay(this::runLogged, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Archives (if archive file is set) and deletes messages older than the max age.
+     *
+     * @return number of deleted messages.
+     * @throws SQLException on a database access error or other errors.
+     * @throws IOException  if archive cannot be written, nothing is deleted then.
+     */
+    public long run() throws SQLException, IOException {
+        Date cutoff = new Date(System.currentTimeMillis() - maxAge.toMillis());
+
+        if (archiveFile != null) {
+            archive(cutoff);
+        }
+
+        long deleted = 0;
+        int batch;
+
+        while ((batch = messageDB.deleteMessagesBefore(cutoff, defaultBatchSize)) > 0) {
+            deleted += batch;
+
+            if (batch < defaultBatchSize) {
+                break;
+            }
+
+            try {
+                Thread.sleep(defaultBatchPauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        LOGGER.info(String.format("Message retention deleted %d messages before '%s'", deleted, cutoff));
+
+        return deleted;
+    }
+
+    /**
+     * Stops the job, waits for the current run to finish.
+     */
+    @Override
+    public void close() {
+        LOGGER.info("Stopping message retention...");
+        scheduler.shutdownNow();
+
+        try {
+            if (!scheduler.awaitTermination(defaultBatchPauseMillis * 100, TimeUnit.MILLISECONDS)) {
+                LOGGER.warning("Message retention is still running!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Appends messages older than the cutoff to the archive file.
+     *
+     * @param cutoff time to archive messages before (exclusive).
+     * @throws SQLException on a database access error or other errors.
+     * @throws IOException  if archive cannot be written.
+     */
+    private void archive(Date cutoff) throws SQLException, IOException {
+        try (MessageLogWriter writer = new MessageLogWriter(Files.newOutputStream(
+                archiveFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND
+        ))) {
+            messageDB.visitMessages(null, cutoff, writer::write);
+            LOGGER.info(String.format("Archived %d messages to: %s", writer.getCount(), archiveFile));
+        }
+    }
+
+    /**
+     * Runs the job on the scheduler thread, errors are logged, so next runs aren't cancelled.
+     */
+    private void runLogged() {
+        try {
+            run();
+        } catch (SQLException | IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Message retention failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package pogrebenko.lab3db.sqldatabase.common.cache;
+
+import pogrebenko.lab3db.model.medicine.Medicine;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+import pogrebenko.lab3db.sqldatabase.common.contract.IMedicineDB;
+import pogrebenko.lab3db.sqldatabase.common.contract.RowVisitor;
+import pogrebenko.lab3db.sqldatabase.common.metrics.CacheStats;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.BulkLoadMode;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.FilterField;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.MedicineQuery;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.logging.Logger;
+
+/**
+ * IMedicineDB decorator with read-through in-memory cache.
+ * <p>
+ * Two bounded LRU caches are kept: medicines by ID (getMedicine), and recent search results
+ * (getFilteredMedicines, searchMedicines). All writes go straight to DB, and invalidate the caches after:
+ * update and delete invalidate the medicine, and all search results (changed medicine may be in any of them),
+ * inserts invalidate search results, truncate invalidates everything.
+ * <p>
+ * Only changes made through this decorator are seen, so DB must not be changed by anyone else.
+ * Unfiltered results (whole table), pages and streams aren't cached, as well as results with too many rows.
+ * Medicines are mutable, so cache keeps its own copies, and every hit returns new copies.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class CachingMedicineDB implements IMedicineDB {
+    // Default max number of the cached medicines.
+    private final static int defaultMedicineCapacity = 10_000;
+    // Default max number of the cached search results.
+    private final static int defaultResultCapacity = 256;
+    // Default max number of rows in the cached search result.
+    private final static int defaultMaxResultRows = 1_000;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    // Medicine DB, all calls are delegated to it.
+    private final IMedicineDB medicineDB;
+    private final LruCache<Integer, MedicineID> medicines;
+    // Keys are lists of filter and its value, or query cache keys.
+    private final LruCache<Object, ArrayList<MedicineID>> results;
+    private final int maxResultRows;
+
+    /**
+     * Creates caching medicine DB with default cache sizes.
+     *
+     * @param medicineDB medicine DB to wrap.
+     */
+    public CachingMedicineDB(IMedicineDB medicineDB) {
+        this(medicineDB, defaultMedicineCapacity, defaultResultCapacity, defaultMaxResultRows);
+    }
+
+    /**
+     * Creates caching medicine DB.
+     *
+     * @param medicineDB       medicine DB to wrap.
+     * @param medicineCapacity max number of the cached medicines.
+     * @param resultCapacity   max number of the cached search results.
+     * @param maxResultRows    max number of rows in the cached search result, bigger results aren't cached.
+     */
+    public CachingMedicineDB(IMedicineDB medicineDB, int medicineCapacity, int resultCapacity, int maxResultRows) {
+        LOGGER.info(String.format(
+                "Creating medicine cache: %d medicines, %d results up to %d rows...",
+                medicineCapacity,
+                resultCapacity,
+                maxResultRows
+        ));
+
+        this.medicineDB = medicineDB;
+        this.medicines = new LruCache<>(medicineCapacity);
+        this.results = new LruCache<>(resultCapacity);
+        this.maxResultRows = maxResultRows;
+    }
+
+    /**
+     * Prepares all required tables in DB for work.
+     *
+     * @throws SQLException on a database access error or other errors.
+     */
+    public void initialize() throws SQLException {
+        medicineDB.initialize();
+    }
+
+    /**
+     * Deletes all values from medicine table in DB, and clears the caches.
+     *
+     * @throws SQLException on a database access error or other errors.
+     */
+    public void truncateTable() throws SQLException {
+        try {
+            medicineDB.truncateTable();
+        } finally {
+            medicines.invalidateAll();
+            results.invalidateAll();
+        }
+    }
+
+    /**
+     * Writes medicines array to DB, and clears cached search results.
+     *
+     * @param medicines medicines to insert via batch.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public void writeMedicines(ArrayList<? extends Medicine> medicines) throws SQLException {
+        try {
+            medicineDB.writeMedicines(medicines);
+        } finally {
+            results.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the way writeMedicines writes medicines to DB.
+     *
+     * @return bulk load mode.
+     */
+    public BulkLoadMode getBulkLoadMode() {
+        return medicineDB.getBulkLoadMode();
+    }
+
+    /**
+     * Sets the way writeMedicines writes medicines to DB.
+     *
+     * @param bulkLoadMode bulk load mode.
+     */
+    public void setBulkLoadMode(BulkLoadMode bulkLoadMode) {
+        medicineDB.setBulkLoadMode(bulkLoadMode);
+    }
+
+    /**
+     * Writes medicine to DB, and clears cached search results.
+     *
+     * @param medicine medicine to insert to DB.
+     * @return index of the inserted medicine.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public int writeMedicine(Medicine medicine) throws SQLException {
+        try {
+            return medicineDB.writeMedicine(medicine);
+        } finally {
+            results.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns medicines filtered by the specified parameters, from cache if possible.
+     *
+     * @param filter the medicine field by which the filtering will be performed.
+     * @param param  the medicine field value by which the filtering will be performed.
+     * @return array of medicines from DB that have been filtered by the specified field and its value.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ArrayList<MedicineID> getFilteredMedicines(FilterField filter, Object param) throws SQLException {
+        if (filter == FilterField.NONE) {
+            return medicineDB.getFilteredMedicines(filter, param);
+        }
+
+        Object key = getFilterKey(filter, param);
+        ArrayList<MedicineID> cached = results.get(key);
+
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        long generation = results.getGeneration();
+        ArrayList<MedicineID> loaded = medicineDB.getFilteredMedicines(filter, param);
+        cacheResult(key, loaded, generation);
+
+        return loaded;
+    }
+
+    /**
+     * Returns medicines found by the composite query, from cache if possible.
+     *
+     * @param query search query.
+     * @return array of medicines from DB that match the query.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ArrayList<MedicineID> searchMedicines(MedicineQuery query) throws SQLException {
+        // Query is mutable, so its immutable structural key (all predicates, params, sort and limit) is used.
+        Object key = query.getCacheKey();
+        ArrayList<MedicineID> cached = results.get(key);
+
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        long generation = results.getGeneration();
+        ArrayList<MedicineID> loaded = medicineDB.searchMedicines(query);
+        cacheResult(key, loaded, generation);
+
+        return loaded;
+    }
+
+    /**
+     * Streams medicines filtered by the specified parameters into the visitor, streams aren't cached.
+     *
+     * @param filter  the medicine field by which the filtering will be performed.
+     * @param param   the medicine field value by which the filtering will be performed.
+     * @param visitor visitor of the medicines.
+     * @param <E>     type of the visitor exception.
+     * @return number of visited medicines.
+     * @throws SQLException on a database access error or other errors.
+     * @throws E            on visitor errors.
+     */
+    public <E extends Exception> long visitMedicines(
+            FilterField filter,
+            Object param,
+            RowVisitor<? super MedicineID, E> visitor
+    ) throws SQLException, E {
+        return medicineDB.visitMedicines(filter, param, visitor);
+    }
+
+    /**
+     * Returns all medicines from DB, whole table isn't cached.
+     *
+     * @return array of medicines from DB.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ArrayList<MedicineID> getMedicines() throws SQLException {
+        return medicineDB.getMedicines();
+    }
+
+    /**
+     * Returns single page of medicines ordered by ID, pages aren't cached.
+     *
+     * @param afterId  ID after which the page starts (0 for the first page).
+     * @param pageSize max number of medicines in the page.
+     * @return page of medicines.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ArrayList<MedicineID> getMedicinesPage(int afterId, int pageSize) throws SQLException {
+        return medicineDB.getMedicinesPage(afterId, pageSize);
+    }
+
+    /**
+     * Returns medicine with given ID, from cache if possible.
+     *
+     * @param medicineID id of the medicine to get from DB.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public MedicineID getMedicine(int medicineID) throws SQLException {
+        MedicineID cached = medicines.get(medicineID);
+
+        if (cached != null) {
+            return new MedicineID(cached);
+        }
+
+        long generation = medicines.getGeneration();
+        MedicineID loaded = medicineDB.getMedicine(medicineID);
+
+        if (loaded != null) {
+            medicines.put(medicineID, new MedicineID(loaded), generation);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Updates medicine with given ID with new parameters, and invalidates it in the caches.
+     *
+     * @param medicine updated medicine to insert into DB.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public void updateMedicine(MedicineID medicine) throws SQLException {
+        try {
+            medicineDB.updateMedicine(medicine);
+        } finally {
+            medicines.invalidate(medicine.getId());
+            results.invalidateAll();
+        }
+    }
+
+    /**
+     * Deletes medicine with given ID, and invalidates it in the caches.
+     *
+     * @param medicineID ID of the medicine to delete.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public void deleteMedicine(int medicineID) throws SQLException {
+        try {
+            medicineDB.deleteMedicine(medicineID);
+        } finally {
+            medicines.invalidate(medicineID);
+            results.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns counters of the medicines cache (getMedicine).
+     *
+     * @return cache stats.
+     */
+    public CacheStats getMedicineCacheStats() {
+        return medicines.snapshot();
+    }
+
+    /**
+     * Returns counters of the search results cache (getFilteredMedicines, searchMedicines).
+     *
+     * @return cache stats.
+     */
+    public CacheStats getResultCacheStats() {
+        return results.snapshot();
+    }
+
+    /**
+     * Returns the wrapped medicine DB.
+     *
+     * @return medicine DB.
+     */
+    public IMedicineDB getMedicineDB() {
+        return medicineDB;
+    }
+
+    /**
+     * Returns immutable key of the filter: param may be mutable (e.g. caller's Date), so dates are keyed by millis.
+     * Param class is a part of the key, so date and its millis as a number aren't mixed up.
+     *
+     * @param filter the medicine field by which the filtering is performed.
+     * @param param  the medicine field value by which the filtering is performed.
+     * @return filter key.
+     */
+    private static Object getFilterKey(FilterField filter, Object param) {
+        return Arrays.asList(
+                filter,
+                param == null ? null : param.getClass(),
+                param instanceof Date date ? date.getTime() : param
+        );
+    }
+
+    /**
+     * Stores copy of the search result, if it isn't too big.
+     *
+     * @param key        key of the result.
+     * @param result     search result.
+     * @param generation cache generation taken before the result was read.
+     */
+    private void cacheResult(Object key, ArrayList<MedicineID> result, long generation) {
+        if (result.size() <= maxResultRows) {
+            results.put(key, copy(result), generation);
+        }
+    }
+
+    /**
+     * Copies medicines, so cached values aren't changed by the caller.
+     *
+     * @param medicines medicines to copy.
+     * @return copies of the medicines.
+     */
+    private static ArrayList<MedicineID> copy(ArrayList<MedicineID> medicines) {
+        ArrayList<MedicineID> copies = new ArrayList<>(medicines.size());
+
+        for (MedicineID medicine : medicines) {
+            copies.add(new MedicineID(medicine));
+        }
+
+        return copies;
+    }
+}
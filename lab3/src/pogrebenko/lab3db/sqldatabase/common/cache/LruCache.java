@@ -0,0 +1,120 @@
+package pogrebenko.lab3db.sqldatabase.common.cache;
+
+import pogrebenko.lab3db.sqldatabase.common.metrics.CacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the DB results.
+ * <p>
+ * Every invalidation starts new generation of the cache. Value that was read from DB before the invalidation
+ * (generation is taken before the read) isn't stored, so the cache never gets stale data
+ * from the read that raced with the write.
+ *
+ * @param <K> type of the keys.
+ * @param <V> type of the values.
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+class LruCache<K, V> {
+    // Access ordered map, eldest entry is the least recently used one.
+    private final LinkedHashMap<K, V> entries;
+    private long generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    /**
+     * Creates LRU cache.
+     *
+     * @param capacity max number of the cached entries.
+     */
+    LruCache(int capacity) {
+        this.entries = new LinkedHashMap<>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+
+                evictions++;
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns cached value, and counts hit or miss.
+     *
+     * @param key key of the value.
+     * @return cached value, or null if there is no such value in the cache.
+     */
+    synchronized V get(K key) {
+        V value = entries.get(key);
+
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns current generation of the cache, must be taken before the value is read from DB.
+     *
+     * @return cache generation.
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Stores value, if cache wasn't invalidated since the given generation.
+     *
+     * @param key        key of the value.
+     * @param value      value to store.
+     * @param generation cache generation taken before the value was read.
+     */
+    synchronized void put(K key, V value, long generation) {
+        if (generation == this.generation) {
+            entries.put(key, value);
+        }
+    }
+
+    /**
+     * Removes single value.
+     *
+     * @param key key of the value.
+     */
+    synchronized void invalidate(K key) {
+        generation++;
+
+        if (entries.remove(key) != null) {
+            invalidations++;
+        }
+    }
+
+    /**
+     * Removes all values.
+     */
+    synchronized void invalidateAll() {
+        generation++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    /**
+     * Returns snapshot of the cache counters.
+     *
+     * @return cache stats.
+     */
+    synchronized CacheStats snapshot() {
+        return new CacheStats(hits, misses, evictions, invalidations, entries.size());
+    }
+}
@@ -1,9 +1,14 @@
 package pogrebenko.lab3db.sqldatabase.common.contract;
 
+import pogrebenko.lab3db.sqldatabase.common.metrics.HealthMetrics;
+import pogrebenko.lab3db.sqldatabase.common.metrics.StatementCacheStats;
+
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Represents an SQL core, that will handle all basic operations and options.
@@ -41,6 +46,17 @@ public interface ICore extends AutoCloseable {
      */
     ArrayList<Integer> execute(String query, Object... params) throws SQLException;
 
+    /**
+     * Executes the update (INSERT, UPDATE or DELETE) built from the passed parameters,
+     * and returns the number of affected rows.
+     *
+     * @param query  query to prepare.
+     * @param params query parameters.
+     * @return number of affected rows.
+     * @throws SQLException on a database access error or other errors.
+     */
+    int executeUpdate(String query, Object... params) throws SQLException;
+
     /**
      * Executes the query built from the passed parameters, and returns the ResultSet of the execution.
      *
@@ -51,6 +67,30 @@ public interface ICore extends AutoCloseable {
      */
     ResultSet executeQuery(String query, Object... params) throws SQLException;
 
+    /**
+     * Executes the query and returns forward-only, read-only ResultSet, that fetches rows by fetchSize chunks,
+     * instead of reading whole result into memory. Connection must have cursor fetch enabled
+     * (useCursorFetch=true for MySQL), otherwise driver may still buffer the whole result.
+     * ResultSet MUST be closed by the caller, until then it holds its statement (and connection, if pooled).
+     *
+     * @param query     query to prepare.
+     * @param fetchSize number of rows to fetch from DB at once.
+     * @param params    query parameters.
+     * @return streaming ResultSet.
+     * @throws SQLException on a database access error or other errors.
+     */
+    ResultSet executeStreamingQuery(String query, int fetchSize, Object... params) throws SQLException;
+
+    /**
+     * Executes the schema change (DDL) statement, e.g. ALTER TABLE of the existing table.
+     * Unlike execute, statement has no query timeout, since rebuild of the big table may take minutes,
+     * and it isn't cached.
+     *
+     * @param query DDL statement to execute.
+     * @throws SQLException on a database access error or other errors.
+     */
+    void executeDDL(String query) throws SQLException;
+
     /**
      * Executes the prepared batch statement. Preferred way of executing large amount of, for example, insert queries.
      *
@@ -61,6 +101,15 @@ public interface ICore extends AutoCloseable {
     @SuppressWarnings("UnusedReturnValue")
     int[] executeBatch(PreparedStatement batchStmt) throws SQLException;
 
+    /**
+     * Executes several batches in a single transaction, so either all of them are applied, or none.
+     * Each batch is the query, that is executed once for each of its parameter sets.
+     *
+     * @param batches batches {<query> : <parameter sets>}, executed in the map iteration order.
+     * @throws SQLException on a database access error or other errors.
+     */
+    void executeBatches(Map<String, List<Object[]>> batches) throws SQLException;
+
     /**
      * Returns new statement from given connection with specified parameters.
      *
@@ -78,4 +127,18 @@ public interface ICore extends AutoCloseable {
      * @throws SQLException on a database access error or other errors.
      */
     PreparedStatement prepareStatement(PreparedStatement statement, Object... params) throws SQLException;
+
+    /**
+     * Returns the connection health metrics, collected by the background health checker.
+     *
+     * @return connection health metrics.
+     */
+    HealthMetrics getHealthMetrics();
+
+    /**
+     * Returns the prepared statement cache counters.
+     *
+     * @return statement cache stats.
+     */
+    StatementCacheStats getStatementCacheStats();
 }
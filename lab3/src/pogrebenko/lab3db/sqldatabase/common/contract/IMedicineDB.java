@@ -2,7 +2,9 @@ package pogrebenko.lab3db.sqldatabase.common.contract;
 
 import pogrebenko.lab3db.model.medicine.Medicine;
 import pogrebenko.lab3db.model.medicine.MedicineID;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.BulkLoadMode;
 import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.FilterField;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.MedicineQuery;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -41,6 +43,21 @@ public interface IMedicineDB {
      */
     void writeMedicines(ArrayList<? extends Medicine> medicines) throws SQLException;
 
+    /**
+     * Returns the way writeMedicines writes medicines to DB.
+     *
+     * @return bulk load mode.
+     */
+    BulkLoadMode getBulkLoadMode();
+
+    /**
+     * Sets the way writeMedicines writes medicines to DB.
+     * Some modes may require additional DB connection params (see {@link BulkLoadMode}).
+     *
+     * @param bulkLoadMode bulk load mode.
+     */
+    void setBulkLoadMode(BulkLoadMode bulkLoadMode);
+
     /**
      * Writes medicine to DB.
      *
@@ -60,6 +77,34 @@ public interface IMedicineDB {
      */
     ArrayList<MedicineID> getFilteredMedicines(FilterField filter, Object param) throws SQLException;
 
+    /**
+     * Returns medicines found by the composite query (several predicates, sort and limit).
+     * Unlike getFilteredMedicines, strings may be searched by prefix, and dates and cost - by range.
+     *
+     * @param query search query.
+     * @return array of medicines from DB that match the query.
+     * @throws SQLException on a database access error or other errors.
+     */
+    ArrayList<MedicineID> searchMedicines(MedicineQuery query) throws SQLException;
+
+    /**
+     * Streams medicines filtered by the specified parameters into the visitor, ordered by ID.
+     * Rows are read from DB by cursor in small chunks, so memory usage doesn't depend on the table size.
+     *
+     * @param filter  the medicine field by which the filtering will be performed.
+     * @param param   the medicine field value by which the filtering will be performed.
+     * @param visitor visitor of the medicines.
+     * @param <E>     type of the visitor exception.
+     * @return number of visited medicines.
+     * @throws SQLException on a database access error or other errors.
+     * @throws E            on visitor errors.
+     */
+    <E extends Exception> long visitMedicines(
+            FilterField filter,
+            Object param,
+            RowVisitor<? super MedicineID, E> visitor
+    ) throws SQLException, E;
+
     /**
      * Returns all medicines from DB. Simplified usage of getFilteredMedicines(NONE, null)
      *
@@ -68,6 +113,17 @@ public interface IMedicineDB {
      */
     ArrayList<MedicineID> getMedicines() throws SQLException;
 
+    /**
+     * Returns single page of medicines ordered by ID (keyset pagination).
+     * To get the next page, pass ID of the last medicine of the current page.
+     *
+     * @param afterId  ID after which the page starts (0 for the first page).
+     * @param pageSize max number of medicines in the page.
+     * @return page of medicines, if it has less than pageSize medicines - it's the last page.
+     * @throws SQLException on a database access error or other errors.
+     */
+    ArrayList<MedicineID> getMedicinesPage(int afterId, int pageSize) throws SQLException;
+
     /**
      * Returns medicine with given ID. Simplified usage of getFilteredMedicines(ID, id).
      *
@@ -4,6 +4,7 @@ import pogrebenko.lab3db.model.message.Message;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Date;
 
 /**
  * Represents an SQL message DB, that will handle all requests that required for the controller.
@@ -37,6 +38,14 @@ public interface IMessageDB {
      */
     int writeMessage(Message message) throws SQLException;
 
+    /**
+     * Writes messages array to DB at once. Message time is taken from the message (current time if it's not set).
+     *
+     * @param messages messages to insert.
+     * @throws SQLException on a database access error or other errors.
+     */
+    void writeMessages(ArrayList<? extends Message> messages) throws SQLException;
+
     /**
      * Returns all messages from DB.
      *
@@ -44,4 +53,46 @@ public interface IMessageDB {
      * @throws SQLException on a database access error or other errors.
      */
     ArrayList<Message> getMessages() throws SQLException;
+
+    /**
+     * Returns single page of messages from the time range, newest first.
+     * Pages are read by keyset (time and ID of the last message), so every page costs the same.
+     *
+     * @param from     start of the time range (inclusive), or null.
+     * @param to       end of the time range (exclusive), or null.
+     * @param after    last message of the previous page (read from DB), or null for the first page.
+     * @param pageSize max number of messages in the page.
+     * @return page of messages.
+     * @throws SQLException on a database access error or other errors.
+     */
+    ArrayList<Message> getMessagesPage(Date from, Date to, Message after, int pageSize) throws SQLException;
+
+    /**
+     * Streams messages from the time range into the visitor, newest first.
+     * Whole result is never held in memory.
+     *
+     * @param from    start of the time range (inclusive), or null.
+     * @param to      end of the time range (exclusive), or null.
+     * @param visitor visitor of the messages.
+     * @param <E>     type of the visitor exception.
+     * @return number of visited messages.
+     * @throws SQLException on a database access error or other errors.
+     * @throws E            on visitor errors.
+     */
+    <E extends Exception> long visitMessages(
+            Date from,
+            Date to,
+            RowVisitor<? super Message, E> visitor
+    ) throws SQLException, E;
+
+    /**
+     * Deletes up to limit oldest messages, that are older than the given time.
+     * Call it repeatedly to delete all of them, so no single statement locks the table for long.
+     *
+     * @param before time to delete messages before (exclusive).
+     * @param limit  max number of messages to delete.
+     * @return number of deleted messages.
+     * @throws SQLException on a database access error or other errors.
+     */
+    int deleteMessagesBefore(Date before, int limit) throws SQLException;
 }
@@ -0,0 +1,22 @@
+package pogrebenko.lab3db.sqldatabase.common.contract;
+
+/**
+ * Callback, that receives rows of the streaming query one by one,
+ * so the whole result is never held in memory.
+ *
+ * @param <T> type of the row object.
+ * @param <E> type of the exception the visitor may throw (e.g. IOException on export).
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+@FunctionalInterface
+public interface RowVisitor<T, E extends Exception> {
+    /**
+     * Handles the single row.
+     *
+     * @param row parsed row.
+     * @throws E on visitor errors, stops the query.
+     */
+    void visit(T row) throws E;
+}
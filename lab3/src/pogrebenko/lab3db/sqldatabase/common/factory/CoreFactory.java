@@ -2,9 +2,13 @@ package pogrebenko.lab3db.sqldatabase.common.factory;
 
 import pogrebenko.lab3db.sqldatabase.common.contract.ICore;
 import pogrebenko.lab3db.sqldatabase.database.core.Core;
+import pogrebenko.lab3db.sqldatabase.database.core.PoolConfig;
+import pogrebenko.lab3db.sqldatabase.database.core.PooledCore;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.BulkLoadMode;
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
@@ -17,6 +21,18 @@ import java.util.logging.Logger;
  */
 public class CoreFactory {
     private static final Logger LOGGER = LoggerWrapper.getLogger();
+    // MySQL connection params, that enable server-side prepared statements and their caching in the driver.
+    // Without them, Connector/J emulates prepared statements on the client, and sends full query text every time.
+    private static final String[] MYSQL_SERVER_PREPARE_PARAMS = {
+            "useServerPrepStmts=true",
+            "cachePrepStmts=true",
+            "prepStmtCacheSize=256",
+            "prepStmtCacheSqlLimit=2048"
+    };
+    // MySQL connection param, that makes driver rewrite batch of inserts into multi-row inserts.
+    private static final String MYSQL_REWRITE_BATCH_PARAM = "rewriteBatchedStatements=true";
+    // MySQL connection param, that allows LOAD DATA LOCAL INFILE (from the stream, set by the client).
+    private static final String MYSQL_LOAD_LOCAL_INFILE_PARAM = "allowLoadLocalInfile=true";
 
     /**
      * Private constructor that throws an exception to prevent instantiation.
@@ -54,4 +70,82 @@ public class CoreFactory {
                 params
         );
     }
+
+    /**
+     * Returns MySQL core database backed by the connection pool.
+     * Unlike {@link #getMySQLCore}, queries from different threads are executed in parallel.
+     *
+     * @param host     host of the DB to connect.
+     * @param port     port of the DB to connect.
+     * @param dbName   database name of the DB to connect.
+     * @param userName user of the DB to connect.
+     * @param password user password of the DB to connect.
+     * @param config   connection pool settings.
+     * @return ICore interface with MySQL connection pool under it.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public static ICore getMySQLPooledCore(
+            String host,
+            int port,
+            String dbName,
+            String userName,
+            String password,
+            PoolConfig config,
+            String... params
+    ) throws SQLException {
+        LOGGER.info("Creating new pooled MySQL DB core...");
+
+        return new PooledCore(
+                String.format("jdbc:mysql://%s:%d/%s", host, port, dbName),
+                new com.mysql.cj.jdbc.Driver(),
+                userName,
+                password,
+                config,
+                params
+        );
+    }
+
+    /**
+     * Adds params, that enable MySQL server-side prepared statements, to the given connection params.
+     *
+     * @param enabled if false, params are returned as is.
+     * @param params  connection params.
+     * @return connection params with server-side prepare params, if enabled.
+     */
+    public static String[] withMySQLServerPrepare(boolean enabled, String... params) {
+        if (!enabled) {
+            return params;
+        }
+
+        return merge(params, MYSQL_SERVER_PREPARE_PARAMS);
+    }
+
+    /**
+     * Adds params, that are required by the given bulk load mode, to the given connection params.
+     *
+     * @param mode   bulk load mode of the medicine DB.
+     * @param params connection params.
+     * @return connection params with bulk load params, if any.
+     */
+    public static String[] withMySQLBulkLoad(BulkLoadMode mode, String... params) {
+        return switch (mode) {
+            case BATCH -> merge(params, MYSQL_REWRITE_BATCH_PARAM);
+            case MULTI_VALUES -> params;
+            case LOAD_DATA -> merge(params, MYSQL_LOAD_LOCAL_INFILE_PARAM);
+        };
+    }
+
+    /**
+     * Merges two arrays of connection params.
+     *
+     * @param params connection params.
+     * @param extra  params to add.
+     * @return merged params.
+     */
+    private static String[] merge(String[] params, String... extra) {
+        String[] merged = Arrays.copyOf(params, params.length + extra.length);
+        System.arraycopy(extra, 0, merged, params.length, extra.length);
+
+        return merged;
+    }
 }
@@ -0,0 +1,78 @@
+package pogrebenko.lab3db.sqldatabase.common.metrics;
+
+/**
+ * Snapshot of the async DB calls latency.
+ * Caller time is the time the calling (UI) thread was blocked by the call,
+ * execution time is the time the DB call itself took on the background thread
+ * (which is how long the calling thread was blocked before calls were made async).
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class AsyncLatencyStats {
+    // Number of the submitted calls.
+    private final long calls;
+    // Average and max time the caller thread spent on the call.
+    private final double averageCallerMillis;
+    private final double maxCallerMillis;
+    // Average and max time the call took on the background thread.
+    private final double averageExecutionMillis;
+    private final double maxExecutionMillis;
+
+    /**
+     * Creates async latency stats snapshot.
+     *
+     * @param calls                  number of the submitted calls.
+     * @param averageCallerMillis    average time the caller thread spent on the call.
+     * @param maxCallerMillis        max time the caller thread spent on the call.
+     * @param averageExecutionMillis average time the call took on the background thread.
+     * @param maxExecutionMillis     max time the call took on the background thread.
+     */
+    public AsyncLatencyStats(
+            long calls,
+            double averageCallerMillis,
+            double maxCallerMillis,
+            double averageExecutionMillis,
+            double maxExecutionMillis
+    ) {
+        this.calls = calls;
+        this.averageCallerMillis = averageCallerMillis;
+        this.maxCallerMillis = maxCallerMillis;
+        this.averageExecutionMillis = averageExecutionMillis;
+        this.maxExecutionMillis = maxExecutionMillis;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public double getAverageCallerMillis() {
+        return averageCallerMillis;
+    }
+
+    public double getMaxCallerMillis() {
+        return maxCallerMillis;
+    }
+
+    public double getAverageExecutionMillis() {
+        return averageExecutionMillis;
+    }
+
+    public double getMaxExecutionMillis() {
+        return maxExecutionMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "AsyncLatencyStats{calls=%d, callerAvg=%.3f ms, callerMax=%.3f ms, "
+                        + "executionAvg=%.3f ms, executionMax=%.3f ms}",
+                calls,
+                averageCallerMillis,
+                maxCallerMillis,
+                averageExecutionMillis,
+                maxExecutionMillis
+        );
+    }
+}
@@ -0,0 +1,82 @@
+package pogrebenko.lab3db.sqldatabase.common.metrics;
+
+/**
+ * Snapshot of the counters of the in-memory DB results cache.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class CacheStats {
+    // Number of requests served from the cache.
+    private final long hits;
+    // Number of requests that went to DB.
+    private final long misses;
+    // Number of entries removed to free space in the cache.
+    private final long evictions;
+    // Number of entries removed because DB data was changed.
+    private final long invalidations;
+    // Number of entries in the cache right now.
+    private final long size;
+
+    /**
+     * Creates cache stats snapshot.
+     *
+     * @param hits          number of requests served from the cache.
+     * @param misses        number of requests that went to DB.
+     * @param evictions     number of entries evicted from the cache.
+     * @param invalidations number of entries invalidated by DB changes.
+     * @param size          number of entries in the cache.
+     */
+    public CacheStats(long hits, long misses, long evictions, long invalidations, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.invalidations = invalidations;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns part of the requests that were served from the cache.
+     *
+     * @return hit ratio from 0 to 1.
+     */
+    public double getHitRatio() {
+        long requests = hits + misses;
+
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "CacheStats{hits=%d, misses=%d, evictions=%d, invalidations=%d, size=%d, hitRatio=%.2f}",
+                hits,
+                misses,
+                evictions,
+                invalidations,
+                size,
+                getHitRatio()
+        );
+    }
+}
@@ -0,0 +1,95 @@
+package pogrebenko.lab3db.sqldatabase.common.metrics;
+
+/**
+ * Snapshot of the DB connection health, collected by the background health checker of the SQL core.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class HealthMetrics {
+    // Is connection considered alive right now.
+    private final boolean healthy;
+    // Number of successful and failed pings.
+    private final long pingCount;
+    private final long failedPingCount;
+    // Latency of the last successful ping and average latency of all successful pings.
+    private final double lastPingMillis;
+    private final double averagePingMillis;
+    // Number of successful reconnections.
+    private final long reconnectCount;
+    // Total time the connection was down (including current downtime, if any).
+    private final long degradedMillis;
+
+    /**
+     * Creates health metrics snapshot.
+     *
+     * @param healthy           is connection considered alive right now.
+     * @param pingCount         number of successful pings.
+     * @param failedPingCount   number of failed pings.
+     * @param lastPingMillis    latency of the last successful ping.
+     * @param averagePingMillis average latency of all successful pings.
+     * @param reconnectCount    number of successful reconnections.
+     * @param degradedMillis    total time the connection was down.
+     */
+    public HealthMetrics(
+            boolean healthy,
+            long pingCount,
+            long failedPingCount,
+            double lastPingMillis,
+            double averagePingMillis,
+            long reconnectCount,
+            long degradedMillis
+    ) {
+        this.healthy = healthy;
+        this.pingCount = pingCount;
+        this.failedPingCount = failedPingCount;
+        this.lastPingMillis = lastPingMillis;
+        this.averagePingMillis = averagePingMillis;
+        this.reconnectCount = reconnectCount;
+        this.degradedMillis = degradedMillis;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public long getPingCount() {
+        return pingCount;
+    }
+
+    public long getFailedPingCount() {
+        return failedPingCount;
+    }
+
+    public double getLastPingMillis() {
+        return lastPingMillis;
+    }
+
+    public double getAveragePingMillis() {
+        return averagePingMillis;
+    }
+
+    public long getReconnectCount() {
+        return reconnectCount;
+    }
+
+    public long getDegradedMillis() {
+        return degradedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "HealthMetrics{healthy=%b, pings=%d, failedPings=%d, lastPing=%.2fms, avgPing=%.2fms, " +
+                        "reconnects=%d, degraded=%dms}",
+                healthy,
+                pingCount,
+                failedPingCount,
+                lastPingMillis,
+                averagePingMillis,
+                reconnectCount,
+                degradedMillis
+        );
+    }
+}
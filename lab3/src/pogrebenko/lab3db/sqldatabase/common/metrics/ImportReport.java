@@ -0,0 +1,106 @@
+package pogrebenko.lab3db.sqldatabase.common.metrics;
+
+/**
+ * Summary of the pipelined medicine import.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class ImportReport {
+    // Number of the data lines in the file.
+    private final long lines;
+    // Number of the medicines written to DB.
+    private final long writtenRows;
+    // Number of the lines that couldn't be parsed.
+    private final long rejectedLines;
+    // Number of the written batches.
+    private final long batches;
+    // Average and max time of the single batch insert.
+    private final double averageBatchMillis;
+    private final double maxBatchMillis;
+    // Total import time.
+    private final long elapsedMillis;
+
+    /**
+     * Creates import report.
+     *
+     * @param lines              number of the data lines in the file.
+     * @param writtenRows        number of the medicines written to DB.
+     * @param rejectedLines      number of the lines that couldn't be parsed.
+     * @param batches            number of the written batches.
+     * @param averageBatchMillis average time of the single batch insert.
+     * @param maxBatchMillis     max time of the single batch insert.
+     * @param elapsedMillis      total import time.
+     */
+    public ImportReport(
+            long lines,
+            long writtenRows,
+            long rejectedLines,
+            long batches,
+            double averageBatchMillis,
+            double maxBatchMillis,
+            long elapsedMillis
+    ) {
+        this.lines = lines;
+        this.writtenRows = writtenRows;
+        this.rejectedLines = rejectedLines;
+        this.batches = batches;
+        this.averageBatchMillis = averageBatchMillis;
+        this.maxBatchMillis = maxBatchMillis;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getWrittenRows() {
+        return writtenRows;
+    }
+
+    public long getRejectedLines() {
+        return rejectedLines;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public double getAverageBatchMillis() {
+        return averageBatchMillis;
+    }
+
+    public double getMaxBatchMillis() {
+        return maxBatchMillis;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Returns import throughput.
+     *
+     * @return written rows per second.
+     */
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? 0 : writtenRows * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "ImportReport{lines=%d, written=%d, rejected=%d, batches=%d, batchAvg=%.3f ms, "
+                        + "batchMax=%.3f ms, elapsed=%d ms, rowsPerSecond=%.1f}",
+                lines,
+                writtenRows,
+                rejectedLines,
+                batches,
+                averageBatchMillis,
+                maxBatchMillis,
+                elapsedMillis,
+                getRowsPerSecond()
+        );
+    }
+}
@@ -0,0 +1,97 @@
+package pogrebenko.lab3db.sqldatabase.common.metrics;
+
+/**
+ * Snapshot of the counters of the asynchronous message writer.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class MessageWriterStats {
+    // Number of messages passed to the writer.
+    private final long accepted;
+    // Number of rows written to DB (coalesced messages are written once, drop reports are counted too).
+    private final long written;
+    // Number of batch inserts.
+    private final long batches;
+    // Number of duplicate messages merged into the pending ones.
+    private final long coalesced;
+    // Number of messages dropped because the buffer was full.
+    private final long dropped;
+    // Number of messages lost because DB write failed.
+    private final long failed;
+    // Number of messages waiting in the buffer right now.
+    private final long pending;
+
+    /**
+     * Creates message writer stats snapshot.
+     *
+     * @param accepted  number of messages passed to the writer.
+     * @param written   number of messages written to DB.
+     * @param batches   number of batch inserts.
+     * @param coalesced number of duplicate messages merged into the pending ones.
+     * @param dropped   number of messages dropped because the buffer was full.
+     * @param failed    number of messages lost because DB write failed.
+     * @param pending   number of messages waiting in the buffer.
+     */
+    public MessageWriterStats(
+            long accepted,
+            long written,
+            long batches,
+            long coalesced,
+            long dropped,
+            long failed,
+            long pending
+    ) {
+        this.accepted = accepted;
+        this.written = written;
+        this.batches = batches;
+        this.coalesced = coalesced;
+        this.dropped = dropped;
+        this.failed = failed;
+        this.pending = pending;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getPending() {
+        return pending;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "MessageWriterStats{accepted=%d, written=%d, batches=%d, coalesced=%d, dropped=%d, failed=%d, "
+                        + "pending=%d}",
+                accepted,
+                written,
+                batches,
+                coalesced,
+                dropped,
+                failed,
+                pending
+        );
+    }
+}
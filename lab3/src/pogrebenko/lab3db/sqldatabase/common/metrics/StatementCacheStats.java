@@ -0,0 +1,73 @@
+package pogrebenko.lab3db.sqldatabase.common.metrics;
+
+/**
+ * Snapshot of the prepared statement cache counters of the SQL core.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class StatementCacheStats {
+    // Number of statements taken from the cache.
+    private final long hits;
+    // Number of statements that had to be prepared.
+    private final long misses;
+    // Number of statements that were closed to free space in the cache.
+    private final long evictions;
+    // Number of statements in the cache right now.
+    private final long size;
+
+    /**
+     * Creates statement cache stats snapshot.
+     *
+     * @param hits      number of statements taken from the cache.
+     * @param misses    number of statements that had to be prepared.
+     * @param evictions number of statements that were evicted from the cache.
+     * @param size      number of statements in the cache.
+     */
+    public StatementCacheStats(long hits, long misses, long evictions, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns part of the requests that were served from the cache.
+     *
+     * @return hit ratio from 0 to 1.
+     */
+    public double getHitRatio() {
+        long requests = hits + misses;
+
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "StatementCacheStats{hits=%d, misses=%d, evictions=%d, size=%d, hitRatio=%.2f}",
+                hits,
+                misses,
+                evictions,
+                size,
+                getHitRatio()
+        );
+    }
+}
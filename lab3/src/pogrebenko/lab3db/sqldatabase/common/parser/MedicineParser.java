@@ -3,6 +3,7 @@ package pogrebenko.lab3db.sqldatabase.common.parser;
 import pogrebenko.lab3db.model.medicine.InvalidMedicineException;
 import pogrebenko.lab3db.model.medicine.Medicine;
 import pogrebenko.lab3db.model.medicine.MedicineID;
+import pogrebenko.lab3db.sqldatabase.common.contract.RowVisitor;
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
 import java.sql.ResultSet;
@@ -90,6 +91,43 @@ public final class MedicineParser {
         }
     }
 
+    /**
+     * Parses medicines from the given result set one by one, passes them to the visitor,
+     * and closes that ResultSet afterwards. Invalid medicines are logged and skipped.
+     *
+     * @param rs      ResultSet to parse.
+     * @param visitor visitor of the parsed medicines.
+     * @param <E>     type of the visitor exception.
+     * @return number of visited medicines.
+     * @throws SQLException on a database access error or other errors.
+     * @throws E            on visitor errors.
+     */
+    public static <E extends Exception> long visitMedicines(
+            ResultSet rs,
+            RowVisitor<? super MedicineID, E> visitor
+    ) throws SQLException, E {
+        LOGGER.finest("Trying to stream ResultSet object into the medicine visitor...");
+        long visited = 0;
+
+        try (rs) {
+            while (rs.next()) {
+                MedicineID medicine;
+
+                try {
+                    medicine = parseMedicine(rs);
+                } catch (InvalidMedicineException e) {
+                    LOGGER.log(Level.WARNING, e.getMessage(), e);
+                    continue;
+                }
+
+                visitor.visit(medicine);
+                visited++;
+            }
+        }
+
+        return visited;
+    }
+
     /**
      * Parses first medicine from the given result set and closes that ResultSet afterwards..
      *
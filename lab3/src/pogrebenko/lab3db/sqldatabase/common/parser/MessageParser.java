@@ -1,6 +1,7 @@
 package pogrebenko.lab3db.sqldatabase.common.parser;
 
 import pogrebenko.lab3db.model.message.Message;
+import pogrebenko.lab3db.sqldatabase.common.contract.RowVisitor;
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
 import java.sql.ResultSet;
@@ -58,6 +59,7 @@ public class MessageParser {
     private static Message parseMessage(ResultSet rs) throws SQLException {
         Message message = new Message();
 
+        message.setMessageId(rs.getInt("message_id"));
         message.setMessage(rs.getString("message"));
         message.setMessageTime(rs.getTimestamp("message_time"));
 
@@ -76,4 +78,31 @@ public class MessageParser {
             return parseMessages(rs);
         }
     }
+
+    /**
+     * Streams messages from the given result set into the visitor and closes that ResultSet afterwards.
+     *
+     * @param rs      ResultSet to parse.
+     * @param visitor visitor of the messages.
+     * @param <E>     type of the visitor exception.
+     * @return number of visited messages.
+     * @throws SQLException on a database access error or other errors.
+     * @throws E            on visitor errors.
+     */
+    public static <E extends Exception> long visitMessages(
+            ResultSet rs,
+            RowVisitor<? super Message, E> visitor
+    ) throws SQLException, E {
+        LOGGER.finest("Trying to stream ResultSet object into the message visitor...");
+        long visited = 0;
+
+        try (rs) {
+            while (rs.next()) {
+                visitor.visit(parseMessage(rs));
+                visited++;
+            }
+        }
+
+        return visited;
+    }
 }
@@ -0,0 +1,72 @@
+package pogrebenko.lab3db.sqldatabase.database.core;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wraps JDBC resources (ResultSet, PreparedStatement, etc.) into a proxy,
+ * that runs given action right after the resource is closed.
+ * Used to return borrowed resources back (connection to the pool, statement to the cache),
+ * when the caller is done with the object that was returned from the core.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+final class CloseHook {
+    /**
+     * Private constructor that throws an exception to prevent instantiation.
+     */
+    private CloseHook() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns proxy of the given resource, that calls onClose once the resource is closed.
+     * All other calls (including unwrap) are passed to the resource as is.
+     * onClose is called only once, even if close is called multiple times.
+     *
+     * @param type    interface of the resource.
+     * @param target  resource to wrap.
+     * @param onClose action to run after resource is closed.
+     * @param <T>     type of the resource.
+     * @return wrapped resource.
+     */
+    static <T extends AutoCloseable> T wrap(Class<T> type, T target, Runnable onClose) {
+        AtomicBoolean closed = new AtomicBoolean(false);
+
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (p, method, args) -> {
+            if (isClose(method)) {
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                } finally {
+                    if (closed.compareAndSet(false, true)) {
+                        onClose.run();
+                    }
+                }
+            }
+
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+
+        return type.cast(proxy);
+    }
+
+    /**
+     * Checks if given method is "close()" method.
+     *
+     * @param method method to check.
+     * @return true if method is "close()", false otherwise.
+     */
+    private static boolean isClose(Method method) {
+        return method.getName().equals("close") && method.getParameterCount() == 0;
+    }
+}
@@ -0,0 +1,383 @@
+package pogrebenko.lab3db.sqldatabase.database.core;
+
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of the DB connections.
+ * <p>
+ * Number of borrowed connections is limited by the semaphore with maxSize permits,
+ * so borrowed + idle connections never exceed maxSize.
+ * Idle connections are kept in the deque: the most recently used connection is borrowed first,
+ * so the tail of the deque holds the connections that are unused for the longest time,
+ * and they are evicted by the background task after idle timeout.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+class ConnectionPool implements AutoCloseable {
+    // Timeout for the connection validation on borrow, in seconds.
+    private final static int defaultTimeoutValidation = 2;
+    // Connections that were used recently are not validated on borrow.
+    // Connection health is checked in background anyway, so it saves a round-trip on every borrow.
+    private final static long validationBypassMillis = 500;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    // Connection string for given DB.
+    private final String connString;
+    // DB username of the pool connections.
+    private final String userName;
+    // DB password of the pool connections. Kept for the same reasons as in Core.
+    private final char[] password;
+    private final PoolConfig config;
+    // Max number of the cached prepared statements per connection.
+    private final int statementCacheSize;
+    // Statement cache counters, shared by all connections of the pool.
+    private final StatementCache.Counters statementCacheCounters;
+
+    // Connections that are ready to be borrowed.
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    // Limits number of the borrowed connections.
+    private final Semaphore permits;
+    // Number of all open connections (idle + borrowed).
+    private final AtomicInteger total = new AtomicInteger(0);
+    // Closes connections that are not used for too long.
+    private final ScheduledExecutorService evictor;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates connection pool and opens minSize connections.
+     *
+     * @param connString             connection string of the DB.
+     * @param userName               user of the DB to connect.
+     * @param password               user password of the DB to connect.
+     * @param config                 pool settings.
+     * @param statementCacheSize     max number of the cached prepared statements per connection.
+     * @param statementCacheCounters statement cache counters to update.
+     * @throws SQLException on a database access error or other errors.
+     */
+    ConnectionPool(
+            String connString,
+            String userName,
+            char[] password,
+            PoolConfig config,
+            int statementCacheSize,
+            StatementCache.Counters statementCacheCounters
+    ) throws SQLException {
+        this.connString = connString;
+        this.userName = userName;
+        this.password = password;
+        this.config = config;
+        this.statementCacheSize = statementCacheSize;
+        this.statementCacheCounters = statementCacheCounters;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+
+        fill();
+
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "db-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long period = Math.max(config.getIdleTimeoutMillis() / 2, 1);
+        evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows connection from the pool. Waits for the free connection up to acquire timeout.
+     * Idle connections are validated before they are returned (unless they were used just now),
+     * broken connections are discarded.
+     *
+     * @return borrowed connection, must be returned via release.
+     * @throws SQLException on a database access error, timeout or other errors.
+     */
+    PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Cannot borrow connection, pool is closed!");
+        }
+
+        try {
+            if (!permits.tryAcquire(config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException(String.format(
+                        "No free DB connection in %d ms, all %d connections are busy!",
+                        config.getAcquireTimeoutMillis(),
+                        config.getMaxSize()
+                ));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the DB connection!", e);
+        }
+
+        return takeIdleOrCreate();
+    }
+
+    /**
+     * Borrows connection from the pool without waiting for the free one.
+     * Idle connection is taken if any, otherwise new connection is opened, if pool isn't full.
+     *
+     * @return borrowed connection, must be returned via release, or null if all connections are busy.
+     * @throws SQLException on a database access error or other errors.
+     */
+    PooledConnection tryBorrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Cannot borrow connection, pool is closed!");
+        }
+
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+
+        return takeIdleOrCreate();
+    }
+
+    /**
+     * Takes valid idle connection, or opens new one. Permit must be acquired by the caller,
+     * it's released if connection cannot be taken.
+     *
+     * @return borrowed connection.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        try {
+            PooledConnection pooled;
+
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isValid(pooled)) {
+                    return pooled;
+                }
+
+                LOGGER.warning("Discarding broken DB connection...");
+                discard(pooled);
+            }
+
+            return create();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns borrowed connection back to the pool.
+     * If the connection is broken, or pool is already closed, connection is closed instead.
+     *
+     * @param pooled connection to return.
+     */
+    void release(PooledConnection pooled) {
+        try {
+            if (closed || pooled.getConnection().isClosed()) {
+                discard(pooled);
+                return;
+            }
+            // Connection may be returned in the middle of the failed transaction.
+            if (!pooled.getConnection().getAutoCommit()) {
+                pooled.getConnection().rollback();
+                pooled.getConnection().setAutoCommit(true);
+            }
+
+            pooled.touch();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Cannot return connection to the pool: " + e.getMessage(), e);
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections will be closed once they are released.
+     */
+    @Override
+    public void close() {
+        LOGGER.info("Closing DB connection pool...");
+        closed = true;
+        evictor.shutdownNow();
+
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+
+        Arrays.fill(password, ' ');
+    }
+
+    /**
+     * Closes all idle connections and opens minSize new ones.
+     * Used to restore the pool after DB goes down, since all idle connections are broken by then.
+     *
+     * @throws SQLException on a database access error or other errors.
+     */
+    void reset() throws SQLException {
+        LOGGER.info("Resetting DB connection pool...");
+        PooledConnection pooled;
+
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+
+        fill();
+    }
+
+    /**
+     * Returns number of the open connections.
+     *
+     * @return number of the open connections.
+     */
+    int size() {
+        return total.get();
+    }
+
+    /**
+     * Returns number of the idle connections.
+     *
+     * @return number of the idle connections.
+     */
+    int idleSize() {
+        return idle.size();
+    }
+
+    /**
+     * Opens connections until pool has at least minSize connections.
+     *
+     * @throws SQLException on a database access error or other errors.
+     */
+    private void fill() throws SQLException {
+        while (total.get() < config.getMinSize()) {
+            idle.offerLast(create());
+        }
+    }
+
+    /**
+     * Opens new connection.
+     *
+     * @return new connection.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private PooledConnection create() throws SQLException {
+        LOGGER.info("Opening new pooled DB connection...");
+        Connection conn = DriverManager.getConnection(connString, userName, new String(password));
+        total.incrementAndGet();
+
+        return new PooledConnection(conn, new StatementCache(statementCacheSize, statementCacheCounters));
+    }
+
+    /**
+     * Validates connection before it's borrowed.
+     *
+     * @param pooled connection to validate.
+     * @return true if connection is valid, false otherwise.
+     */
+    private boolean isValid(PooledConnection pooled) {
+        if (System.nanoTime() - pooled.getLastUsed() < TimeUnit.MILLISECONDS.toNanos(validationBypassMillis)) {
+            return true;
+        }
+
+        try {
+            return pooled.getConnection().isValid(defaultTimeoutValidation);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes the connection and removes it from the pool.
+     *
+     * @param pooled connection to close.
+     */
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        pooled.getStatementCache().close();
+
+        try {
+            pooled.getConnection().close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /**
+     * Closes idle connections that weren't used for longer than idle timeout,
+     * but keeps at least minSize connections open.
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        long idleTimeout = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+
+        while (oldestFirst.hasNext() && total.get() > config.getMinSize()) {
+            PooledConnection pooled = oldestFirst.next();
+
+            if (now - pooled.getLastUsed() < idleTimeout) {
+                break;
+            }
+            // Connection might be borrowed in the meantime.
+            if (idle.removeLastOccurrence(pooled)) {
+                LOGGER.fine("Evicting idle DB connection...");
+                discard(pooled);
+            }
+        }
+    }
+
+    /**
+     * Connection owned by the pool.
+     *
+     * @author Pogrebenko Vasily, BS-81
+     * @version 1.4.0
+     * @since 1.4.0
+     */
+    static final class PooledConnection {
+        private final Connection connection;
+        // Prepared statements of this connection.
+        private final StatementCache statementCache;
+        // Last time connection was returned to the pool, System.nanoTime().
+        private volatile long lastUsed = System.nanoTime();
+
+        /**
+         * Wraps given connection.
+         *
+         * @param connection     connection to wrap.
+         * @param statementCache statement cache of the connection.
+         */
+        PooledConnection(Connection connection, StatementCache statementCache) {
+            this.connection = connection;
+            this.statementCache = statementCache;
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+
+        StatementCache getStatementCache() {
+            return statementCache;
+        }
+
+        long getLastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Marks connection as used right now.
+         */
+        void touch() {
+            lastUsed = System.nanoTime();
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package pogrebenko.lab3db.sqldatabase.database.core;
 
-import pogrebenko.lab3db.commonutil.CommonUtil;
 import pogrebenko.lab3db.sqldatabase.common.contract.ICore;
+import pogrebenko.lab3db.sqldatabase.common.metrics.HealthMetrics;
+import pogrebenko.lab3db.sqldatabase.common.metrics.StatementCacheStats;
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.addParams;
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.closeQuietly;
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.getInsertedKeys;
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.isConnectionError;
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.newStreamingStatement;
+
 /**
  * ICore SQL core implementation.
  * Handles all basic operations and options that will be common for any SQL database.
@@ -22,6 +31,10 @@ public class Core implements ICore {
     // Statement and SQL ping timeouts.
     private final static int defaultTimeoutPing = 2;
     private final static int defaultTimeoutStmt = 3;
+    // Interval of the background connection check, in milliseconds.
+    private final static long defaultPingInterval = 5_000;
+    // Max number of the cached prepared statements.
+    private final static int defaultStatementCacheSize = 32;
 
     private static final Logger LOGGER = LoggerWrapper.getLogger();
     // Connection string for given DB.
@@ -41,6 +54,12 @@ public class Core implements ICore {
     private final char[] password;
     // DB connection
     private Connection conn = null;
+    // Background pinger, that checks connection and reconnects if DB goes down.
+    private final HealthChecker healthChecker;
+    // Prepared statements of the current connection, so static queries aren't prepared on every call.
+    // Recreated on reconnect, counters are kept.
+    private final StatementCache.Counters statementCacheCounters = new StatementCache.Counters();
+    private StatementCache statementCache = new StatementCache(defaultStatementCacheSize, statementCacheCounters);
 
     /**
      * Creates an SQL connection.
@@ -69,23 +88,8 @@ public class Core implements ICore {
 
         DriverManager.registerDriver(driver);
         open(userName, password);
-    }
-
-    /**
-     * Adds connection params to the sql connection.
-     *
-     * @param connString connection string to edit.
-     * @param params     params to add.
-     * @return modified connection string.
-     */
-    private static String addParams(String connString, String... params) {
-        StringBuilder newConn = new StringBuilder(String.format("%s?", connString));
-
-        for (String param : params) {
-            newConn.append(String.format("%s&", param));
-        }
 
-        return CommonUtil.cutEndChars(newConn.toString(), 1);
+        healthChecker = new HealthChecker("db-core-pinger", defaultPingInterval, this::ping, this::restart);
     }
 
     /**
@@ -112,6 +116,8 @@ public class Core implements ICore {
      */
     public synchronized void close() throws SQLException {
         LOGGER.info("Closing DB... ");
+        healthChecker.close();
+        statementCache.close();
         Arrays.fill(password, ' ');
 
         if (conn == null) {
@@ -123,6 +129,7 @@ public class Core implements ICore {
 
     /**
      * Executes the query built from the passed parameters, and returns the ResultSet of the execution.
+     * Statement is returned to the statement cache once the ResultSet is closed.
      *
      * @param query  query to prepare.
      * @param params query parameters.
@@ -131,12 +138,63 @@ public class Core implements ICore {
      */
     public synchronized ResultSet executeQuery(String query, Object... params) throws SQLException {
         LOGGER.info("Executing SQL query... ");
+        StatementCache cache = statementCache;
+        PreparedStatement exec = null;
+        boolean returned = false;
+
+        try {
+            exec = prepareStatement(takeStatement(cache, query), params);
+            ResultSet rs = exec.executeQuery();
+
+            PreparedStatement used = exec;
+            ResultSet wrapped = CloseHook.wrap(ResultSet.class, rs, () -> cache.put(query, used));
+            returned = true;
+
+            return wrapped;
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            // Statement may be in the broken state after the error, so it's closed instead of caching.
+            if (!returned) {
+                closeQuietly(exec);
+            }
+        }
+    }
 
-        PreparedStatement exec = prepareStatement(getStatement(query), params);
-        ResultSet rs = exec.executeQuery();
-        exec.closeOnCompletion(); // Close statement after ResultSet is closed.
+    /**
+     * Executes the query and returns forward-only, read-only ResultSet, that fetches rows by fetchSize chunks.
+     * Statement isn't cached, since it has its own fetch size, and it's closed once the ResultSet is closed.
+     *
+     * @param query     query to prepare.
+     * @param fetchSize number of rows to fetch from DB at once.
+     * @param params    query parameters.
+     * @return streaming ResultSet.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public synchronized ResultSet executeStreamingQuery(
+            String query,
+            int fetchSize,
+            Object... params
+    ) throws SQLException {
+        LOGGER.info(() -> String.format("Executing streaming SQL query with fetch size %d... ", fetchSize));
+        ensureConnection();
+        PreparedStatement exec = null;
+        boolean returned = false;
+
+        try {
+            exec = prepareStatement(newStreamingStatement(conn, query, fetchSize), params);
+            ResultSet rs = exec.executeQuery();
+            exec.closeOnCompletion(); // Close statement after ResultSet is closed.
+            returned = true;
 
-        return rs;
+            return rs;
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            if (!returned) {
+                closeQuietly(exec);
+            }
+        }
     }
 
     /**
@@ -172,13 +230,47 @@ public class Core implements ICore {
             // Rollback changes if something goes wrong.
             conn.rollback();
 
-            throw e;
+            throw onError(e);
         } finally {
             // Set autocommit on, so other methods would be simpler to implement.
             conn.setAutoCommit(true);
         }
     }
 
+    /**
+     * Executes several batches in a single transaction, so either all of them are applied, or none.
+     *
+     * @param batches batches {<query> : <parameter sets>}, executed in the map iteration order.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public synchronized void executeBatches(Map<String, List<Object[]>> batches) throws SQLException {
+        LOGGER.info(() -> String.format("Executing %d SQL batch queries in a single transaction... ", batches.size()));
+        ensureConnection();
+
+        try {
+            conn.setAutoCommit(false);
+
+            for (Map.Entry<String, List<Object[]>> batch : batches.entrySet()) {
+                try (PreparedStatement stmt = getStatement(batch.getKey())) {
+                    for (Object[] params : batch.getValue()) {
+                        prepareStatement(stmt, params);
+                        stmt.addBatch();
+                    }
+
+                    stmt.executeBatch();
+                }
+            }
+
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+
+            throw onError(e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
     /**
      * Executes the query built from the passed parameters, and returns the new generated id's, if any.
      *
@@ -189,21 +281,90 @@ public class Core implements ICore {
      */
     public synchronized ArrayList<Integer> execute(String query, Object... params) throws SQLException {
         LOGGER.info("Executing SQL statement... ");
+        StatementCache cache = statementCache;
+        PreparedStatement exec = null;
+        boolean cached = false;
 
-        try (PreparedStatement exec = prepareStatement(getStatement(query), params)) {
+        try {
+            exec = prepareStatement(takeStatement(cache, query), params);
             exec.execute();
-            return getInsertedKeys(exec.getGeneratedKeys());
+            ArrayList<Integer> keys = getInsertedKeys(exec.getGeneratedKeys());
+
+            cache.put(query, exec);
+            cached = true;
+
+            return keys;
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            if (!cached) {
+                closeQuietly(exec);
+            }
+        }
+    }
+
+    /**
+     * Executes the update built from the passed parameters, and returns the number of affected rows.
+     *
+     * @param query  query to prepare.
+     * @param params query parameters.
+     * @return number of affected rows.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public synchronized int executeUpdate(String query, Object... params) throws SQLException {
+        LOGGER.info("Executing SQL update... ");
+        StatementCache cache = statementCache;
+        PreparedStatement exec = null;
+        boolean cached = false;
+
+        try {
+            exec = prepareStatement(takeStatement(cache, query), params);
+            int updated = exec.executeUpdate();
+
+            cache.put(query, exec);
+            cached = true;
+
+            return updated;
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            if (!cached) {
+                closeQuietly(exec);
+            }
+        }
+    }
+
+    /**
+     * Executes the schema change (DDL) statement without query timeout.
+     * Connection is locked until the statement is done, so the other queries wait for it.
+     *
+     * @param query DDL statement to execute.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public synchronized void executeDDL(String query) throws SQLException {
+        LOGGER.info("Executing SQL DDL statement without timeout, it may take a while... ");
+        ensureConnection();
+        long start = System.nanoTime();
+
+        try (Statement statement = conn.createStatement()) {
+            statement.setQueryTimeout(0);
+            statement.execute(query);
+        } catch (SQLException e) {
+            throw onError(e);
         }
+
+        LOGGER.info(() -> String.format("SQL DDL statement done in %d ms", (System.nanoTime() - start) / 1_000_000));
     }
 
     /**
      * Returns new statement from given connection with specified parameters.
+     * Returned statement isn't cached, and must be closed by the caller.
      *
      * @param query the query from which the statement is formed.
      * @throws SQLException on a database access error or other errors.
      */
     public PreparedStatement getStatement(String query) throws SQLException {
-        LOGGER.info(String.format("Generating SQL statement with timeout %d... ", defaultTimeoutStmt));
+        LOGGER.info(() -> String.format("Generating SQL statement with timeout %d... ", defaultTimeoutStmt));
         ensureConnection();
         // TODO: RETURN_GENERATED_KEYS depends on driver realisation, and some drivers may not work correctly.
         //  Better change it on explicit key definition (pass required key field to this function).
@@ -213,6 +374,21 @@ public class Core implements ICore {
         return statement;
     }
 
+    /**
+     * Takes statement for the given query from the statement cache, or prepares new one on cache miss.
+     *
+     * @param cache statement cache of the current connection.
+     * @param query the query from which the statement is formed.
+     * @return statement, that must be returned to the cache (or closed) after execution.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private PreparedStatement takeStatement(StatementCache cache, String query) throws SQLException {
+        ensureConnection();
+        PreparedStatement statement = cache.take(query);
+
+        return statement != null ? statement : getStatement(query);
+    }
+
     /**
      * Prepares statement for the execution.
      *
@@ -236,29 +412,47 @@ public class Core implements ICore {
     }
 
     /**
-     * Checks for connection. If it's invalid - makes an attempt to reconnect via "restart" method.
+     * Checks for connection. Connection itself is checked by the background health checker,
+     * so only its last known state is read here, without any round-trip to the DB.
+     * If connection is down, background reconnect is requested, and the query fails immediately.
      *
-     * @throws SQLException on a database access error or other errors.
+     * @throws SQLException if connection is down.
      */
     private void ensureConnection() throws SQLException {
-        try {
-            // TODO: Checking connection with every query is a massive overkill.
-            //  In golang i usually create a "pinger" function, that ping DB every N seconds,
-            //  and do something if DB is down. But I'm not sure if we are allowed to use threads,
-            //  so I`ll leave it like this for now.
-            LOGGER.info("Checking SQL connection... ");
-
-            if (conn == null) {
-                throw new SQLException("Cannot do query on DB, connection is null!");
-            }
+        if (conn == null || !healthChecker.isHealthy()) {
+            healthChecker.requestCheck();
+            throw new SQLException("Cannot do query on DB, connection is down! Trying to reconnect in background...");
+        }
+    }
 
-            if (!conn.isValid(defaultTimeoutPing)) {
-                throw new SQLException("Cannot do query on DB, connection isn't valid!");
-            }
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error, trying to reconnect to DB: " + e.getMessage(), e);
-            restart();
+    /**
+     * Reports connection errors to the health checker, so reconnection starts right away,
+     * without waiting for the next scheduled ping.
+     *
+     * @param e query execution error.
+     * @return the same error, to rethrow it.
+     */
+    private SQLException onError(SQLException e) {
+        if (isConnectionError(e)) {
+            LOGGER.log(Level.SEVERE, "Connection error, trying to reconnect to DB: " + e.getMessage(), e);
+            healthChecker.reportFailure();
+        }
+
+        return e;
+    }
+
+    /**
+     * Checks the DB connection. Called by the health checker only.
+     *
+     * @return always true, connection is always checked.
+     * @throws SQLException if connection isn't valid.
+     */
+    private synchronized boolean ping() throws SQLException {
+        if (conn == null || !conn.isValid(defaultTimeoutPing)) {
+            throw new SQLException("DB connection isn't valid!");
         }
+
+        return true;
     }
 
     /**
@@ -268,6 +462,9 @@ public class Core implements ICore {
      */
     private synchronized void restart() throws SQLException {
         LOGGER.info("Trying to restart DB... ");
+        // Cached statements belong to the old connection.
+        statementCache.close();
+        statementCache = new StatementCache(defaultStatementCacheSize, statementCacheCounters);
         // Try to close connection anyway, even if it's already closed.
         try {
             conn.close();
@@ -280,22 +477,20 @@ public class Core implements ICore {
     }
 
     /**
-     * Parses the auto generated keys from the ResultSet.
+     * Returns the connection health metrics, collected by the background health checker.
      *
-     * @param rs ResultSet to parse.
-     * @return array of generated indices.
-     * @throws SQLException on a database access error or other errors.
+     * @return connection health metrics.
      */
-    private ArrayList<Integer> getInsertedKeys(ResultSet rs) throws SQLException {
-        LOGGER.finest("Parsing SQL quto generated keys...");
-        ArrayList<Integer> keys = new ArrayList<>();
-
-        try (rs) {
-            while (rs.next()) {
-                keys.add(rs.getInt(1));
-            }
-        }
+    public HealthMetrics getHealthMetrics() {
+        return healthChecker.getMetrics();
+    }
 
-        return keys;
+    /**
+     * Returns the prepared statement cache counters.
+     *
+     * @return statement cache stats.
+     */
+    public StatementCacheStats getStatementCacheStats() {
+        return statementCacheCounters.snapshot();
     }
 }
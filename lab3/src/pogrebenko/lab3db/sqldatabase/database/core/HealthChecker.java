@@ -0,0 +1,248 @@
+package pogrebenko.lab3db.sqldatabase.database.core;
+
+import pogrebenko.lab3db.sqldatabase.common.metrics.HealthMetrics;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background DB "pinger".
+ * Pings the DB every N milliseconds, and if DB is down - tries to reconnect until it's up again.
+ * Query methods of the core only read the volatile state flag, instead of checking the connection on every query.
+ * <p>
+ * All checks are done on the single background thread, so ping and reconnect never run at the same time.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+class HealthChecker implements AutoCloseable {
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+
+    private final SQLCheck pinger;
+    private final SQLAction reconnector;
+    private final ScheduledExecutorService scheduler;
+    // Prevents queueing of multiple out-of-schedule checks.
+    private final AtomicBoolean checkRequested = new AtomicBoolean(false);
+    // The only field that is read by the query methods.
+    private volatile boolean healthy = true;
+
+    // Metrics, guarded by "this".
+    private long pingCount = 0;
+    private long failedPingCount = 0;
+    private long lastPingNanos = 0;
+    private long totalPingNanos = 0;
+    private long reconnectCount = 0;
+    private long degradedSince = 0;
+    private long degradedNanos = 0;
+
+    /**
+     * Creates and starts the health checker.
+     *
+     * @param name           name of the checker thread.
+     * @param intervalMillis ping interval.
+     * @param pinger         check of the connection, should throw if connection is broken.
+     * @param reconnector    action that restores the connection.
+     */
+    HealthChecker(String name, long intervalMillis, SQLCheck pinger, SQLAction reconnector) {
+        this.pinger = pinger;
+        this.reconnector = reconnector;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the last known connection state.
+     *
+     * @return true if connection is considered alive, false otherwise.
+     */
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Marks connection as broken (e.g. query failed with connection error) and requests reconnection.
+     */
+    void reportFailure() {
+        markDegraded();
+        requestCheck();
+    }
+
+    /**
+     * Requests out-of-schedule check (and reconnect, if connection is down) in background.
+     */
+    void requestCheck() {
+        if (checkRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    checkRequested.set(false);
+                    check();
+                });
+            } catch (RuntimeException e) {
+                // Checker is already closed.
+                checkRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns snapshot of the collected metrics.
+     *
+     * @return health metrics.
+     */
+    synchronized HealthMetrics getMetrics() {
+        long degraded = degradedNanos;
+
+        if (!healthy) {
+            degraded += System.nanoTime() - degradedSince;
+        }
+
+        return new HealthMetrics(
+                healthy,
+                pingCount,
+                failedPingCount,
+                lastPingNanos / 1e6,
+                pingCount == 0 ? 0 : totalPingNanos / 1e6 / pingCount,
+                reconnectCount,
+                TimeUnit.NANOSECONDS.toMillis(degraded)
+        );
+    }
+
+    /**
+     * Stops the checker thread.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Pings the DB, or tries to reconnect if it's down.
+     * Catches everything, because exception will silently cancel all further scheduled checks.
+     */
+    private void check() {
+        try {
+            if (healthy && ping()) {
+                return;
+            }
+
+            reconnect();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "DB health check failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Pings the DB and records the latency. Skipped ping (e.g. all connections are busy) isn't recorded,
+     * and connection is considered alive: busy DB isn't an outage.
+     *
+     * @return true if ping succeeded or was skipped, false otherwise.
+     */
+    private boolean ping() {
+        long start = System.nanoTime();
+
+        try {
+            if (!pinger.check()) {
+                LOGGER.fine("DB ping skipped, all connections are busy");
+
+                return true;
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "DB ping failed: " + e.getMessage(), e);
+
+            synchronized (this) {
+                failedPingCount++;
+            }
+            markDegraded();
+
+            return false;
+        }
+
+        long latency = System.nanoTime() - start;
+
+        synchronized (this) {
+            pingCount++;
+            lastPingNanos = latency;
+            totalPingNanos += latency;
+        }
+
+        return true;
+    }
+
+    /**
+     * Tries to reconnect to the DB. On success marks connection as healthy.
+     */
+    private void reconnect() {
+        LOGGER.info("Trying to reconnect to DB in background... ");
+
+        try {
+            reconnector.run();
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "DB reconnect failed: " + e.getMessage(), e);
+            return;
+        }
+
+        if (!ping()) {
+            return;
+        }
+
+        synchronized (this) {
+            reconnectCount++;
+
+            if (!healthy) {
+                degradedNanos += System.nanoTime() - degradedSince;
+                healthy = true;
+            }
+        }
+
+        LOGGER.info("DB connection restored.");
+    }
+
+    /**
+     * Marks connection as broken and starts measuring the downtime.
+     */
+    private synchronized void markDegraded() {
+        if (healthy) {
+            degradedSince = System.nanoTime();
+            healthy = false;
+        }
+    }
+
+    /**
+     * Check of the DB connection.
+     */
+    @FunctionalInterface
+    interface SQLCheck {
+        /**
+         * Checks the connection.
+         *
+         * @return true if connection was checked, false if check was skipped.
+         * @throws SQLException if connection is broken.
+         */
+        boolean check() throws SQLException;
+    }
+
+    /**
+     * Action on the DB connection.
+     */
+    @FunctionalInterface
+    interface SQLAction {
+        /**
+         * Runs the action.
+         *
+         * @throws SQLException on a database access error or other errors.
+         */
+        void run() throws SQLException;
+    }
+}
@@ -0,0 +1,75 @@
+package pogrebenko.lab3db.sqldatabase.database.core;
+
+/**
+ * Settings of the connection pool used by {@link PooledCore}.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class PoolConfig {
+    // Default settings, fine for the single user desktop app.
+    public static final PoolConfig DEFAULT = new PoolConfig(1, 4, 5_000, 60_000);
+
+    // Number of connections that are always kept open.
+    private final int minSize;
+    // Max number of connections opened at the same time.
+    private final int maxSize;
+    // How long to wait for the free connection, before giving up.
+    private final long acquireTimeoutMillis;
+    // How long unused connection may stay open (if there are more than minSize connections).
+    private final long idleTimeoutMillis;
+
+    /**
+     * Creates connection pool settings.
+     *
+     * @param minSize              number of connections that are always kept open.
+     * @param maxSize              max number of connections opened at the same time.
+     * @param acquireTimeoutMillis how long to wait for the free connection.
+     * @param idleTimeoutMillis    how long unused connection may stay open.
+     * @throws IllegalArgumentException if invalid settings were passed.
+     */
+    public PoolConfig(int minSize, int maxSize, long acquireTimeoutMillis, long idleTimeoutMillis) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid pool size: min %d, max %d", minSize, maxSize)
+            );
+        }
+
+        if (acquireTimeoutMillis <= 0 || idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Pool timeouts must be positive!");
+        }
+
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "PoolConfig{min=%d, max=%d, acquireTimeout=%dms, idleTimeout=%dms}",
+                minSize,
+                maxSize,
+                acquireTimeoutMillis,
+                idleTimeoutMillis
+        );
+    }
+}
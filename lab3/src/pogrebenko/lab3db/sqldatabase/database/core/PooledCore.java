@@ -0,0 +1,559 @@
+package pogrebenko.lab3db.sqldatabase.database.core;
+
+import pogrebenko.lab3db.sqldatabase.common.contract.ICore;
+import pogrebenko.lab3db.sqldatabase.common.metrics.HealthMetrics;
+import pogrebenko.lab3db.sqldatabase.common.metrics.StatementCacheStats;
+import pogrebenko.lab3db.sqldatabase.database.core.ConnectionPool.PooledConnection;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.addParams;
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.closeQuietly;
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.getInsertedKeys;
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.isConnectionError;
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.newStreamingStatement;
+
+/**
+ * ICore SQL core implementation backed by the connection pool.
+ * Unlike {@link Core}, methods are not synchronized: each call borrows its own connection,
+ * so different requests (search, edit, log write, etc.) are executed in parallel.
+ * <p>
+ * Connection is returned to the pool right after execute() call,
+ * or after returned ResultSet (executeQuery) or PreparedStatement (getStatement) is closed.
+ * So, results of this methods MUST be closed by the caller (they already are, via try(...) or loadX parsers).
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class PooledCore implements ICore {
+    // Statement and SQL ping timeouts.
+    private final static int defaultTimeoutPing = 2;
+    private final static int defaultTimeoutStmt = 3;
+    // Interval of the background connection check, in milliseconds.
+    private final static long defaultPingInterval = 5_000;
+    // Max number of the cached prepared statements per connection.
+    private final static int defaultStatementCacheSize = 32;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    // Connection string for given DB.
+    private final String connString;
+    private final PoolConfig config;
+    // Pool of the DB connections.
+    private volatile ConnectionPool pool = null;
+    // Background pinger, that checks connections and resets the pool if DB goes down.
+    private final HealthChecker healthChecker;
+    // Counters of the statement caches of all pool connections.
+    private final StatementCache.Counters statementCacheCounters = new StatementCache.Counters();
+
+    /**
+     * Creates an SQL connection pool.
+     *
+     * @param connString connection string of the current DB.
+     * @param driver     driver of the current DB to register.
+     * @param userName   user of the DB to connect.
+     * @param password   user password of the DB to connect.
+     * @param config     connection pool settings.
+     * @param params     connection params.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public PooledCore(
+            String connString,
+            Driver driver,
+            String userName,
+            String password,
+            PoolConfig config,
+            String... params
+    ) throws SQLException {
+        LOGGER.info("Trying to establish pooled SQL connection... " + config);
+
+        this.connString = addParams(connString, params);
+        this.config = config;
+        // Register required SQL driver
+        DriverManager.registerDriver(driver);
+        open(userName, password);
+
+        healthChecker = new HealthChecker("db-pool-pinger", defaultPingInterval, this::ping, this::restart);
+    }
+
+    /**
+     * Opens the connection pool.
+     *
+     * @param userName username of the DB user.
+     * @param password password of the DB user.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public synchronized void open(String userName, String password) throws SQLException {
+        LOGGER.info("Opening DB connection pool... ");
+
+        if (pool != null) {
+            return;
+        }
+
+        pool = new ConnectionPool(
+                connString,
+                userName,
+                password.toCharArray(),
+                config,
+                defaultStatementCacheSize,
+                statementCacheCounters
+        );
+    }
+
+    /**
+     * Closes the connection pool.
+     */
+    public synchronized void close() {
+        LOGGER.info("Closing DB connection pool... ");
+        healthChecker.close();
+
+        if (pool == null) {
+            return;
+        }
+
+        pool.close();
+    }
+
+    /**
+     * Executes the query built from the passed parameters, and returns the ResultSet of the execution.
+     * Statement is returned to the connection statement cache, and connection is returned to the pool
+     * once the ResultSet is closed.
+     *
+     * @param query  query to prepare.
+     * @param params query parameters.
+     * @return ResultSet with retrieved data
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ResultSet executeQuery(String query, Object... params) throws SQLException {
+        LOGGER.info("Executing SQL query... ");
+        ConnectionPool current = getPool();
+        PooledConnection pooled = current.borrow();
+        PreparedStatement exec = null;
+        boolean returned = false;
+
+        try {
+            exec = prepareStatement(takeStatement(pooled, query), params);
+            ResultSet rs = exec.executeQuery();
+
+            PreparedStatement used = exec;
+            ResultSet wrapped = CloseHook.wrap(ResultSet.class, rs, () -> {
+                pooled.getStatementCache().put(query, used);
+                current.release(pooled);
+            });
+            returned = true;
+
+            return wrapped;
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            // If ResultSet wasn't returned, nobody will close it, so clean up right here.
+            if (!returned) {
+                closeQuietly(exec);
+                current.release(pooled);
+            }
+        }
+    }
+
+    /**
+     * Executes the query and returns forward-only, read-only ResultSet, that fetches rows by fetchSize chunks.
+     * Borrowed connection is held until the ResultSet is closed, so long reads keep one pool connection busy.
+     *
+     * @param query     query to prepare.
+     * @param fetchSize number of rows to fetch from DB at once.
+     * @param params    query parameters.
+     * @return streaming ResultSet.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ResultSet executeStreamingQuery(String query, int fetchSize, Object... params) throws SQLException {
+        LOGGER.info(() -> String.format("Executing streaming SQL query with fetch size %d... ", fetchSize));
+        ConnectionPool current = getPool();
+        PooledConnection pooled = current.borrow();
+        PreparedStatement exec = null;
+        boolean returned = false;
+
+        try {
+            exec = prepareStatement(newStreamingStatement(pooled.getConnection(), query, fetchSize), params);
+            ResultSet rs = exec.executeQuery();
+
+            PreparedStatement used = exec;
+            ResultSet wrapped = CloseHook.wrap(ResultSet.class, rs, () -> {
+                closeQuietly(used);
+                current.release(pooled);
+            });
+            returned = true;
+
+            return wrapped;
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            if (!returned) {
+                closeQuietly(exec);
+                current.release(pooled);
+            }
+        }
+    }
+
+    /**
+     * Executes the prepared batch statement in a separate transaction.
+     * Statement must be created via getStatement, it's closed (and its connection is released) afterwards.
+     *
+     * @param batchStmt batch to execute.
+     * @return an array of update counts containing one element for each command in the batch.
+     * @throws SQLException on a database access error or other errors.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public int[] executeBatch(PreparedStatement batchStmt) throws SQLException {
+        LOGGER.info("Executing SQL batch query... ");
+
+        try (batchStmt) {
+            // Each batch statement owns its connection, so transaction won't affect other callers.
+            Connection conn = batchStmt.getConnection();
+            conn.setAutoCommit(false);
+
+            try {
+                int[] res = batchStmt.executeBatch();
+                conn.commit();
+
+                return res;
+            } catch (SQLException e) {
+                conn.rollback();
+
+                throw onError(e);
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Executes several batches in a single transaction, so either all of them are applied, or none.
+     * All batches are executed on the single borrowed connection.
+     *
+     * @param batches batches {<query> : <parameter sets>}, executed in the map iteration order.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public void executeBatches(Map<String, List<Object[]>> batches) throws SQLException {
+        LOGGER.info(() -> String.format("Executing %d SQL batch queries in a single transaction... ", batches.size()));
+        ConnectionPool current = getPool();
+        PooledConnection pooled = current.borrow();
+        Connection conn = pooled.getConnection();
+
+        try {
+            conn.setAutoCommit(false);
+
+            try {
+                for (Map.Entry<String, List<Object[]>> batch : batches.entrySet()) {
+                    try (PreparedStatement stmt = newStatement(conn, batch.getKey())) {
+                        for (Object[] params : batch.getValue()) {
+                            prepareStatement(stmt, params);
+                            stmt.addBatch();
+                        }
+
+                        stmt.executeBatch();
+                    }
+                }
+
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            current.release(pooled);
+        }
+    }
+
+    /**
+     * Executes the query built from the passed parameters, and returns the new generated id's, if any.
+     *
+     * @param query  query to prepare.
+     * @param params query parameters.
+     * @return newly generated keys.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ArrayList<Integer> execute(String query, Object... params) throws SQLException {
+        LOGGER.info("Executing SQL statement... ");
+        ConnectionPool current = getPool();
+        PooledConnection pooled = current.borrow();
+        PreparedStatement exec = null;
+        boolean cached = false;
+
+        try {
+            exec = prepareStatement(takeStatement(pooled, query), params);
+            exec.execute();
+            ArrayList<Integer> keys = getInsertedKeys(exec.getGeneratedKeys());
+
+            pooled.getStatementCache().put(query, exec);
+            cached = true;
+
+            return keys;
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            // Statement may be in the broken state after the error, so it's closed instead of caching.
+            if (!cached) {
+                closeQuietly(exec);
+            }
+
+            current.release(pooled);
+        }
+    }
+
+    /**
+     * Executes the update built from the passed parameters, and returns the number of affected rows.
+     *
+     * @param query  query to prepare.
+     * @param params query parameters.
+     * @return number of affected rows.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public int executeUpdate(String query, Object... params) throws SQLException {
+        LOGGER.info("Executing SQL update... ");
+        ConnectionPool current = getPool();
+        PooledConnection pooled = current.borrow();
+        PreparedStatement exec = null;
+        boolean cached = false;
+
+        try {
+            exec = prepareStatement(takeStatement(pooled, query), params);
+            int updated = exec.executeUpdate();
+
+            pooled.getStatementCache().put(query, exec);
+            cached = true;
+
+            return updated;
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            // Statement may be in the broken state after the error, so it's closed instead of caching.
+            if (!cached) {
+                closeQuietly(exec);
+            }
+
+            current.release(pooled);
+        }
+    }
+
+    /**
+     * Executes the schema change (DDL) statement without query timeout.
+     * Statement isn't cached, borrowed connection is held until the statement is done.
+     *
+     * @param query DDL statement to execute.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public void executeDDL(String query) throws SQLException {
+        LOGGER.info("Executing SQL DDL statement without timeout, it may take a while... ");
+        ConnectionPool current = getPool();
+        PooledConnection pooled = current.borrow();
+        long start = System.nanoTime();
+
+        try (Statement statement = pooled.getConnection().createStatement()) {
+            statement.setQueryTimeout(0);
+            statement.execute(query);
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            current.release(pooled);
+        }
+
+        LOGGER.info(() -> String.format("SQL DDL statement done in %d ms", (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * Returns new statement on the borrowed connection. Returned statement isn't cached.
+     * Connection is returned to the pool once the statement is closed.
+     *
+     * @param query the query from which the statement is formed.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public PreparedStatement getStatement(String query) throws SQLException {
+        ConnectionPool current = getPool();
+        PooledConnection pooled = current.borrow();
+
+        PreparedStatement statement = null;
+        boolean returned = false;
+
+        try {
+            statement = newStatement(pooled.getConnection(), query);
+            PreparedStatement wrapped = CloseHook.wrap(
+                    PreparedStatement.class,
+                    statement,
+                    () -> current.release(pooled)
+            );
+            returned = true;
+
+            return wrapped;
+        } catch (SQLException e) {
+            throw onError(e);
+        } finally {
+            if (!returned) {
+                closeQuietly(statement);
+                current.release(pooled);
+            }
+        }
+    }
+
+    /**
+     * Prepares statement for the execution.
+     *
+     * @param statement statement to prepare
+     * @param params    query parameters.
+     * @return prepared statement ready for the execution.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public PreparedStatement prepareStatement(
+            PreparedStatement statement,
+            Object... params
+    ) throws SQLException {
+        LOGGER.finest("Preparing SQL statement...");
+
+        for (int i = 1; i < params.length + 1; i++) {
+            statement.setObject(i, params[i - 1]);
+        }
+
+        return statement;
+    }
+
+    /**
+     * Creates new statement on the given connection.
+     *
+     * @param conn  connection to use.
+     * @param query the query from which the statement is formed.
+     * @return new statement.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private PreparedStatement newStatement(Connection conn, String query) throws SQLException {
+        LOGGER.finest("Generating pooled SQL statement...");
+        PreparedStatement statement = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+        statement.setQueryTimeout(defaultTimeoutStmt);
+
+        return statement;
+    }
+
+    /**
+     * Takes statement for the given query from the connection statement cache, or prepares new one on cache miss.
+     *
+     * @param pooled borrowed connection.
+     * @param query  the query from which the statement is formed.
+     * @return statement, that must be returned to the cache (or closed) after execution.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private PreparedStatement takeStatement(PooledConnection pooled, String query) throws SQLException {
+        PreparedStatement statement = pooled.getStatementCache().take(query);
+
+        return statement != null ? statement : newStatement(pooled.getConnection(), query);
+    }
+
+    /**
+     * Returns the connection pool, or throws if the core wasn't opened.
+     *
+     * @return connection pool.
+     * @throws SQLException if the core wasn't opened.
+     */
+    private ConnectionPool getPool() throws SQLException {
+        ConnectionPool opened = pool;
+
+        if (opened == null) {
+            throw new SQLException("Cannot do query on DB, connection pool isn't opened!");
+        }
+        // Connection is checked by the background health checker, so only its last known state is read here.
+        if (!healthChecker.isHealthy()) {
+            healthChecker.requestCheck();
+            throw new SQLException("Cannot do query on DB, connection is down! Trying to reconnect in background...");
+        }
+
+        return opened;
+    }
+
+    /**
+     * Reports connection errors to the health checker, so reconnection starts right away,
+     * without waiting for the next scheduled ping.
+     *
+     * @param e query execution error.
+     * @return the same error, to rethrow it.
+     */
+    private SQLException onError(SQLException e) {
+        if (isConnectionError(e)) {
+            LOGGER.log(Level.SEVERE, "Connection error, trying to reconnect to DB: " + e.getMessage(), e);
+            healthChecker.reportFailure();
+        }
+
+        return e;
+    }
+
+    /**
+     * Checks one of the pool connections. Called by the health checker only.
+     * Check doesn't wait for the free connection: if all of them are busy, DB is in use, and check is skipped,
+     * so loaded pool isn't reported as the DB outage.
+     *
+     * @return true if connection was checked, false if all connections are busy.
+     * @throws SQLException if connection isn't valid.
+     */
+    private boolean ping() throws SQLException {
+        ConnectionPool opened = pool;
+
+        if (opened == null) {
+            throw new SQLException("DB connection pool isn't opened!");
+        }
+
+        PooledConnection pooled = opened.tryBorrow();
+
+        if (pooled == null) {
+            return false;
+        }
+
+        try {
+            if (!pooled.getConnection().isValid(defaultTimeoutPing)) {
+                throw new SQLException("DB connection isn't valid!");
+            }
+        } finally {
+            opened.release(pooled);
+        }
+
+        return true;
+    }
+
+    /**
+     * Reopens all idle pool connections. Called by the health checker only.
+     *
+     * @throws SQLException on a database access error or other errors.
+     */
+    private void restart() throws SQLException {
+        ConnectionPool opened = pool;
+
+        if (opened == null) {
+            throw new SQLException("DB connection pool isn't opened!");
+        }
+
+        opened.reset();
+    }
+
+    /**
+     * Returns the connection health metrics, collected by the background health checker.
+     *
+     * @return connection health metrics.
+     */
+    public HealthMetrics getHealthMetrics() {
+        return healthChecker.getMetrics();
+    }
+
+    /**
+     * Returns the prepared statement cache counters of all pool connections.
+     *
+     * @return statement cache stats.
+     */
+    public StatementCacheStats getStatementCacheStats() {
+        return statementCacheCounters.snapshot();
+    }
+}
@@ -0,0 +1,125 @@
+package pogrebenko.lab3db.sqldatabase.database.core;
+
+import pogrebenko.lab3db.sqldatabase.common.metrics.StatementCacheStats;
+
+import java.sql.PreparedStatement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.closeQuietly;
+
+/**
+ * Bounded LRU cache of the prepared statements of the single connection, keyed by SQL text.
+ * <p>
+ * Statement is removed from the cache while it's in use (take), and returned back after (put).
+ * So, if the same query is executed at the same time twice
+ * (e.g. ResultSet of the first one isn't closed yet), the second one just gets a new statement,
+ * and no ResultSet is closed under someone's feet.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+class StatementCache {
+    private final Counters counters;
+    // Access ordered map, eldest entry is the least recently used one.
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    // Closed cache doesn't accept statements anymore, since their connection is (being) closed.
+    private boolean closed = false;
+
+    /**
+     * Creates statement cache.
+     *
+     * @param capacity max number of the cached statements.
+     * @param counters counters to update, may be shared between caches of the different connections.
+     */
+    StatementCache(int capacity, Counters counters) {
+        this.counters = counters;
+        this.statements = new LinkedHashMap<>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+
+                counters.evictions.incrementAndGet();
+                counters.size.decrementAndGet();
+                closeQuietly(eldest.getValue());
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Takes statement for given query out of the cache.
+     *
+     * @param query SQL text of the statement.
+     * @return cached statement, or null if there is no such statement in the cache.
+     */
+    synchronized PreparedStatement take(String query) {
+        PreparedStatement statement = statements.remove(query);
+
+        if (statement == null) {
+            counters.misses.incrementAndGet();
+            return null;
+        }
+
+        counters.hits.incrementAndGet();
+        counters.size.decrementAndGet();
+
+        return statement;
+    }
+
+    /**
+     * Returns statement to the cache after it was used.
+     * If the cache already has statement for the same query, or cache is closed, given statement is closed.
+     *
+     * @param query     SQL text of the statement.
+     * @param statement statement to return.
+     */
+    synchronized void put(String query, PreparedStatement statement) {
+        if (closed || statements.containsKey(query)) {
+            closeQuietly(statement);
+            return;
+        }
+
+        counters.size.incrementAndGet();
+        statements.put(query, statement);
+    }
+
+    /**
+     * Closes all cached statements, statements that are returned after are closed right away.
+     * Must be called before the connection is closed.
+     */
+    synchronized void close() {
+        closed = true;
+
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+
+        counters.size.addAndGet(-statements.size());
+        statements.clear();
+    }
+
+    /**
+     * Cache counters.
+     */
+    static final class Counters {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+        private final AtomicLong size = new AtomicLong();
+
+        /**
+         * Returns snapshot of the counters.
+         *
+         * @return statement cache stats.
+         */
+        StatementCacheStats snapshot() {
+            return new StatementCacheStats(hits.get(), misses.get(), evictions.get(), size.get());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package pogrebenko.lab3db.sqldatabase.database.embedded.core;
+
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Embedded DB: directory with record files, one file per table.
+ * Plays the role of the SQL core for the embedded DBs, it opens tables, and closes them all at once.
+ * Opened tables are maintained periodically in background: changes are flushed to the storage device,
+ * and tables with too much garbage are compacted.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class EmbeddedStorage implements AutoCloseable {
+    // Extension of the table files.
+    private final static String tableExtension = ".rec";
+    // Interval of the tables flush and compaction check.
+    private final static long defaultMaintenanceIntervalMillis = 1_000;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    private final Path directory;
+    // Opened tables by name.
+    private final Map<String, RecordFile> tables = new HashMap<>();
+    private final ScheduledExecutorService maintainer;
+
+    /**
+     * Creates embedded DB, tables are opened on demand.
+     *
+     * @param directory DB directory, created if it doesn't exist.
+     */
+    public EmbeddedStorage(Path directory) {
+        this.directory = directory;
+        this.maintainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "embedded-db-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maintainer.scheduleWithFixedDelay(
+                this::maintain,
+                defaultMaintenanceIntervalMillis,
+                defaultMaintenanceIntervalMillis,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Opens table with given name, or returns already opened one.
+     *
+     * @param name table name.
+     * @return table record file.
+     * @throws SQLException if table file cannot be opened.
+     */
+    public synchronized RecordFile openTable(String name) throws SQLException {
+        RecordFile table = tables.get(name);
+
+        if (table == null) {
+            LOGGER.info(String.format("Opening embedded table '%s' in %s...", name, directory));
+
+            try {
+                Files.createDirectories(directory);
+                table = RecordFile.open(directory.resolve(name + tableExtension));
+            } catch (IOException e) {
+                throw toSQLException(e);
+            }
+
+            tables.put(name, table);
+        }
+
+        return table;
+    }
+
+    /**
+     * Returns the DB directory.
+     *
+     * @return DB directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Flushes and closes all opened tables.
+     *
+     * @throws SQLException if some tables cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws SQLException {
+        LOGGER.info("Closing embedded DB: " + directory);
+        maintainer.shutdownNow();
+        SQLException error = null;
+
+        for (RecordFile table : tables.values()) {
+            try {
+                table.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = toSQLException(e);
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+
+        tables.clear();
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Flushes and compacts (if needed) all opened tables. Errors are logged, tables are maintained on the next run.
+     * Synchronized with close, so closed tables are never maintained.
+     */
+    private synchronized void maintain() {
+        for (Map.Entry<String, RecordFile> table : tables.entrySet()) {
+            try {
+                table.getValue().maintain();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, String.format("Cannot maintain embedded table '%s'", table.getKey()), e);
+            }
+        }
+    }
+
+    /**
+     * Wraps file error into SQLException, that is expected by the DB interfaces.
+     *
+     * @param e file error.
+     * @return SQL exception.
+     */
+    public static SQLException toSQLException(IOException e) {
+        return new SQLException("Embedded DB error: " + e.getMessage(), e);
+    }
+}
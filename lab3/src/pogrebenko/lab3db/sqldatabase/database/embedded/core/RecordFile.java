@@ -0,0 +1,659 @@
+package pogrebenko.lab3db.sqldatabase.database.embedded.core;
+
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped file of the records, keyed by auto-incremented int ID (embedded DB table).
+ * <p>
+ * Every change (insert, update, delete, clear) is appended to the end of the file as a new record,
+ * and in-memory index (ID to offset of the latest record) is updated. Index is rebuilt by replaying the file on open.
+ * Records are protected by CRC, so torn record at the end of the file (after crash) is dropped on open.
+ * <p>
+ * Overwritten and deleted records are garbage. Once garbage takes more than a half of the file,
+ * live records are copied to the new file, that replaces the old one (compaction). It's checked on every
+ * update, delete and clear, and by the periodic maintenance.
+ * <p>
+ * Writes go to the mapped memory, so they survive app crash right away, and OS crash - once flushed
+ * (by the periodic maintenance, or on close).
+ * File size is limited by 2GB (single mapping).
+ * <p>
+ * File format: header (magic, version, next ID), then records:
+ * length of the rest of the record (int), CRC of the rest of the record (int), kind (byte), ID (int), payload.
+ * <p>
+ * Thread-safe: reads are executed in parallel, writes are exclusive.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class RecordFile implements Closeable {
+    // "LREC" in ASCII.
+    private final static int magic = 0x4C524543;
+    private final static int version = 1;
+    private final static int nextIdOffset = 8;
+    private final static int headerSize = 12;
+    // Length and CRC.
+    private final static int recordPrefixSize = 8;
+    // Kind and ID.
+    private final static int recordMetaSize = 5;
+    private final static byte kindPut = 1;
+    private final static byte kindDelete = 2;
+    private final static byte kindClear = 3;
+    // File is grown by doubling, starting from this size.
+    private final static int initialCapacity = 1 << 20;
+    // Compaction isn't worth it for less garbage.
+    private final static long minCompactionGarbage = 1 << 20;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    private final Path path;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    // Offset of the latest record of each ID, 0 if there is no such record.
+    private int[] offsets = new int[1_024];
+    // End of the last record.
+    private int end = headerSize;
+    private int nextId = 1;
+    private int count = 0;
+    // Size of the dead records.
+    private long garbage = 0;
+    // Compaction is disabled if the file can't be replaced (e.g. OS locks mapped files).
+    private boolean compactionEnabled = true;
+    // Mapped memory has changes, that aren't written to the storage device yet.
+    private boolean dirty = false;
+
+    /**
+     * Creates record file, it must be opened before use.
+     *
+     * @param path path of the file.
+     */
+    private RecordFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens record file, creates it if it doesn't exist, and rebuilds the index.
+     *
+     * @param path path of the file.
+     * @return opened record file.
+     * @throws IOException on file errors, or if file isn't a record file.
+     */
+    public static RecordFile open(Path path) throws IOException {
+        RecordFile file = new RecordFile(path);
+        file.map();
+        file.replay();
+
+        return file;
+    }
+
+    /**
+     * Returns number of the live records.
+     *
+     * @return number of records.
+     */
+    public int getCount() {
+        lock.readLock().lock();
+
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns payload of the record with given ID.
+     *
+     * @param id record ID.
+     * @return read-only payload, or null if there is no such record.
+     */
+    public ByteBuffer get(int id) {
+        lock.readLock().lock();
+
+        try {
+            return id > 0 && id < nextId && offsets[id] != 0 ? payload(offsets[id]) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the next chunk of records in ID order. Chunks are read under separate locks,
+     * so long scans don't block writers (records changed between chunks are seen by the next chunks).
+     *
+     * @param fromId    ID to start after (before for descending order), 0 for the first record in both orders.
+     * @param ascending true for ascending ID order, false for descending.
+     * @param maxCount  max number of records in the chunk.
+     * @return records, empty if there are no more records.
+     */
+    public List<Record> readChunk(int fromId, boolean ascending, int maxCount) {
+        lock.readLock().lock();
+
+        try {
+            List<Record> records = new ArrayList<>(Math.min(maxCount, count));
+
+            if (ascending) {
+                for (int id = Math.max(fromId, 0) + 1; id < nextId && records.size() < maxCount; id++) {
+                    addRecord(records, id);
+                }
+            } else {
+                int first = fromId <= 0 || fromId > nextId ? nextId - 1 : fromId - 1;
+
+                for (int id = first; id > 0 && records.size() < maxCount; id--) {
+                    addRecord(records, id);
+                }
+            }
+
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts new record.
+     *
+     * @param payload record payload.
+     * @return ID of the new record.
+     * @throws IOException on file errors.
+     */
+    public int insert(byte[] payload) throws IOException {
+        lock.writeLock().lock();
+
+        try {
+            int id = nextId;
+            put(id, payload);
+            writeNextId();
+
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts new records at once.
+     *
+     * @param payloads records payloads.
+     * @throws IOException on file errors.
+     */
+    public void insertAll(List<byte[]> payloads) throws IOException {
+        lock.writeLock().lock();
+
+        try {
+            for (byte[] payload : payloads) {
+                put(nextId, payload);
+            }
+
+            writeNextId();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces payload of the record with given ID.
+     *
+     * @param id      record ID.
+     * @param payload new payload.
+     * @return true if record was updated, false if there is no such record.
+     * @throws IOException on file errors.
+     */
+    public boolean update(int id, byte[] payload) throws IOException {
+        lock.writeLock().lock();
+
+        try {
+            if (id <= 0 || id >= nextId || offsets[id] == 0) {
+                return false;
+            }
+
+            put(id, payload);
+            compactIfNeeded();
+
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes record with given ID.
+     *
+     * @param id record ID.
+     * @return true if record was deleted, false if there is no such record.
+     * @throws IOException on file errors.
+     */
+    public boolean delete(int id) throws IOException {
+        lock.writeLock().lock();
+
+        try {
+            if (id <= 0 || id >= nextId || offsets[id] == 0) {
+                return false;
+            }
+
+            apply(kindDelete, id, append(kindDelete, id, new byte[0]));
+            compactIfNeeded();
+
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes all records, and resets IDs.
+     *
+     * @throws IOException on file errors.
+     */
+    public void clear() throws IOException {
+        lock.writeLock().lock();
+
+        try {
+            apply(kindClear, 0, append(kindClear, 0, new byte[0]));
+            writeNextId();
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes changes to the storage device, if there are any.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+
+        try {
+            forceIfDirty();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the file if garbage takes more than a half of it, and writes changes to the storage device.
+     *
+     * @throws IOException on file errors.
+     */
+    public void maintain() throws IOException {
+        lock.writeLock().lock();
+
+        try {
+            compactIfNeeded();
+            forceIfDirty();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes and closes the file.
+     *
+     * @throws IOException on file errors.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+
+        try {
+            LOGGER.info(String.format("Closing record file %s: %d records, %d bytes...", path, count, end));
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens the file channel and maps the file, creates header for the new file.
+     *
+     * @throws IOException on file errors, or if file isn't a record file.
+     */
+    private void map() throws IOException {
+        boolean created = Files.notExists(path);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Record file is too big: " + path);
+        }
+        // Mapping beyond the end of the file extends the file.
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, initialCapacity));
+
+        if (created || size == 0) {
+            buffer.putInt(0, magic);
+            buffer.putInt(4, version);
+            writeNextId();
+        } else if (size < headerSize || buffer.getInt(0) != magic || buffer.getInt(4) != version) {
+            channel.close();
+            throw new IOException("File isn't a record file, or has unsupported version: " + path);
+        }
+    }
+
+    /**
+     * Rebuilds the index by replaying all records of the file.
+     * Replay stops at the first incomplete or corrupted record, the rest of the file is cleared.
+     */
+    private void replay() {
+        int headerNextId = buffer.getInt(nextIdOffset);
+        int position = headerSize;
+        int capacity = buffer.capacity();
+        boolean torn = false;
+
+        while (position + recordPrefixSize + recordMetaSize <= capacity) {
+            int length = buffer.getInt(position);
+
+            if (length == 0) {
+                break;
+            }
+
+            if (length < recordMetaSize || position + recordPrefixSize + length > capacity
+                    || crc(position + recordPrefixSize, length) != buffer.getInt(position + 4)) {
+                torn = true;
+                break;
+            }
+
+            byte kind = buffer.get(position + recordPrefixSize);
+            int id = buffer.getInt(position + recordPrefixSize + 1);
+            apply(kind, id, position);
+            position += recordPrefixSize + length;
+        }
+
+        end = position;
+
+        if (torn) {
+            LOGGER.warning(String.format("Record file %s has incomplete record at %d, it's dropped", path, position));
+
+            byte[] zeros = new byte[Math.min(capacity - position, initialCapacity)];
+
+            for (int i = position; i < capacity; i += zeros.length) {
+                buffer.put(i, zeros, 0, Math.min(zeros.length, capacity - i));
+            }
+        }
+        // Header may be behind the records, if app crashed in between.
+        nextId = Math.max(nextId, headerNextId);
+        LOGGER.info(String.format("Opened record file %s: %d records, %d garbage bytes", path, count, garbage));
+    }
+
+    /**
+     * Appends record with new payload of the given ID, and updates the index.
+     *
+     * @param id      record ID.
+     * @param payload record payload.
+     * @throws IOException on file errors.
+     */
+    private void put(int id, byte[] payload) throws IOException {
+        apply(kindPut, id, append(kindPut, id, payload));
+    }
+
+    /**
+     * Updates the index with the record.
+     *
+     * @param kind     record kind.
+     * @param id       record ID.
+     * @param position offset of the record.
+     */
+    private void apply(byte kind, int id, int position) {
+        int size = recordPrefixSize + buffer.getInt(position);
+
+        switch (kind) {
+            case kindPut -> {
+                if (id >= offsets.length) {
+                    offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, id + 1));
+                }
+
+                if (offsets[id] == 0) {
+                    count++;
+                } else {
+                    garbage += recordSize(offsets[id]);
+                }
+
+                offsets[id] = position;
+                nextId = Math.max(nextId, id + 1);
+            }
+            case kindDelete -> {
+                if (id < offsets.length && offsets[id] != 0) {
+                    garbage += recordSize(offsets[id]);
+                    offsets[id] = 0;
+                    count--;
+                }
+                // Delete record itself is dropped by compaction as well.
+                garbage += size;
+            }
+            case kindClear -> {
+                Arrays.fill(offsets, 0);
+                count = 0;
+                nextId = 1;
+                // Everything before, and the clear record itself.
+                garbage = position + size - headerSize;
+            }
+            default -> LOGGER.warning(String.format("Unknown record kind %d at %d in %s", kind, position, path));
+        }
+    }
+
+    /**
+     * Appends record to the end of the file, file is grown if required.
+     *
+     * @param kind    record kind.
+     * @param id      record ID.
+     * @param payload record payload.
+     * @return offset of the record.
+     * @throws IOException on file errors.
+     */
+    private int append(byte kind, int id, byte[] payload) throws IOException {
+        int length = recordMetaSize + payload.length;
+        ensureCapacity((long) recordPrefixSize + length);
+        int position = end;
+
+        buffer.put(position + recordPrefixSize, kind);
+        buffer.putInt(position + recordPrefixSize + 1, id);
+        buffer.put(position + recordPrefixSize + recordMetaSize, payload);
+        buffer.putInt(position + 4, crc(position + recordPrefixSize, length));
+        // Length is written last, record isn't seen by replay without it.
+        buffer.putInt(position, length);
+        end = position + recordPrefixSize + length;
+        dirty = true;
+
+        return position;
+    }
+
+    /**
+     * Grows the file (doubles it), if there is not enough space for the record.
+     *
+     * @param recordSize size of the record to append.
+     * @throws IOException on file errors, or if file would be bigger than 2GB.
+     */
+    private void ensureCapacity(long recordSize) throws IOException {
+        long required = end + recordSize;
+
+        if (required <= buffer.capacity()) {
+            return;
+        }
+
+        long capacity = Math.max(required, (long) buffer.capacity() * 2);
+
+        if (capacity > Integer.MAX_VALUE) {
+            capacity = Integer.MAX_VALUE;
+
+            if (required > capacity) {
+                throw new IOException("Record file cannot be bigger than 2GB: " + path);
+            }
+        }
+
+        LOGGER.fine(String.format("Growing record file %s to %d bytes...", path, capacity));
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Copies live records to the new file and replaces the old file with it,
+     * if garbage takes more than a half of the file.
+     *
+     * @throws IOException on file errors.
+     */
+    private void compactIfNeeded() throws IOException {
+        if (!compactionEnabled || garbage < minCompactionGarbage || garbage * 2 < end - headerSize) {
+            return;
+        }
+
+        LOGGER.info(String.format("Compacting record file %s: %d of %d bytes are garbage...", path, garbage, end));
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        int[] newOffsets = new int[offsets.length];
+        int position = headerSize;
+
+        try (FileChannel out = FileChannel.open(
+                compacted,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        )) {
+            long size = end - garbage;
+            MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, initialCapacity));
+            target.putInt(0, magic);
+            target.putInt(4, version);
+            target.putInt(nextIdOffset, nextId);
+
+            for (int id = 1; id < nextId; id++) {
+                if (offsets[id] == 0) {
+                    continue;
+                }
+
+                int recordSize = recordSize(offsets[id]);
+                target.put(position, buffer, offsets[id], recordSize);
+                newOffsets[id] = position;
+                position += recordSize;
+            }
+
+            target.force();
+        }
+
+        try {
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warning(String.format("Cannot replace %s with compacted file, compaction is disabled: %s", path, e));
+            compactionEnabled = false;
+            Files.deleteIfExists(compacted);
+
+            return;
+        }
+
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        offsets = newOffsets;
+        end = position;
+        garbage = 0;
+        // Compacted file is forced before it replaces the old one.
+        dirty = false;
+    }
+
+    /**
+     * Writes changes to the storage device, if there are any. Must be called under the write lock.
+     */
+    private void forceIfDirty() {
+        if (dirty) {
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Adds record with given ID to the list, if it exists.
+     *
+     * @param records list of records.
+     * @param id      record ID.
+     */
+    private void addRecord(List<Record> records, int id) {
+        if (offsets[id] != 0) {
+            records.add(new Record(id, payload(offsets[id])));
+        }
+    }
+
+    /**
+     * Returns payload of the record.
+     * Old mapping stays valid, and is never changed (file is append-only), so payload may be read without lock.
+     *
+     * @param position offset of the record.
+     * @return read-only payload.
+     */
+    private ByteBuffer payload(int position) {
+        int length = buffer.getInt(position) - recordMetaSize;
+
+        return buffer.slice(position + recordPrefixSize + recordMetaSize, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns size of the record.
+     *
+     * @param position offset of the record.
+     * @return size of the record in bytes.
+     */
+    private int recordSize(int position) {
+        return recordPrefixSize + buffer.getInt(position);
+    }
+
+    /**
+     * Computes CRC of the file region.
+     *
+     * @param position region offset.
+     * @param length   region length.
+     * @return CRC of the region.
+     */
+    private int crc(int position, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(position, length));
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes next ID to the header.
+     */
+    private void writeNextId() {
+        buffer.putInt(nextIdOffset, nextId);
+        dirty = true;
+    }
+
+    /**
+     * Single record of the file.
+     */
+    public static final class Record {
+        private final int id;
+        private final ByteBuffer payload;
+
+        /**
+         * Creates record.
+         *
+         * @param id      record ID.
+         * @param payload read-only record payload.
+         */
+        Record(int id, ByteBuffer payload) {
+            this.id = id;
+            this.payload = payload;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public ByteBuffer getPayload() {
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package pogrebenko.lab3db.sqldatabase.database.embedded.medicine;
+
+import pogrebenko.lab3db.model.medicine.InvalidMedicineException;
+import pogrebenko.lab3db.model.medicine.Medicine;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+import pogrebenko.lab3db.sqldatabase.common.contract.IMedicineDB;
+import pogrebenko.lab3db.sqldatabase.common.contract.RowVisitor;
+import pogrebenko.lab3db.sqldatabase.database.embedded.core.EmbeddedStorage;
+import pogrebenko.lab3db.sqldatabase.database.embedded.core.RecordFile;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.BulkLoadMode;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.FilterField;
+import pogrebenko.lab3db.sqldatabase.database.mysql.medicine.MedicineQuery;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static pogrebenko.lab3db.sqldatabase.database.embedded.core.EmbeddedStorage.toSQLException;
+
+/**
+ * IMedicineDB embedded implementation.
+ * Represents a medicine DB stored in the local record file, so the app works without MySQL server.
+ * <p>
+ * Medicines are read by ID through the in-memory index, filters and searches scan the whole table.
+ * Filters follow MySQL semantics: strings are compared case-insensitively, null fields never match.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class EmbeddedMedicine implements IMedicineDB {
+    // Name of the medicine table.
+    private final static String tableName = "medicine";
+    // Number of records read under a single lock by the scans.
+    private final static int defaultChunkSize = 1_000;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    private final EmbeddedStorage storage;
+    // Medicine table, opened by initialize.
+    private volatile RecordFile table;
+    // Kept only to satisfy the interface, records are always appended the same way.
+    private volatile BulkLoadMode bulkLoadMode = BulkLoadMode.BATCH;
+
+    /**
+     * Creates an embedded medicine DB.
+     *
+     * @param storage embedded DB to store medicines in.
+     */
+    public EmbeddedMedicine(EmbeddedStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Opens medicine table, creates it if it doesn't exist.
+     *
+     * @throws SQLException if table cannot be opened.
+     */
+    public void initialize() throws SQLException {
+        LOGGER.info("Initializing embedded Medicine DB...");
+
+        table = storage.openTable(tableName);
+    }
+
+    /**
+     * Deletes all medicines, IDs start from 1 again.
+     *
+     * @throws SQLException on file errors.
+     */
+    public void truncateTable() throws SQLException {
+        LOGGER.info("Truncating table with medicines... ");
+
+        try {
+            table.clear();
+        } catch (IOException e) {
+            throw toSQLException(e);
+        }
+    }
+
+    /**
+     * Writes medicines array to DB at once.
+     *
+     * @param medicines medicines to insert.
+     * @throws SQLException on file errors.
+     */
+    public void writeMedicines(ArrayList<? extends Medicine> medicines) throws SQLException {
+        LOGGER.info(() -> String.format("Writing %d medicines to DB...", medicines.size()));
+        List<byte[]> payloads = new ArrayList<>(medicines.size());
+
+        for (Medicine medicine : medicines) {
+            payloads.add(MedicineCodec.encode(medicine));
+        }
+
+        try {
+            table.insertAll(payloads);
+        } catch (IOException e) {
+            throw toSQLException(e);
+        }
+    }
+
+    /**
+     * Returns the bulk load mode, embedded DB writes all medicines the same way regardless of it.
+     *
+     * @return bulk load mode.
+     */
+    public BulkLoadMode getBulkLoadMode() {
+        return bulkLoadMode;
+    }
+
+    /**
+     * Sets the bulk load mode, embedded DB writes all medicines the same way regardless of it.
+     *
+     * @param bulkLoadMode bulk load mode.
+     */
+    public void setBulkLoadMode(BulkLoadMode bulkLoadMode) {
+        LOGGER.info(() -> "Embedded DB ignores bulk load mode: " + bulkLoadMode);
+        this.bulkLoadMode = bulkLoadMode;
+    }
+
+    /**
+     * Writes medicine to DB.
+     *
+     * @param medicine medicine to insert to DB.
+     * @return index of the inserted medicine.
+     * @throws SQLException on file errors.
+     */
+    public int writeMedicine(Medicine medicine) throws SQLException {
+        LOGGER.info("Writing new medicine to DB...");
+
+        try {
+            int key = table.insert(MedicineCodec.encode(medicine));
+            LOGGER.info(() -> "New medicine generated ID is: " + key);
+
+            return key;
+        } catch (IOException e) {
+            throw toSQLException(e);
+        }
+    }
+
+    /**
+     * Returns medicines filtered by the specified parameters.
+     *
+     * @param filter the medicine field by which the filtering will be performed.
+     * @param param  the medicine field value by which the filtering will be performed.
+     * @return array of medicines from DB that have been filtered by the specified field and its value.
+     * @throws SQLException on file errors.
+     */
+    public ArrayList<MedicineID> getFilteredMedicines(FilterField filter, Object param) throws SQLException {
+        LOGGER.info(() -> String.format("Returning medicines from db with filter '%s' and value '%s': ", filter, param));
+        ArrayList<MedicineID> medicines = new ArrayList<>();
+
+        if (filter == FilterField.ID) {
+            MedicineID medicine = getMedicine(((Number) param).intValue());
+
+            if (medicine != null) {
+                medicines.add(medicine);
+            }
+
+            return medicines;
+        }
+
+        visitMedicines(filter, param, medicines::add);
+
+        return medicines;
+    }
+
+    /**
+     * Returns medicines found by the composite query (several predicates, sort and limit).
+     * If results are sorted by ID, scan stops once the limit is reached.
+     *
+     * @param query search query.
+     * @return array of medicines from DB that match the query.
+     * @throws SQLException on file errors.
+     */
+    public ArrayList<MedicineID> searchMedicines(MedicineQuery query) throws SQLException {
+        LOGGER.info(() -> "Searching medicines in db: " + query);
+        int limit = query.getLimit() == 0 ? Integer.MAX_VALUE : query.getLimit();
+        ArrayList<MedicineID> medicines = new ArrayList<>();
+
+        if (query.isSortedById()) {
+            scan(query.isAscending(), medicine -> {
+                if (query.test(medicine)) {
+                    medicines.add(medicine);
+                }
+
+                return medicines.size() < limit;
+            });
+
+            return medicines;
+        }
+
+        scan(true, medicine -> {
+            if (query.test(medicine)) {
+                medicines.add(medicine);
+            }
+
+            return true;
+        });
+
+        medicines.sort(query.getComparator());
+
+        if (medicines.size() > limit) {
+            medicines.subList(limit, medicines.size()).clear();
+        }
+
+        return medicines;
+    }
+
+    /**
+     * Streams medicines filtered by the specified parameters into the visitor, ordered by ID.
+     * Table is read in chunks, so memory usage doesn't depend on the table size.
+     *
+     * @param filter  the medicine field by which the filtering will be performed.
+     * @param param   the medicine field value by which the filtering will be performed.
+     * @param visitor visitor of the medicines.
+     * @param <E>     type of the visitor exception.
+     * @return number of visited medicines.
+     * @throws SQLException on file errors.
+     * @throws E            on visitor errors.
+     */
+    public <E extends Exception> long visitMedicines(
+            FilterField filter,
+            Object param,
+            RowVisitor<? super MedicineID, E> visitor
+    ) throws SQLException, E {
+        LOGGER.info(() -> String.format("Streaming medicines from db with filter '%s' and value '%s': ", filter, param));
+        MedicineQuery query = new MedicineQuery();
+
+        if (filter != FilterField.NONE) {
+            query.where(filter, param);
+        }
+
+        long visited = 0;
+        int lastId = 0;
+        List<RecordFile.Record> chunk;
+
+        while (!(chunk = table.readChunk(lastId, true, defaultChunkSize)).isEmpty()) {
+            for (RecordFile.Record record : chunk) {
+                MedicineID medicine = decode(record.getId(), record.getPayload());
+
+                if (medicine != null && query.test(medicine)) {
+                    visitor.visit(medicine);
+                    visited++;
+                }
+            }
+
+            lastId = chunk.get(chunk.size() - 1).getId();
+        }
+
+        return visited;
+    }
+
+    /**
+     * Returns all medicines from DB. Simplified usage of getFilteredMedicines(NONE, null)
+     *
+     * @return array of medicines from DB.
+     * @throws SQLException on file errors.
+     */
+    public ArrayList<MedicineID> getMedicines() throws SQLException {
+        LOGGER.info("Returning all medicines from the DB...");
+
+        return getFilteredMedicines(FilterField.NONE, null);
+    }
+
+    /**
+     * Returns single page of medicines ordered by ID, page is read through the index.
+     *
+     * @param afterId  ID after which the page starts (0 for the first page).
+     * @param pageSize max number of medicines in the page.
+     * @return page of medicines.
+     * @throws SQLException on file errors.
+     */
+    public ArrayList<MedicineID> getMedicinesPage(int afterId, int pageSize) throws SQLException {
+        LOGGER.info(() -> String.format("Returning page of %d medicines after ID %d from the DB...", pageSize, afterId));
+        ArrayList<MedicineID> medicines = new ArrayList<>(pageSize);
+
+        for (RecordFile.Record record : table.readChunk(afterId, true, pageSize)) {
+            MedicineID medicine = decode(record.getId(), record.getPayload());
+
+            if (medicine != null) {
+                medicines.add(medicine);
+            }
+        }
+
+        return medicines;
+    }
+
+    /**
+     * Returns medicine with given ID, it's read through the index.
+     *
+     * @param medicineID id of the medicine to get from DB.
+     * @return medicine, or null if there is no such medicine.
+     * @throws SQLException on file errors.
+     */
+    public MedicineID getMedicine(int medicineID) throws SQLException {
+        LOGGER.info(() -> "Returning single from DB, medicine ID: " + medicineID);
+        ByteBuffer payload = table.get(medicineID);
+
+        return payload == null ? null : decode(medicineID, payload);
+    }
+
+    /**
+     * Updates medicine with given ID with new parameters.
+     *
+     * @param medicine updated medicine to insert into DB.
+     * @throws SQLException on file errors.
+     */
+    public void updateMedicine(MedicineID medicine) throws SQLException {
+        LOGGER.info(() -> "Updating medicine with ID: " + medicine.getId());
+
+        try {
+            if (!table.update(medicine.getId(), MedicineCodec.encode(medicine))) {
+                LOGGER.warning("No medicine to update with ID: " + medicine.getId());
+            }
+        } catch (IOException e) {
+            throw toSQLException(e);
+        }
+    }
+
+    /**
+     * Deletes medicine with given ID.
+     *
+     * @param medicineID ID of the medicine to delete.
+     * @throws SQLException on file errors.
+     */
+    public void deleteMedicine(int medicineID) throws SQLException {
+        LOGGER.info(() -> "Deleting medicine with ID: " + medicineID);
+
+        try {
+            if (!table.delete(medicineID)) {
+                LOGGER.warning("No medicine to delete with ID: " + medicineID);
+            }
+        } catch (IOException e) {
+            throw toSQLException(e);
+        }
+    }
+
+    /**
+     * Scans the whole table in ID order, until the visitor stops it.
+     *
+     * @param ascending true for ascending ID order, false for descending.
+     * @param visitor   visitor of the medicines, returns false to stop the scan.
+     */
+    private void scan(boolean ascending, ScanVisitor visitor) {
+        int lastId = 0;
+        List<RecordFile.Record> chunk;
+
+        while (!(chunk = table.readChunk(lastId, ascending, defaultChunkSize)).isEmpty()) {
+            for (RecordFile.Record record : chunk) {
+                MedicineID medicine = decode(record.getId(), record.getPayload());
+
+                if (medicine != null && !visitor.visit(medicine)) {
+                    return;
+                }
+            }
+
+            lastId = chunk.get(chunk.size() - 1).getId();
+        }
+    }
+
+    /**
+     * Decodes medicine from the record, invalid medicines are skipped (same as MySQL DB does).
+     *
+     * @param id      medicine ID.
+     * @param payload record payload.
+     * @return decoded medicine, or null if it's invalid.
+     */
+    private static MedicineID decode(int id, ByteBuffer payload) {
+        try {
+            return MedicineCodec.decode(id, payload);
+        } catch (InvalidMedicineException e) {
+            LOGGER.log(Level.WARNING, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Visitor of the table scan.
+     */
+    @FunctionalInterface
+    private interface ScanVisitor {
+        /**
+         * Handles the single medicine.
+         *
+         * @param medicine medicine.
+         * @return true to continue the scan, false to stop it.
+         */
+        boolean visit(MedicineID medicine);
+    }
+}
@@ -0,0 +1,177 @@
+package pogrebenko.lab3db.sqldatabase.database.embedded.medicine;
+
+import pogrebenko.lab3db.model.medicine.InvalidMedicineException;
+import pogrebenko.lab3db.model.medicine.Medicine;
+import pogrebenko.lab3db.model.medicine.MedicineID;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Encodes medicines into the record payloads of the embedded DB, and decodes them back.
+ * <p>
+ * Payload: flags (byte), name, form, producer (length and UTF-8 bytes, -1 length for null),
+ * expiration and production dates (epoch millis, Long.MIN_VALUE for null), cost (int).
+ * ID isn't stored in the payload, it's the record ID.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+final class MedicineCodec {
+    private final static long nullDate = Long.MIN_VALUE;
+    private final static int nullString = -1;
+    private final static byte nullCostFlag = 1;
+    private final static byte nullPrescriptionFlag = 1 << 1;
+    private final static byte prescriptionOnlyFlag = 1 << 2;
+    // Flags, dates and cost.
+    private final static int fixedSize = 1 + 8 + 8 + 4;
+
+    /**
+     * Private constructor that throws an exception to prevent instantiation.
+     */
+    private MedicineCodec() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Encodes medicine into the payload.
+     *
+     * @param medicine medicine to encode.
+     * @return payload.
+     */
+    static byte[] encode(Medicine medicine) {
+        byte[] name = toBytes(medicine.getName());
+        byte[] form = toBytes(medicine.getForm());
+        byte[] producer = toBytes(medicine.getProducer());
+        ByteBuffer payload = ByteBuffer.allocate(fixedSize + size(name) + size(form) + size(producer));
+
+        byte flags = 0;
+
+        if (medicine.getCost() == null) {
+            flags |= nullCostFlag;
+        }
+
+        if (medicine.getPrescriptionOnly() == null) {
+            flags |= nullPrescriptionFlag;
+        } else if (medicine.getPrescriptionOnly()) {
+            flags |= prescriptionOnlyFlag;
+        }
+
+        payload.put(flags);
+        putBytes(payload, name);
+        putBytes(payload, form);
+        putBytes(payload, producer);
+        payload.putLong(toMillis(medicine.getExpirationDate()));
+        payload.putLong(toMillis(medicine.getProductionDate()));
+        payload.putInt(medicine.getCost() == null ? 0 : medicine.getCost());
+
+        return payload.array();
+    }
+
+    /**
+     * Decodes medicine from the payload.
+     *
+     * @param id      medicine ID.
+     * @param payload payload to decode, it's read from its position (position of the given buffer is changed).
+     * @return decoded medicine.
+     * @throws InvalidMedicineException if payload contains invalid medicine.
+     */
+    static MedicineID decode(int id, ByteBuffer payload) throws InvalidMedicineException {
+        MedicineID medicine = new MedicineID();
+        byte flags = payload.get();
+
+        medicine.setName(getString(payload));
+        medicine.setForm(getString(payload));
+        medicine.setProducer(getString(payload));
+
+        long expirationDate = payload.getLong();
+        long productionDate = payload.getLong();
+        // Null dates are skipped, setters compare dates with each other.
+        if (expirationDate != nullDate) {
+            medicine.setExpirationDate(new Date(expirationDate));
+        }
+
+        if (productionDate != nullDate) {
+            medicine.setProductionDate(new Date(productionDate));
+        }
+
+        int cost = payload.getInt();
+        // Null cost and prescription flag are left default, same as MySQL driver returns them.
+        if ((flags & nullCostFlag) == 0) {
+            medicine.setCost(cost);
+        }
+
+        if ((flags & nullPrescriptionFlag) == 0) {
+            medicine.setPrescriptionOnly((flags & prescriptionOnlyFlag) != 0);
+        }
+
+        medicine.setId(id);
+
+        return medicine;
+    }
+
+    /**
+     * Encodes string into UTF-8.
+     *
+     * @param str string.
+     * @return UTF-8 bytes, or null for null string.
+     */
+    private static byte[] toBytes(String str) {
+        return str == null ? null : str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns size of the encoded string.
+     *
+     * @param bytes UTF-8 bytes, or null.
+     * @return size of the length and bytes.
+     */
+    private static int size(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    /**
+     * Writes encoded string.
+     *
+     * @param payload payload to write to.
+     * @param bytes   UTF-8 bytes, or null.
+     */
+    private static void putBytes(ByteBuffer payload, byte[] bytes) {
+        if (bytes == null) {
+            payload.putInt(nullString);
+        } else {
+            payload.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    /**
+     * Reads encoded string.
+     *
+     * @param payload payload to read from.
+     * @return decoded string, or null.
+     */
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getInt();
+
+        if (length == nullString) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns epoch millis of the date.
+     *
+     * @param date date, or null.
+     * @return epoch millis, or nullDate for null.
+     */
+    private static long toMillis(Date date) {
+        return date == null ? nullDate : date.getTime();
+    }
+}
@@ -0,0 +1,294 @@
+package pogrebenko.lab3db.sqldatabase.database.embedded.message;
+
+import pogrebenko.lab3db.model.message.Message;
+import pogrebenko.lab3db.sqldatabase.common.contract.IMessageDB;
+import pogrebenko.lab3db.sqldatabase.common.contract.RowVisitor;
+import pogrebenko.lab3db.sqldatabase.database.embedded.core.EmbeddedStorage;
+import pogrebenko.lab3db.sqldatabase.database.embedded.core.RecordFile;
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static pogrebenko.lab3db.sqldatabase.database.embedded.core.EmbeddedStorage.toSQLException;
+
+/**
+ * IMessageDB embedded implementation.
+ * Represents a message DB stored in the local record file, so the app works without MySQL server.
+ * <p>
+ * Payload of the message record: message time (epoch millis), message text (UTF-8).
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class EmbeddedMessage implements IMessageDB {
+    // Name of the message table.
+    private final static String tableName = "message";
+    // Number of records read under a single lock.
+    private final static int defaultChunkSize = 1_000;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    private final EmbeddedStorage storage;
+    // Message table, opened by initialize.
+    private volatile RecordFile table;
+
+    /**
+     * Creates an embedded message DB.
+     *
+     * @param storage embedded DB to store messages in.
+     */
+    public EmbeddedMessage(EmbeddedStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Opens message table, creates it if it doesn't exist.
+     *
+     * @throws SQLException if table cannot be opened.
+     */
+    public void initialize() throws SQLException {
+        LOGGER.info("Initializing embedded Message DB...");
+
+        table = storage.openTable(tableName);
+    }
+
+    /**
+     * Writes message to DB, message time is the current time.
+     *
+     * @param message message to insert to DB.
+     * @return index of the inserted message.
+     * @throws SQLException on file errors.
+     */
+    public int writeMessage(Message message) throws SQLException {
+        LOGGER.info("Writing new message to DB...");
+
+        try {
+            int key = table.insert(encode(message.getMessage(), System.currentTimeMillis()));
+            LOGGER.info(() -> "New message generated ID is: " + key);
+
+            return key;
+        } catch (IOException e) {
+            throw toSQLException(e);
+        }
+    }
+
+    /**
+     * Writes messages array to DB at once, with their own message times.
+     *
+     * @param messages messages to insert.
+     * @throws SQLException on file errors.
+     */
+    public void writeMessages(ArrayList<? extends Message> messages) throws SQLException {
+        LOGGER.info(() -> String.format("Writing %d messages to DB...", messages.size()));
+        List<byte[]> payloads = new ArrayList<>(messages.size());
+        long now = System.currentTimeMillis();
+
+        for (Message message : messages) {
+            Date time = message.getMessageTime();
+            payloads.add(encode(message.getMessage(), time == null ? now : time.getTime()));
+        }
+
+        try {
+            table.insertAll(payloads);
+        } catch (IOException e) {
+            throw toSQLException(e);
+        }
+    }
+
+    /**
+     * Returns all messages from DB, newest first.
+     *
+     * @return array of messages from DB.
+     */
+    public ArrayList<Message> getMessages() {
+        LOGGER.info("Returning all messages from the DB...");
+        ArrayList<Message> messages = new ArrayList<>();
+        scan(null, null, 0, Integer.MAX_VALUE, messages::add);
+
+        return messages;
+    }
+
+    /**
+     * Returns single page of messages from the time range, newest first.
+     * Page starts right after the ID of the last message, so it's read through the index.
+     *
+     * @param from     start of the time range (inclusive), or null.
+     * @param to       end of the time range (exclusive), or null.
+     * @param after    last message of the previous page (read from DB), or null for the first page.
+     * @param pageSize max number of messages in the page.
+     * @return page of messages.
+     */
+    public ArrayList<Message> getMessagesPage(Date from, Date to, Message after, int pageSize) {
+        LOGGER.info(() -> String.format(
+                "Returning page of %d messages from '%s' to '%s' from the DB...", pageSize, from, to
+        ));
+        ArrayList<Message> messages = new ArrayList<>(pageSize);
+        scan(from, to, after == null ? 0 : after.getMessageId(), pageSize, messages::add);
+
+        return messages;
+    }
+
+    /**
+     * Streams messages from the time range into the visitor, newest first.
+     * Table is read in chunks, so memory usage doesn't depend on the table size.
+     *
+     * @param from    start of the time range (inclusive), or null.
+     * @param to      end of the time range (exclusive), or null.
+     * @param visitor visitor of the messages.
+     * @param <E>     type of the visitor exception.
+     * @return number of visited messages.
+     * @throws E on visitor errors.
+     */
+    public <E extends Exception> long visitMessages(
+            Date from,
+            Date to,
+            RowVisitor<? super Message, E> visitor
+    ) throws E {
+        LOGGER.info(() -> String.format("Streaming messages from '%s' to '%s' from the DB...", from, to));
+
+        return scan(from, to, 0, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Deletes up to limit oldest messages, that are older than the given time.
+     * Messages are appended in time order, so scan stops at the first message, that isn't older.
+     *
+     * @param before time to delete messages before (exclusive).
+     * @param limit  max number of messages to delete.
+     * @return number of deleted messages.
+     * @throws SQLException on file errors.
+     */
+    public int deleteMessagesBefore(Date before, int limit) throws SQLException {
+        LOGGER.info(() -> String.format("Deleting up to %d messages before '%s' from the DB...", limit, before));
+        List<Integer> ids = new ArrayList<>();
+        int lastId = 0;
+        boolean crossed = false;
+        List<RecordFile.Record> chunk;
+
+        while (!crossed && ids.size() < limit
+                && !(chunk = table.readChunk(lastId, true, defaultChunkSize)).isEmpty()) {
+            for (RecordFile.Record record : chunk) {
+                if (ids.size() == limit || record.getPayload().getLong() >= before.getTime()) {
+                    crossed = true;
+                    break;
+                }
+
+                ids.add(record.getId());
+            }
+
+            lastId = chunk.get(chunk.size() - 1).getId();
+        }
+
+        try {
+            int deleted = 0;
+
+            for (int id : ids) {
+                deleted += table.delete(id) ? 1 : 0;
+            }
+
+            return deleted;
+        } catch (IOException e) {
+            throw toSQLException(e);
+        }
+    }
+
+    /**
+     * Deletes all messages.
+     *
+     * @throws SQLException on file errors.
+     */
+    public void truncateTable() throws SQLException {
+        LOGGER.info("Truncating table with messages... ");
+
+        try {
+            table.clear();
+        } catch (IOException e) {
+            throw toSQLException(e);
+        }
+    }
+
+    /**
+     * Encodes message into the record payload.
+     *
+     * @param text message text, may be null.
+     * @param time message time, epoch millis.
+     * @return record payload.
+     */
+    private static byte[] encode(String text, long time) {
+        byte[] bytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer.allocate(Long.BYTES + bytes.length).putLong(time).put(bytes).array();
+    }
+
+    /**
+     * Scans messages from the time range in descending ID order.
+     * Messages are appended in time order, so the newest have the biggest IDs,
+     * and scan stops at the first message older than the range.
+     *
+     * @param from     start of the time range (inclusive), or null.
+     * @param to       end of the time range (exclusive), or null.
+     * @param beforeId ID to start the scan before, 0 to start from the newest message.
+     * @param maxCount max number of visited messages.
+     * @param visitor  visitor of the messages.
+     * @param <E>      type of the visitor exception.
+     * @return number of visited messages.
+     * @throws E on visitor errors.
+     */
+    private <E extends Exception> long scan(
+            Date from,
+            Date to,
+            int beforeId,
+            long maxCount,
+            RowVisitor<? super Message, E> visitor
+    ) throws E {
+        long visited = 0;
+        int lastId = beforeId;
+        List<RecordFile.Record> chunk;
+
+        while (visited < maxCount && !(chunk = table.readChunk(lastId, false, defaultChunkSize)).isEmpty()) {
+            for (RecordFile.Record record : chunk) {
+                Message message = decode(record);
+                long time = message.getMessageTime().getTime();
+
+                if (from != null && time < from.getTime()) {
+                    return visited;
+                }
+
+                if (to == null || time < to.getTime()) {
+                    visitor.visit(message);
+
+                    if (++visited == maxCount) {
+                        return visited;
+                    }
+                }
+            }
+
+            lastId = chunk.get(chunk.size() - 1).getId();
+        }
+
+        return visited;
+    }
+
+    /**
+     * Decodes message from the record.
+     *
+     * @param record message record.
+     * @return message.
+     */
+    private static Message decode(RecordFile.Record record) {
+        ByteBuffer payload = record.getPayload();
+        Message message = new Message();
+        message.setMessageId(record.getId());
+        message.setMessageTime(new Date(payload.getLong()));
+        message.setMessage(StandardCharsets.UTF_8.decode(payload).toString());
+
+        return message;
+    }
+}
@@ -0,0 +1,39 @@
+package pogrebenko.lab3db.sqldatabase.database.mysql.medicine;
+
+/**
+ * Possible ways of writing many medicines to the medicine DB at once.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public enum BulkLoadMode {
+    // JDBC batch of single-row inserts. One round-trip per row, unless driver rewrites the batch
+    // (e.g. MySQL rewriteBatchedStatements=true connection param).
+    BATCH("Batch"),
+    // Multi-row INSERT ... VALUES (...), (...), sized to fit max_allowed_packet.
+    MULTI_VALUES("Multi values"),
+    // LOAD DATA LOCAL INFILE from the in-memory stream, requires local_infile on the server,
+    // and allowLoadLocalInfile=true connection param.
+    LOAD_DATA("Load data");
+
+    private final String label;
+
+    /**
+     * Constructs BulkLoadMode.
+     *
+     * @param label name of the mode.
+     */
+    BulkLoadMode(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Transforms the BulkLoadMode to string.
+     *
+     * @return name of the mode.
+     */
+    public String toString() {
+        return label;
+    }
+}
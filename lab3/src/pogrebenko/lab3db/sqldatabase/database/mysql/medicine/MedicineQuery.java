@@ -0,0 +1,466 @@
+package pogrebenko.lab3db.sqldatabase.database.mysql.medicine;
+
+import pogrebenko.lab3db.model.medicine.MedicineID;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Builder of the medicine search queries with composite filters.
+ * All predicates are joined with AND, every value is passed as a statement param (never inlined into SQL).
+ * <p>
+ * Supported predicates:
+ * equality for any field, inclusive range for dates, cost and ID, prefix for strings (name, form, producer).
+ * Equality and prefix predicates on strings, and ranges on dates and cost are served by the secondary indexes.
+ * <p>
+ * Results may be sorted by any field (ID is always added as the last sort key, so order is stable)
+ * and limited by the number of rows.
+ * <p>
+ * Query may be evaluated in memory as well (test, getComparator), for DBs without SQL.
+ * Strings are compared case-insensitively there, same as MySQL default collation does.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public final class MedicineQuery {
+    // Predicates, joined with AND.
+    private final List<Condition> conditions = new ArrayList<>();
+    private FilterField sortField = FilterField.NONE;
+    private boolean ascending = true;
+    // Max number of rows, 0 for no limit.
+    private int limit = 0;
+
+    /**
+     * Adds equality predicate.
+     *
+     * @param field field to filter by.
+     * @param value value of the field (Date for dates, int for cost and ID, boolean for prescription only).
+     * @return this query.
+     * @throws IllegalArgumentException if field is NONE, or value is null.
+     */
+    public MedicineQuery where(FilterField field, Object value) {
+        requireValue(value);
+        conditions.add(new Condition(field, Operator.EQUAL, value));
+
+        return this;
+    }
+
+    /**
+     * Adds inclusive range predicate, either of the bounds may be null (open range).
+     *
+     * @param field field to filter by (expiration date, production date, cost or ID).
+     * @param from  lower bound, or null.
+     * @param to    upper bound, or null.
+     * @return this query.
+     * @throws IllegalArgumentException if field isn't comparable, or both bounds are null.
+     */
+    public MedicineQuery between(FilterField field, Object from, Object to) {
+        switch (field) {
+            case EXPIRATION_DATE, PRODUCTION_DATE, COST, ID -> {
+            }
+            default -> throw new IllegalArgumentException("Range filter isn't supported for the field: " + field);
+        }
+
+        if (from == null && to == null) {
+            throw new IllegalArgumentException("At least one bound of the range must be set!");
+        }
+
+        if (from != null) {
+            conditions.add(new Condition(field, Operator.FROM, from));
+        }
+
+        if (to != null) {
+            conditions.add(new Condition(field, Operator.TO, to));
+        }
+
+        return this;
+    }
+
+    /**
+     * Adds prefix predicate (LIKE 'prefix%'), wildcards in the prefix are matched literally.
+     * Unlike '%value%' search, prefix search can use the index.
+     *
+     * @param field  field to filter by (name, form or producer).
+     * @param prefix prefix of the value.
+     * @return this query.
+     * @throws IllegalArgumentException if field isn't a string, or prefix is null.
+     */
+    public MedicineQuery startsWith(FilterField field, String prefix) {
+        switch (field) {
+            case NAME, FORM, PRODUCER -> {
+            }
+            default -> throw new IllegalArgumentException("Prefix filter isn't supported for the field: " + field);
+        }
+
+        requireValue(prefix);
+        conditions.add(new Condition(field, Operator.PREFIX, prefix));
+
+        return this;
+    }
+
+    /**
+     * Sets sort field of the results. By default results are sorted by ID.
+     *
+     * @param field     field to sort by, NONE to sort by ID only.
+     * @param ascending true for ascending order, false for descending.
+     * @return this query.
+     */
+    public MedicineQuery orderBy(FilterField field, boolean ascending) {
+        this.sortField = field;
+        this.ascending = ascending;
+
+        return this;
+    }
+
+    /**
+     * Limits number of the returned rows.
+     *
+     * @param limit max number of rows, 0 for no limit.
+     * @return this query.
+     * @throws IllegalArgumentException if limit is negative.
+     */
+    public MedicineQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+        }
+
+        this.limit = limit;
+
+        return this;
+    }
+
+    /**
+     * Returns max number of the returned rows.
+     *
+     * @return max number of rows, 0 for no limit.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Checks if results are sorted by ID only, so rows may be read in ID order and the limit applied right away.
+     *
+     * @return true if results are sorted by ID only, false otherwise.
+     */
+    public boolean isSortedById() {
+        return sortField == FilterField.NONE || sortField == FilterField.ID;
+    }
+
+    /**
+     * Checks if results are sorted in ascending order.
+     *
+     * @return true for ascending order, false for descending.
+     */
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    /**
+     * Checks if the medicine matches all predicates of the query (in-memory evaluation).
+     * Null fields never match, same as NULL in SQL.
+     *
+     * @param medicine medicine to check.
+     * @return true if medicine matches the query, false otherwise.
+     */
+    public boolean test(MedicineID medicine) {
+        for (Condition condition : conditions) {
+            Object value = getField(medicine, condition.field);
+
+            if (value == null) {
+                return false;
+            }
+
+            boolean matches = switch (condition.operator) {
+                case EQUAL -> compare(value, condition.value) == 0;
+                case FROM -> compare(value, condition.value) >= 0;
+                case TO -> compare(value, condition.value) <= 0;
+                case PREFIX -> {
+                    String str = (String) value;
+                    String prefix = (String) condition.value;
+
+                    yield str.regionMatches(true, 0, prefix, 0, prefix.length());
+                }
+            };
+
+            if (!matches) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns comparator of the results order (in-memory evaluation), nulls go first in ascending order, as in MySQL.
+     *
+     * @return results comparator.
+     */
+    public Comparator<MedicineID> getComparator() {
+        Comparator<MedicineID> byId = Comparator.comparing(MedicineID::getId);
+        Comparator<MedicineID> comparator = isSortedById()
+                ? byId
+                : Comparator.<MedicineID, Object>comparing(
+                        medicine -> getField(medicine, sortField),
+                        Comparator.nullsFirst(MedicineQuery::compare)
+                ).thenComparing(byId);
+
+        return ascending ? comparator : comparator.reversed();
+    }
+
+    /**
+     * Builds SQL of the query.
+     *
+     * @return query SQL.
+     */
+    String toSql() {
+        StringBuilder sql = new StringBuilder(Queries.SELECT_MEDICINES);
+
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition condition = conditions.get(i);
+            sql.append(i == 0 ? "WHERE " : " AND ")
+                    .append(column(condition.field))
+                    .append(condition.operator.sql)
+                    .append('?');
+        }
+
+        String direction = ascending ? " ASC" : " DESC";
+        sql.append(" ORDER BY ");
+
+        if (!isSortedById()) {
+            sql.append(column(sortField)).append(direction).append(", ");
+        }
+
+        sql.append(column(FilterField.ID)).append(direction);
+
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * Returns params of the query, in the order of placeholders.
+     *
+     * @return query params.
+     */
+    Object[] getParams() {
+        List<Object> params = new ArrayList<>(conditions.size() + 1);
+
+        for (Condition condition : conditions) {
+            params.add(condition.operator == Operator.PREFIX
+                    ? escapeLike((String) condition.value) + "%"
+                    : condition.value
+            );
+        }
+
+        if (limit > 0) {
+            params.add(limit);
+        }
+
+        return params.toArray();
+    }
+
+    /**
+     * Returns immutable cache key of the query, equal queries have equal keys.
+     * Key is structural: every predicate is kept as its field, operator, value class and value,
+     * so values of different types (e.g. "5" and 5), or with quotes in them, never collide.
+     * Dates are kept as epoch millis, since Date is mutable.
+     *
+     * @return query predicates, sort and limit.
+     */
+    public List<Object> getCacheKey() {
+        List<Object> conditionKeys = new ArrayList<>();
+
+        for (Condition condition : conditions) {
+            conditionKeys.add(condition.getCacheKey());
+        }
+
+        return List.of(List.copyOf(conditionKeys), sortField, ascending, limit);
+    }
+
+    /**
+     * Transforms the query to string, equal queries have equal strings (dates are written as epoch millis).
+     *
+     * @return query predicates, sort and limit.
+     */
+    @Override
+    public String toString() {
+        return String.format("MedicineQuery{where=%s, sort=%s %s, limit=%d}",
+                conditions,
+                sortField,
+                ascending ? "ASC" : "DESC",
+                limit
+        );
+    }
+
+    /**
+     * Returns table column of the field.
+     *
+     * @param field medicine field.
+     * @return column name.
+     * @throws IllegalArgumentException if field is NONE.
+     */
+    private static String column(FilterField field) {
+        return switch (field) {
+            case NAME -> "m.name";
+            case FORM -> "m.form";
+            case PRODUCER -> "m.producer";
+            case EXPIRATION_DATE -> "m.expiration_date";
+            case PRODUCTION_DATE -> "m.production_date";
+            case COST -> "m.cost";
+            case PRESCRIPTION_ONLY -> "m.prescription_only";
+            case ID -> "m.id";
+            case NONE -> throw new IllegalArgumentException("Filter field must be selected!");
+        };
+    }
+
+    /**
+     * Returns value of the medicine field.
+     *
+     * @param medicine medicine.
+     * @param field    medicine field.
+     * @return field value.
+     * @throws IllegalArgumentException if field is NONE.
+     */
+    private static Object getField(MedicineID medicine, FilterField field) {
+        return switch (field) {
+            case NAME -> medicine.getName();
+            case FORM -> medicine.getForm();
+            case PRODUCER -> medicine.getProducer();
+            case EXPIRATION_DATE -> medicine.getExpirationDate();
+            case PRODUCTION_DATE -> medicine.getProductionDate();
+            case COST -> medicine.getCost();
+            case PRESCRIPTION_ONLY -> medicine.getPrescriptionOnly();
+            case ID -> medicine.getId();
+            case NONE -> throw new IllegalArgumentException("Filter field must be selected!");
+        };
+    }
+
+    /**
+     * Compares field values of the same kind (strings case-insensitively).
+     *
+     * @param first  first value.
+     * @param second second value.
+     * @return negative, zero or positive number, if the first value is less, equal or greater than the second one.
+     * @throws IllegalArgumentException if values can't be compared.
+     */
+    private static int compare(Object first, Object second) {
+        if (first instanceof String a && second instanceof String b) {
+            return String.CASE_INSENSITIVE_ORDER.compare(a, b);
+        }
+
+        if (first instanceof Date a && second instanceof Date b) {
+            return Long.compare(a.getTime(), b.getTime());
+        }
+
+        if (first instanceof Number a && second instanceof Number b) {
+            return Long.compare(a.longValue(), b.longValue());
+        }
+
+        if (first instanceof Boolean a && second instanceof Boolean b) {
+            return Boolean.compare(a, b);
+        }
+
+        throw new IllegalArgumentException(String.format("Cannot compare '%s' and '%s'", first, second));
+    }
+
+    /**
+     * Checks that predicate value is set.
+     *
+     * @param value predicate value.
+     * @throws IllegalArgumentException if value is null.
+     */
+    private static void requireValue(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Filter value cannot be null!");
+        }
+    }
+
+    /**
+     * Escapes LIKE wildcards (and escape char itself) with default '\' escape char.
+     *
+     * @param value value to escape.
+     * @return escaped value.
+     */
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 4);
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '\\' || c == '%' || c == '_') {
+                escaped.append('\\');
+            }
+
+            escaped.append(c);
+        }
+
+        return escaped.toString();
+    }
+
+    /**
+     * Predicate operators.
+     */
+    private enum Operator {
+        EQUAL(" = "),
+        FROM(" >= "),
+        TO(" <= "),
+        PREFIX(" LIKE ");
+
+        private final String sql;
+
+        /**
+         * Constructs Operator.
+         *
+         * @param sql operator in SQL.
+         */
+        Operator(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    /**
+     * Single predicate of the query.
+     */
+    private static final class Condition {
+        private final FilterField field;
+        private final Operator operator;
+        private final Object value;
+
+        /**
+         * Creates predicate.
+         *
+         * @param field    field to filter by.
+         * @param operator predicate operator.
+         * @param value    predicate value.
+         * @throws IllegalArgumentException if field is NONE.
+         */
+        Condition(FilterField field, Operator operator, Object value) {
+            // Fails fast on NONE.
+            column(field);
+
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        /**
+         * Returns immutable cache key of the predicate.
+         *
+         * @return field, operator, value class and value.
+         */
+        List<Object> getCacheKey() {
+            return List.of(field, operator, value.getClass(), value instanceof Date date ? date.getTime() : value);
+        }
+
+        @Override
+        public String toString() {
+            return column(field) + operator.sql + "'" + (value instanceof Date date ? date.getTime() : value) + "'";
+        }
+    }
+}
@@ -4,13 +4,23 @@ import pogrebenko.lab3db.model.medicine.Medicine;
 import pogrebenko.lab3db.model.medicine.MedicineID;
 import pogrebenko.lab3db.sqldatabase.common.contract.ICore;
 import pogrebenko.lab3db.sqldatabase.common.contract.IMedicineDB;
+import pogrebenko.lab3db.sqldatabase.common.contract.RowVisitor;
 import pogrebenko.lab3db.sqldatabase.common.parser.MedicineParser;
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.getKey;
@@ -24,9 +34,22 @@ import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.getKey;
  * @since 1.3.0
  */
 public class MySQLMedicine implements IMedicineDB {
+    // Number of rows fetched from DB at once by the streaming queries.
+    private final static int defaultFetchSize = 1_000;
+    // Number of params in MEDICINE_VALUES.
+    private final static int medicineParams = 7;
+    // MySQL limit of the placeholders in the single prepared statement.
+    private final static int maxPlaceholders = 65_535;
+    // Part of max_allowed_packet that may be used by the single multi-row insert.
+    private final static double packetUsage = 0.8;
+    // Estimated size of the non-string row params, and MEDICINE_VALUES text.
+    private final static int fixedRowBytes = 64;
 
     private static final Logger LOGGER = LoggerWrapper.getLogger();
     ICore SQLCore;
+    private volatile BulkLoadMode bulkLoadMode;
+    // Cached @@max_allowed_packet, 0 if not read yet.
+    private volatile long maxAllowedPacket = 0;
 
     /**
      * Creates an MySQL connection for the medicine DB.
@@ -34,7 +57,18 @@ public class MySQLMedicine implements IMedicineDB {
      * @param SQLCore SQL core for queries execution.
      */
     public MySQLMedicine(ICore SQLCore) {
+        this(SQLCore, BulkLoadMode.BATCH);
+    }
+
+    /**
+     * Creates an MySQL connection for the medicine DB.
+     *
+     * @param SQLCore      SQL core for queries execution.
+     * @param bulkLoadMode the way writeMedicines writes medicines to DB.
+     */
+    public MySQLMedicine(ICore SQLCore, BulkLoadMode bulkLoadMode) {
         this.SQLCore = SQLCore;
+        this.bulkLoadMode = bulkLoadMode;
     }
 
     /**
@@ -46,24 +80,47 @@ public class MySQLMedicine implements IMedicineDB {
         LOGGER.info("Initializing MySQL Medicine DB...");
 
         createTable();
+        migrateSearchIndexes();
     }
 
     /**
-     * Writes medicines array to DB.
+     * Writes medicines array to DB, the way it's done depends on the bulk load mode.
      *
      * @param medicines medicines to insert via batch.
      * @throws SQLException on a database access error or other errors.
      */
     public void writeMedicines(ArrayList<? extends Medicine> medicines) throws SQLException {
-        LOGGER.info("Writing medicines to DB...");
-        PreparedStatement stmt = SQLCore.getStatement(Queries.INSERT_MEDICINE);
+        BulkLoadMode mode = bulkLoadMode;
+        LOGGER.info(() -> String.format("Writing %d medicines to DB, bulk load mode '%s'...", medicines.size(), mode));
 
-        for (Medicine medicine : medicines) {
-            SQLCore.prepareStatement(stmt, MedicineParser.getMedicineParams(medicine));
-            stmt.addBatch();
+        if (medicines.isEmpty()) {
+            return;
+        }
+
+        switch (mode) {
+            case BATCH -> writeBatch(medicines);
+            case MULTI_VALUES -> writeMultiValues(medicines);
+            case LOAD_DATA -> writeLoadData(medicines);
         }
+    }
+
+    /**
+     * Returns the way writeMedicines writes medicines to DB.
+     *
+     * @return bulk load mode.
+     */
+    public BulkLoadMode getBulkLoadMode() {
+        return bulkLoadMode;
+    }
 
-        SQLCore.executeBatch(stmt);
+    /**
+     * Sets the way writeMedicines writes medicines to DB.
+     *
+     * @param bulkLoadMode bulk load mode.
+     */
+    public void setBulkLoadMode(BulkLoadMode bulkLoadMode) {
+        LOGGER.info(() -> "Setting bulk load mode: " + bulkLoadMode);
+        this.bulkLoadMode = bulkLoadMode;
     }
 
     /**
@@ -76,7 +133,7 @@ public class MySQLMedicine implements IMedicineDB {
     public int writeMedicine(Medicine medicine) throws SQLException {
         LOGGER.info("Writing new medicine to DB...");
         int key = getKey(SQLCore.execute(Queries.INSERT_MEDICINE, MedicineParser.getMedicineParams(medicine)));
-        LOGGER.info("New medicine generated ID is: " + key);
+        LOGGER.info(() -> "New medicine generated ID is: " + key);
 
         return key;
     }
@@ -93,6 +150,20 @@ public class MySQLMedicine implements IMedicineDB {
         return MedicineParser.loadMedicines(SQLCore.executeQuery(Queries.SELECT_MEDICINES));
     }
 
+    /**
+     * Returns single page of medicines ordered by ID (keyset pagination).
+     *
+     * @param afterId  ID after which the page starts (0 for the first page).
+     * @param pageSize max number of medicines in the page.
+     * @return page of medicines.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ArrayList<MedicineID> getMedicinesPage(int afterId, int pageSize) throws SQLException {
+        LOGGER.info(() -> String.format("Returning page of %d medicines after ID %d from the DB...", pageSize, afterId));
+
+        return MedicineParser.loadMedicines(SQLCore.executeQuery(Queries.PAGE_AFTER_ID, afterId, pageSize));
+    }
+
     /**
      * Returns medicine with given ID. Simplified usage of getFilteredMedicines(ID, id).
      *
@@ -100,7 +171,7 @@ public class MySQLMedicine implements IMedicineDB {
      * @throws SQLException on a database access error or other errors.
      */
     public MedicineID getMedicine(int medicineID) throws SQLException {
-        LOGGER.info("Returning single from DB, medicine ID: " + medicineID);
+        LOGGER.info(() -> "Returning single from DB, medicine ID: " + medicineID);
 
         return MedicineParser.loadMedicine(SQLCore.executeQuery(Queries.ID_FILTER, medicineID));
     }
@@ -112,7 +183,7 @@ public class MySQLMedicine implements IMedicineDB {
      * @throws SQLException on a database access error or other errors.
      */
     public void updateMedicine(MedicineID medicine) throws SQLException {
-        LOGGER.info("Updating medicine with ID: " + medicine.getId());
+        LOGGER.info(() -> "Updating medicine with ID: " + medicine.getId());
 
         SQLCore.execute(Queries.UPDATE_MEDICINE, MedicineParser.getMedicineIDParams(medicine));
     }
@@ -124,7 +195,7 @@ public class MySQLMedicine implements IMedicineDB {
      * @throws SQLException on a database access error or other errors.
      */
     public void deleteMedicine(int medicineID) throws SQLException {
-        LOGGER.info("Deleting medicine with ID: " + medicineID);
+        LOGGER.info(() -> "Deleting medicine with ID: " + medicineID);
 
         SQLCore.execute(Queries.DELETE_MEDICINE, medicineID);
     }
@@ -140,6 +211,26 @@ public class MySQLMedicine implements IMedicineDB {
         SQLCore.execute(Queries.CREATE_TABLE);
     }
 
+    /**
+     * Adds search indexes to the old table, if it wasn't done yet.
+     * Text columns of the old table aren't converted, so long values are neither truncated nor rejected,
+     * they are indexed by prefix instead.
+     *
+     * @throws SQLException on a database access error or other errors.
+     */
+    private void migrateSearchIndexes() throws SQLException {
+        try (ResultSet rs = SQLCore.executeQuery(Queries.SELECT_NAME_INDEX)) {
+            if (rs.next() && rs.getInt(1) > 0) {
+                return;
+            }
+        }
+
+        // Table rebuild may take minutes on the big table, so it's executed without statement timeout.
+        LOGGER.info("Migrating medicine table: adding search indexes, it may take a while on the big table...");
+        SQLCore.executeDDL(Queries.MIGRATE_SEARCH_INDEXES);
+        LOGGER.info("Medicine table search indexes migration done");
+    }
+
     /**
      * Deletes all values from medicine table in DB.
      *
@@ -160,7 +251,7 @@ public class MySQLMedicine implements IMedicineDB {
      * @throws SQLException on a database access error or other errors.
      */
     public ArrayList<MedicineID> getFilteredMedicines(FilterField filter, Object param) throws SQLException {
-        LOGGER.info(String.format("Returning medicines from db with filter '%s' and value '%s': ", filter, param));
+        LOGGER.info(() -> String.format("Returning medicines from db with filter '%s' and value '%s': ", filter, param));
         ResultSet rs = null;
 
         switch (filter) {
@@ -177,4 +268,289 @@ public class MySQLMedicine implements IMedicineDB {
 
         return MedicineParser.loadMedicines(rs);
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns medicines found by the composite query (several predicates, sort and limit).
+     *
+     * @param query search query.
+     * @return array of medicines from DB that match the query.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ArrayList<MedicineID> searchMedicines(MedicineQuery query) throws SQLException {
+        LOGGER.info(() -> "Searching medicines in db: " + query);
+
+        return MedicineParser.loadMedicines(SQLCore.executeQuery(query.toSql(), query.getParams()));
+    }
+
+    /**
+     * Streams medicines filtered by the specified parameters into the visitor, ordered by ID.
+     *
+     * @param filter  the medicine field by which the filtering will be performed.
+     * @param param   the medicine field value by which the filtering will be performed.
+     * @param visitor visitor of the medicines.
+     * @param <E>     type of the visitor exception.
+     * @return number of visited medicines.
+     * @throws SQLException on a database access error or other errors.
+     * @throws E            on visitor errors.
+     */
+    public <E extends Exception> long visitMedicines(
+            FilterField filter,
+            Object param,
+            RowVisitor<? super MedicineID, E> visitor
+    ) throws SQLException, E {
+        LOGGER.info(() -> String.format("Streaming medicines from db with filter '%s' and value '%s': ", filter, param));
+        ResultSet rs = null;
+
+        switch (filter) {
+            case NAME -> rs = streamOrdered(Queries.NAME_FILTER, param);
+            case FORM -> rs = streamOrdered(Queries.FORM_FILTER, param);
+            case PRODUCER -> rs = streamOrdered(Queries.PRODUCER_FILTER, param);
+            case EXPIRATION_DATE -> rs = streamOrdered(Queries.EXPIRATION_DATE_FILTER, param);
+            case PRODUCTION_DATE -> rs = streamOrdered(Queries.PRODUCTION_DATE_FILTER, param);
+            case COST -> rs = streamOrdered(Queries.COST_FILTER, param);
+            case PRESCRIPTION_ONLY -> rs = streamOrdered(Queries.PRESCRIPTION_ONLY_FILTER, param);
+            case ID -> rs = streamOrdered(Queries.ID_FILTER, param);
+            case NONE -> rs = streamOrdered(Queries.SELECT_MEDICINES);
+        }
+
+        return MedicineParser.visitMedicines(rs, visitor);
+    }
+
+    /**
+     * Executes streaming query ordered by medicine ID.
+     *
+     * @param query  query to execute.
+     * @param params query parameters.
+     * @return streaming ResultSet.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private ResultSet streamOrdered(String query, Object... params) throws SQLException {
+        return SQLCore.executeStreamingQuery(query + Queries.ORDER_BY_ID, defaultFetchSize, params);
+    }
+
+    /**
+     * Writes medicines via JDBC batch of single-row inserts.
+     *
+     * @param medicines medicines to insert.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private void writeBatch(List<? extends Medicine> medicines) throws SQLException {
+        // Statement is closed by executeBatch, try(...) closes it only if batch preparation fails.
+        try (PreparedStatement stmt = SQLCore.getStatement(Queries.INSERT_MEDICINE)) {
+            for (Medicine medicine : medicines) {
+                SQLCore.prepareStatement(stmt, MedicineParser.getMedicineParams(medicine));
+                stmt.addBatch();
+            }
+
+            SQLCore.executeBatch(stmt);
+        }
+    }
+
+    /**
+     * Writes medicines via multi-row inserts, each of them fits max_allowed_packet.
+     * All full inserts are executed as one batch, the rest of the rows (if any) - as one more batch,
+     * both batches are written in a single transaction.
+     *
+     * @param medicines medicines to insert.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private void writeMultiValues(List<? extends Medicine> medicines) throws SQLException {
+        int rows = getMultiValuesRows(medicines);
+        int full = medicines.size() - medicines.size() % rows;
+        LOGGER.fine(() -> String.format("Writing medicines by %d rows per insert...", rows));
+        Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+
+        if (full > 0) {
+            batches.put(getMultiValuesQuery(rows), getMultiValuesParams(medicines.subList(0, full), rows));
+        }
+
+        if (full < medicines.size()) {
+            int rest = medicines.size() - full;
+            batches.put(
+                    getMultiValuesQuery(rest),
+                    getMultiValuesParams(medicines.subList(full, medicines.size()), rest)
+            );
+        }
+
+        SQLCore.executeBatches(batches);
+    }
+
+    /**
+     * Returns multi-row insert with the given number of rows.
+     *
+     * @param rows number of rows in the single insert.
+     * @return insert query.
+     */
+    private static String getMultiValuesQuery(int rows) {
+        StringBuilder query = new StringBuilder(Queries.INSERT_MEDICINES_HEAD.length() + rows * 24);
+        query.append(Queries.INSERT_MEDICINES_HEAD);
+
+        for (int i = 0; i < rows; i++) {
+            query.append(i == 0 ? "" : ", ").append(Queries.MEDICINE_VALUES);
+        }
+
+        return query.toString();
+    }
+
+    /**
+     * Returns parameter sets of the multi-row inserts with the given number of rows.
+     *
+     * @param medicines medicines to insert, their number must be a multiple of rows.
+     * @param rows      number of rows in the single insert.
+     * @return parameters of each insert.
+     */
+    private static List<Object[]> getMultiValuesParams(List<? extends Medicine> medicines, int rows) {
+        List<Object[]> inserts = new ArrayList<>(medicines.size() / rows);
+
+        for (int from = 0; from < medicines.size(); from += rows) {
+            Object[] params = new Object[rows * medicineParams];
+
+            for (int i = 0; i < rows; i++) {
+                Object[] row = MedicineParser.getMedicineParams(medicines.get(from + i));
+                System.arraycopy(row, 0, params, i * medicineParams, medicineParams);
+            }
+
+            inserts.add(params);
+        }
+
+        return inserts;
+    }
+
+    /**
+     * Returns number of rows in the single multi-row insert.
+     * It's limited by max placeholders in the statement, and by max_allowed_packet
+     * (based on the biggest of the given medicines, strings are counted as 4 bytes per char).
+     *
+     * @param medicines medicines to insert.
+     * @return number of rows in the single insert.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private int getMultiValuesRows(List<? extends Medicine> medicines) throws SQLException {
+        long maxRowBytes = 0;
+
+        for (Medicine medicine : medicines) {
+            long rowBytes = fixedRowBytes
+                    + 4L * (length(medicine.getName()) + length(medicine.getForm()) + length(medicine.getProducer()));
+            maxRowBytes = Math.max(maxRowBytes, rowBytes);
+        }
+
+        long packetRows = (long) (getMaxAllowedPacket() * packetUsage) / maxRowBytes;
+
+        return (int) Math.max(1, Math.min(maxPlaceholders / medicineParams, packetRows));
+    }
+
+    /**
+     * Returns max_allowed_packet of the server, it's read once.
+     *
+     * @return max_allowed_packet in bytes.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private long getMaxAllowedPacket() throws SQLException {
+        if (maxAllowedPacket == 0) {
+            try (ResultSet rs = SQLCore.executeQuery(Queries.SELECT_MAX_ALLOWED_PACKET)) {
+                if (!rs.next()) {
+                    throw new SQLException("Cannot read max_allowed_packet!");
+                }
+
+                maxAllowedPacket = rs.getLong(1);
+                LOGGER.info(() -> "MySQL max_allowed_packet is: " + maxAllowedPacket);
+            }
+        }
+
+        return maxAllowedPacket;
+    }
+
+    /**
+     * Writes medicines via LOAD DATA LOCAL INFILE from the in-memory stream, in a single transaction.
+     *
+     * @param medicines medicines to insert.
+     * @throws SQLException on a database access error or other errors.
+     */
+    private void writeLoadData(List<? extends Medicine> medicines) throws SQLException {
+        byte[] data = encodeLoadData(medicines);
+        LOGGER.fine(() -> String.format("Loading %d bytes of medicines data...", data.length));
+
+        // Statement is closed by executeBatch, try(...) closes it only if batch preparation fails.
+        try (PreparedStatement stmt = SQLCore.getStatement(Queries.LOAD_MEDICINES)) {
+            stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(new ByteArrayInputStream(data));
+            stmt.addBatch();
+
+            SQLCore.executeBatch(stmt);
+        }
+    }
+
+    /**
+     * Encodes medicines in the default LOAD DATA format.
+     *
+     * @param medicines medicines to encode.
+     * @return encoded medicines in UTF-8.
+     */
+    private static byte[] encodeLoadData(List<? extends Medicine> medicines) {
+        StringBuilder row = new StringBuilder();
+        ByteArrayOutputStream data = new ByteArrayOutputStream(medicines.size() * fixedRowBytes * 2);
+
+        for (Medicine medicine : medicines) {
+            row.setLength(0);
+            appendField(row, medicine.getName()).append('\t');
+            appendField(row, medicine.getForm()).append('\t');
+            appendField(row, medicine.getProducer()).append('\t');
+            appendField(row, medicine.getExpirationDate()).append('\t');
+            appendField(row, medicine.getProductionDate()).append('\t');
+            appendField(row, medicine.getCost()).append('\t');
+            appendField(row, medicine.getPrescriptionOnly()).append('\n');
+
+            data.writeBytes(row.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        return data.toByteArray();
+    }
+
+    /**
+     * Appends single LOAD DATA field: null as \N, dates as yyyy-MM-dd, booleans as 1 or 0,
+     * special chars in strings are escaped.
+     *
+     * @param row   row to append to.
+     * @param value field value.
+     * @return row.
+     */
+    private static StringBuilder appendField(StringBuilder row, Object value) {
+        if (value == null) {
+            return row.append("\\N");
+        }
+
+        if (value instanceof Date date) {
+            return row.append(new java.sql.Date(date.getTime()));
+        }
+
+        if (value instanceof Boolean bool) {
+            return row.append(bool ? '1' : '0');
+        }
+
+        String str = value.toString();
+
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+
+            switch (c) {
+                case '\\' -> row.append("\\\\");
+                case '\t' -> row.append("\\t");
+                case '\n' -> row.append("\\n");
+                case '\r' -> row.append("\\r");
+                case '\0' -> row.append("\\0");
+                default -> row.append(c);
+            }
+        }
+
+        return row;
+    }
+
+    /**
+     * Returns length of the string, 0 for null.
+     *
+     * @param str string.
+     * @return length of the string.
+     */
+    private static int length(String str) {
+        return str == null ? 0 : str.length();
+    }
+}
@@ -10,16 +10,44 @@ package pogrebenko.lab3db.sqldatabase.database.mysql.medicine;
 class Queries {
     public static final String CREATE_TABLE = """
             CREATE TABLE IF NOT EXISTS medicine (
-                name TEXT NULL,
-                form TEXT NULL,
-                producer TEXT NULL,
+                name VARCHAR(255) NULL,
+                form VARCHAR(255) NULL,
+                producer VARCHAR(255) NULL,
                 expiration_date DATE NULL,
                 production_date DATE NULL,
                 cost INT UNSIGNED NULL,
                 prescription_only BOOL NULL,
                 id INT UNSIGNED auto_increment NOT NULL,
-                CONSTRAINT medicine_PK PRIMARY KEY (id)
+                CONSTRAINT medicine_PK PRIMARY KEY (id),
+                INDEX medicine_name_IDX (name),
+                INDEX medicine_form_IDX (form),
+                INDEX medicine_producer_IDX (producer),
+                INDEX medicine_expiration_date_IDX (expiration_date),
+                INDEX medicine_production_date_IDX (production_date),
+                INDEX medicine_cost_IDX (cost)
             )""";
+    // Tables created before search indexes were added have TEXT columns (TEXT can't be indexed without prefix).
+    // Columns are kept TEXT, since existing values may be longer than VARCHAR(255) (they would be truncated,
+    // or ALTER would fail in strict mode), so text columns get prefix indexes (191 chars fit any row format).
+    public static final String MIGRATE_SEARCH_INDEXES = """
+            ALTER TABLE medicine
+                ADD INDEX medicine_name_IDX (name(191)),
+                ADD INDEX medicine_form_IDX (form(191)),
+                ADD INDEX medicine_producer_IDX (producer(191)),
+                ADD INDEX medicine_expiration_date_IDX (expiration_date),
+                ADD INDEX medicine_production_date_IDX (production_date),
+                ADD INDEX medicine_cost_IDX (cost)
+            """;
+    public static final String SELECT_NAME_INDEX = """
+            SELECT
+                COUNT(*)
+            FROM
+                information_schema.STATISTICS s
+            WHERE
+                s.TABLE_SCHEMA = DATABASE()
+                AND s.TABLE_NAME = 'medicine'
+                AND s.INDEX_NAME = 'medicine_name_IDX'
+            """;
     public static final String INSERT_MEDICINE = """
             INSERT INTO medicine (
                 name,
@@ -31,6 +59,32 @@ class Queries {
                 prescription_only
             ) VALUES (?, ?, ?, ?, ?, ?, ?);
             """;
+    // Head of the multi-row insert, followed by MEDICINE_VALUES for each row, separated by commas.
+    public static final String INSERT_MEDICINES_HEAD = """
+            INSERT INTO medicine (
+                name,
+                form,
+                producer,
+                expiration_date,
+                production_date,
+                cost,
+                prescription_only
+            ) VALUES\s""";
+    public static final String MEDICINE_VALUES = "(?, ?, ?, ?, ?, ?, ?)";
+    // Default LOAD DATA format is used: fields by tab, lines by '\n', '\' escapes, \N is NULL.
+    // File name is ignored, driver sends the stream, set via JdbcStatement.setLocalInfileInputStream.
+    public static final String LOAD_MEDICINES = """
+            LOAD DATA LOCAL INFILE 'medicines.tsv'
+            INTO TABLE medicine
+            CHARACTER SET utf8mb4 (
+                name,
+                form,
+                producer,
+                expiration_date,
+                production_date,
+                cost,
+                prescription_only
+            )""";
     public static final String UPDATE_MEDICINE = """
             UPDATE
                 medicine m
@@ -71,6 +125,10 @@ class Queries {
     public static final String COST_FILTER = SELECT_MEDICINES + "WHERE m.cost = ?";
     public static final String PRESCRIPTION_ONLY_FILTER = SELECT_MEDICINES + "WHERE m.prescription_only = ?";
     public static final String ID_FILTER = SELECT_MEDICINES + "WHERE m.id = ?";
+    public static final String SELECT_MAX_ALLOWED_PACKET = "SELECT @@max_allowed_packet";
+    public static final String ORDER_BY_ID = " ORDER BY m.id";
+    // Keyset pagination: seek by primary key instead of OFFSET, so any page costs the same.
+    public static final String PAGE_AFTER_ID = SELECT_MEDICINES + "WHERE m.id > ? ORDER BY m.id LIMIT ?";
 
     /**
      * Private constructor that throws an exception to prevent instantiation.
@@ -3,11 +3,17 @@ package pogrebenko.lab3db.sqldatabase.database.mysql.message;
 import pogrebenko.lab3db.model.message.Message;
 import pogrebenko.lab3db.sqldatabase.common.contract.ICore;
 import pogrebenko.lab3db.sqldatabase.common.contract.IMessageDB;
+import pogrebenko.lab3db.sqldatabase.common.contract.RowVisitor;
 import pogrebenko.lab3db.sqldatabase.common.parser.MessageParser;
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.logging.Logger;
 
 import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.getKey;
@@ -21,6 +27,8 @@ import static pogrebenko.lab3db.sqldatabase.database.util.DBUtil.getKey;
  * @since 1.3.0
  */
 public class MySQLMessage implements IMessageDB {
+    // Number of rows fetched from DB at once by the streaming queries.
+    private final static int defaultFetchSize = 1_000;
 
     private static final Logger LOGGER = LoggerWrapper.getLogger();
     ICore SQLCore;
@@ -43,6 +51,7 @@ public class MySQLMessage implements IMessageDB {
         LOGGER.info("Initializing MySQL Message DB...");
 
         createTable();
+        migrateTimeIndex();
     }
 
     /**
@@ -55,11 +64,41 @@ public class MySQLMessage implements IMessageDB {
     public int writeMessage(Message message) throws SQLException {
         LOGGER.info("Writing new message to DB...");
         int key = getKey(SQLCore.execute(Queries.INSERT_MESSAGE, message.getMessage()));
-        LOGGER.info("New message generated ID is: " + key);
+        LOGGER.info(() -> "New message generated ID is: " + key);
 
         return key;
     }
 
+    /**
+     * Writes messages array to DB via batch, with client-side message times.
+     *
+     * @param messages messages to insert.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public void writeMessages(ArrayList<? extends Message> messages) throws SQLException {
+        LOGGER.info(() -> String.format("Writing %d messages to DB...", messages.size()));
+
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        // Statement is closed by executeBatch, try(...) closes it only if batch preparation fails.
+        try (PreparedStatement stmt = SQLCore.getStatement(Queries.INSERT_MESSAGE_AT)) {
+            for (Message message : messages) {
+                Date time = message.getMessageTime();
+                SQLCore.prepareStatement(
+                        stmt,
+                        message.getMessage(),
+                        new Timestamp(time == null ? now : time.getTime())
+                );
+                stmt.addBatch();
+            }
+
+            SQLCore.executeBatch(stmt);
+        }
+    }
+
     /**
      * Returns all messages from DB.
      *
@@ -69,7 +108,68 @@ public class MySQLMessage implements IMessageDB {
     public ArrayList<Message> getMessages() throws SQLException {
         LOGGER.info("Returning all messages from the DB...");
 
-        return MessageParser.loadMessages(SQLCore.executeQuery(Queries.SELECT_MESSAGES));
+        return MessageParser.loadMessages(SQLCore.executeQuery(Queries.SELECT_MESSAGES + Queries.ORDER_BY_TIME));
+    }
+
+    /**
+     * Returns single page of messages from the time range, newest first.
+     * Page is read by keyset through message_time index, so every page costs the same.
+     *
+     * @param from     start of the time range (inclusive), or null.
+     * @param to       end of the time range (exclusive), or null.
+     * @param after    last message of the previous page (read from DB), or null for the first page.
+     * @param pageSize max number of messages in the page.
+     * @return page of messages.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public ArrayList<Message> getMessagesPage(Date from, Date to, Message after, int pageSize) throws SQLException {
+        LOGGER.info(() -> String.format(
+                "Returning page of %d messages from '%s' to '%s' from the DB...", pageSize, from, to
+        ));
+        List<Object> params = new ArrayList<>();
+        String query = rangeQuery(from, to, after, params) + " LIMIT ?";
+        params.add(pageSize);
+
+        return MessageParser.loadMessages(SQLCore.executeQuery(query, params.toArray()));
+    }
+
+    /**
+     * Streams messages from the time range into the visitor, newest first.
+     * Rows are fetched by cursor, so export of any size needs constant memory.
+     *
+     * @param from    start of the time range (inclusive), or null.
+     * @param to      end of the time range (exclusive), or null.
+     * @param visitor visitor of the messages.
+     * @param <E>     type of the visitor exception.
+     * @return number of visited messages.
+     * @throws SQLException on a database access error or other errors.
+     * @throws E            on visitor errors.
+     */
+    public <E extends Exception> long visitMessages(
+            Date from,
+            Date to,
+            RowVisitor<? super Message, E> visitor
+    ) throws SQLException, E {
+        LOGGER.info(() -> String.format("Streaming messages from '%s' to '%s' from the DB...", from, to));
+        List<Object> params = new ArrayList<>();
+        String query = rangeQuery(from, to, null, params);
+        ResultSet rs = SQLCore.executeStreamingQuery(query, defaultFetchSize, params.toArray());
+
+        return MessageParser.visitMessages(rs, visitor);
+    }
+
+    /**
+     * Deletes up to limit oldest messages, that are older than the given time.
+     *
+     * @param before time to delete messages before (exclusive).
+     * @param limit  max number of messages to delete.
+     * @return number of deleted messages.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public int deleteMessagesBefore(Date before, int limit) throws SQLException {
+        LOGGER.info(() -> String.format("Deleting up to %d messages before '%s' from the DB...", limit, before));
+
+        return SQLCore.executeUpdate(Queries.DELETE_BEFORE, new Timestamp(before.getTime()), limit);
     }
 
     /**
@@ -83,6 +183,24 @@ public class MySQLMessage implements IMessageDB {
         SQLCore.execute(Queries.TRUNCATE_TABLE);
     }
 
+    /**
+     * Adds message_time index to the table created by the older version.
+     *
+     * @throws SQLException on a database access error or other errors.
+     */
+    private void migrateTimeIndex() throws SQLException {
+        try (ResultSet rs = SQLCore.executeQuery(Queries.SELECT_TIME_INDEX)) {
+            if (rs.next() && rs.getInt(1) > 0) {
+                return;
+            }
+        }
+
+        // Index build may take minutes on the big table, so it's executed without statement timeout.
+        LOGGER.info("Migrating message table: adding time index, it may take a while on the big table...");
+        SQLCore.executeDDL(Queries.MIGRATE_TIME_INDEX);
+        LOGGER.info("Message table time index migration done");
+    }
+
     /**
      * Creates table for the messages.
      *
@@ -93,4 +211,44 @@ public class MySQLMessage implements IMessageDB {
 
         SQLCore.execute(Queries.CREATE_TABLE);
     }
-}
\ No newline at end of file
+
+    /**
+     * Builds query of the messages from the time range, ordered newest first.
+     *
+     * @param from   start of the time range (inclusive), or null.
+     * @param to     end of the time range (exclusive), or null.
+     * @param after  last message of the previous page, or null.
+     * @param params list to add query params to.
+     * @return query SQL.
+     */
+    private static String rangeQuery(Date from, Date to, Message after, List<Object> params) {
+        List<String> conditions = new ArrayList<>(3);
+
+        if (from != null) {
+            conditions.add("m.message_time >= ?");
+            params.add(new Timestamp(from.getTime()));
+        }
+
+        if (to != null) {
+            conditions.add("m.message_time < ?");
+            params.add(new Timestamp(to.getTime()));
+        }
+
+        if (after != null) {
+            if (after.getMessageTime() == null) {
+                throw new IllegalArgumentException("Last message of the page must have message time!");
+            }
+
+            // Expanded form of "(time, id) < (?, ?)", row constructor comparison isn't reliably used for range scan.
+            Timestamp afterTime = new Timestamp(after.getMessageTime().getTime());
+            conditions.add("(m.message_time < ? OR (m.message_time = ? AND m.message_id < ?))");
+            params.add(afterTime);
+            params.add(afterTime);
+            params.add(after.getMessageId());
+        }
+
+        String where = conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+
+        return Queries.SELECT_MESSAGES + where + Queries.ORDER_BY_TIME;
+    }
+}
@@ -13,15 +13,35 @@ class Queries {
             	message TEXT NULL,
             	message_time DATETIME NULL,
             	message_id INT UNSIGNED auto_increment NOT NULL,
-            	CONSTRAINT message_PK PRIMARY KEY (message_id)
+            	CONSTRAINT message_PK PRIMARY KEY (message_id),
+            	INDEX message_time_IDX (message_time)
             )""";
+    public static final String MIGRATE_TIME_INDEX = "ALTER TABLE message ADD INDEX message_time_IDX (message_time)";
+    public static final String SELECT_TIME_INDEX = """
+            SELECT
+                COUNT(*)
+            FROM
+                information_schema.STATISTICS s
+            WHERE
+                s.TABLE_SCHEMA = DATABASE()
+                AND s.TABLE_NAME = 'message'
+                AND s.INDEX_NAME = 'message_time_IDX'
+            """;
     public static final String SELECT_MESSAGES = """
             SELECT
+                m.message_id,
                 m.message_time,
                 m.message
             FROM
                 message m
-            ORDER BY m.message_time DESC
+            """;
+    // Secondary index holds the primary key as well, so both sort keys are read from message_time_IDX.
+    public static final String ORDER_BY_TIME = " ORDER BY m.message_time DESC, m.message_id DESC";
+    public static final String DELETE_BEFORE = """
+            DELETE FROM message
+            WHERE message_time < ?
+            ORDER BY message_time
+            LIMIT ?
             """;
     public static final String INSERT_MESSAGE = """
             INSERT INTO message (
@@ -29,6 +49,12 @@ class Queries {
                 message_time
             ) VALUES (?, NOW())
             """;
+    public static final String INSERT_MESSAGE_AT = """
+            INSERT INTO message (
+                message,
+                message_time
+            ) VALUES (?, ?)
+            """;
     public static final String TRUNCATE_TABLE = "truncate message";
 
     /**
@@ -1,6 +1,15 @@
 package pogrebenko.lab3db.sqldatabase.database.util;
 
+import pogrebenko.lab3db.commonutil.CommonUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
 import java.util.ArrayList;
 
 public class DBUtil {
@@ -18,4 +27,98 @@ public class DBUtil {
 
         return keys.get(0);
     }
+
+    /**
+     * Adds connection params to the sql connection string.
+     *
+     * @param connString connection string to edit.
+     * @param params     params to add.
+     * @return modified connection string.
+     */
+    public static String addParams(String connString, String... params) {
+        StringBuilder newConn = new StringBuilder(String.format("%s?", connString));
+
+        for (String param : params) {
+            newConn.append(String.format("%s&", param));
+        }
+
+        return CommonUtil.cutEndChars(newConn.toString(), 1);
+    }
+
+    /**
+     * Parses the auto generated keys from the ResultSet and closes that ResultSet afterwards.
+     *
+     * @param rs ResultSet to parse.
+     * @return array of generated indices.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public static ArrayList<Integer> getInsertedKeys(ResultSet rs) throws SQLException {
+        ArrayList<Integer> keys = new ArrayList<>();
+
+        try (rs) {
+            while (rs.next()) {
+                keys.add(rs.getInt(1));
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * Checks if the given exception was caused by the broken connection (and not by invalid query, etc).
+     * SQL state class "08" means connection exception.
+     *
+     * @param e exception to check.
+     * @return true if connection is broken, false otherwise.
+     */
+    public static boolean isConnectionError(SQLException e) {
+        if (e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLTransientConnectionException
+                || e instanceof SQLRecoverableException) {
+            return true;
+        }
+
+        return e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+
+    /**
+     * Creates forward-only, read-only statement, that fetches rows by fetchSize chunks.
+     * Such statement has no timeout, since reading of the large result may take a while.
+     *
+     * @param conn      connection to use.
+     * @param query     the query from which the statement is formed.
+     * @param fetchSize number of rows to fetch from DB at once.
+     * @return new streaming statement.
+     * @throws SQLException on a database access error or other errors.
+     */
+    public static PreparedStatement newStreamingStatement(
+            Connection conn,
+            String query,
+            int fetchSize
+    ) throws SQLException {
+        PreparedStatement statement = conn.prepareStatement(
+                query,
+                ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY
+        );
+        statement.setFetchSize(fetchSize);
+
+        return statement;
+    }
+
+    /**
+     * Closes the statement, ignoring any errors.
+     *
+     * @param statement statement to close, may be null.
+     */
+    public static void closeQuietly(Statement statement) {
+        if (statement == null) {
+            return;
+        }
+
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
 }
@@ -0,0 +1,175 @@
+package pogrebenko.loggerwrapper;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Handler, that passes records to the wrapped handler on the background thread.
+ * Logging thread only puts the record into the lock-free queue, formatting and I/O are done by the writer thread.
+ * Writer publishes all queued records, and flushes the wrapped handler once per batch, not per record.
+ * <p>
+ * Queue is bounded: once it's full, records below WARNING are dropped (and counted),
+ * warnings and errors are always queued. Number of dropped records is logged with the next batch.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.4.0
+ * @since 1.4.0
+ */
+public class AsyncHandler extends Handler {
+    // Max number of queued records.
+    private final static int defaultCapacity = 8_192;
+    // Max time the record waits in the queue.
+    private final static long defaultFlushIntervalMillis = 100;
+    // Max time close waits for the writer thread.
+    private final static long defaultCloseTimeoutMillis = 2_000;
+
+    private final Handler target;
+    private final int capacity;
+    private final ConcurrentLinkedQueue<LogRecord> queue = new ConcurrentLinkedQueue<>();
+    // Number of queued records, queue.size() isn't constant time.
+    private final AtomicInteger size = new AtomicInteger(0);
+    private final AtomicLong dropped = new AtomicLong(0);
+    private final Thread writer;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates async handler with default capacity.
+     *
+     * @param target handler to pass records to, it's closed along with this handler.
+     */
+    public AsyncHandler(Handler target) {
+        this(target, defaultCapacity);
+    }
+
+    /**
+     * Creates async handler.
+     *
+     * @param target   handler to pass records to, it's closed along with this handler.
+     * @param capacity max number of queued records.
+     */
+    public AsyncHandler(Handler target, int capacity) {
+        this.target = target;
+        this.capacity = capacity;
+        this.writer = new Thread(this::runWriter, "async-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the record, never blocks.
+     *
+     * @param record log record.
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+
+        if (size.get() >= capacity && record.getLevel().intValue() < Level.WARNING.intValue()) {
+            dropped.incrementAndGet();
+            return;
+        }
+        // Source is inferred from the stack, so it must be done on the logging thread.
+        record.getSourceClassName();
+        queue.offer(record);
+
+        if (size.getAndIncrement() == 0) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Asks writer to publish queued records right away.
+     */
+    @Override
+    public void flush() {
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Returns number of the records dropped because the queue was full.
+     *
+     * @return number of dropped records.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Publishes queued records, stops the writer thread and closes the wrapped handler.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join(defaultCloseTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        target.close();
+    }
+
+    /**
+     * Writer loop: publishes queued records, flushes the target, and parks until new records are queued.
+     */
+    private void runWriter() {
+        long reported = 0;
+
+        while (true) {
+            LogRecord record;
+            int published = 0;
+
+            while ((record = queue.poll()) != null) {
+                size.decrementAndGet();
+                publishSafely(record);
+                published++;
+            }
+
+            long droppedNow = dropped.get();
+
+            if (droppedNow != reported) {
+                publishSafely(new LogRecord(
+                        Level.WARNING,
+                        String.format("%d log records dropped, log queue was full", droppedNow - reported)
+                ));
+                reported = droppedNow;
+                published++;
+            }
+
+            if (published > 0) {
+                target.flush();
+            }
+
+            if (closed && queue.isEmpty()) {
+                return;
+            }
+
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(defaultFlushIntervalMillis));
+        }
+    }
+
+    /**
+     * Publishes the record to the target, errors are reported to the error manager, so the writer never stops.
+     *
+     * @param record log record.
+     */
+    private void publishSafely(LogRecord record) {
+        try {
+            target.publish(record);
+        } catch (RuntimeException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+}
@@ -1,17 +1,25 @@
 package pogrebenko.loggerwrapper;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.logging.*;
 
 /**
  * Wrapper for default logger.
  * Allows to simply log to a single file across different classes.
+ * File and console are written by the background thread (see AsyncHandler), so logging never waits for I/O.
+ * Use Supplier form of the logger calls (LOGGER.info(() -> ...)) on hot paths,
+ * so message isn't built if the level is disabled.
  *
  * @author Pogrebenko Vasily, BS-81
  * @version 1.0
  * @since 1.0
  */
 public class LoggerWrapper {
+    // Size of the log file buffer, it's flushed by the async handler once per batch.
+    private final static int fileBufferSize = 64 * 1024;
+
     // Init default logger.
     private static final Logger logger = Logger.getLogger(LoggerWrapper.class.getName());
     // Static wrapper variable for implementing singleton pattern.
@@ -43,7 +51,7 @@ public class LoggerWrapper {
      *
      * @return logger instance.
      */
-    public static synchronized Logger getLogger() {
+    public static Logger getLogger() {
         return logger;
     }
 
@@ -53,9 +61,22 @@ public class LoggerWrapper {
      * @param LogName name of the log file.
      */
     public synchronized void addFileHandler(String LogName) throws IOException {
-        FileHandler fh = new FileHandler(LogName);
-        fh.setFormatter(new SimpleFormatter());
-        addHandler(fh);
+        // Unlike FileHandler, StreamHandler doesn't flush after every record.
+        StreamHandler fh = new StreamHandler(
+                new BufferedOutputStream(new FileOutputStream(LogName), fileBufferSize),
+                new SimpleFormatter()
+        );
+        fh.setLevel(Level.ALL);
+        addHandler(new AsyncHandler(fh));
+    }
+
+    /**
+     * Replaces the console output of the parent handlers with the async one.
+     * Must be called after setLogFormat, so console uses the app format.
+     */
+    public synchronized void addAsyncConsoleHandler() {
+        logger.setUseParentHandlers(false);
+        addHandler(new AsyncHandler(new ConsoleHandler()));
     }
 
     /**
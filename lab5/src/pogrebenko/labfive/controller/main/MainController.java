@@ -110,6 +110,7 @@ public class MainController {
 
         disableUI(true);
         stopPictureDrawer();
+        closeDICOMImageSlicer();
         setEmptySlicesList();
 
         Task<Void> loadTask = prepareProcessFilesTask(processFilesTask());
@@ -210,7 +211,9 @@ public class MainController {
                 SortedList<DICOMSliceRow> sortedRows = getSortedRows();
 
                 Platform.runLater(() -> listViewImages.setItems(sortedRows));
-                updateMessage("Done!");
+                // Broken files are skipped by the slicer, they are reported, but don't fail the task.
+                int failedFiles = dicomImageSlicer.getErrors().size();
+                updateMessage(failedFiles == 0 ? "Done!" : "Done! Files failed to be sliced: " + failedFiles);
                 LOGGER.info("Process files task finished");
 
                 return null;
@@ -348,6 +351,19 @@ public class MainController {
         pictureDrawer = null;
     }
 
+    private void closeDICOMImageSlicer() {
+        LOGGER.info("Closing images slicer...");
+
+        if (dicomImageSlicer == null) {
+            LOGGER.info("Images slicer already closed.");
+
+            return;
+        }
+
+        dicomImageSlicer.close();
+        dicomImageSlicer = null;
+    }
+
     private void reconnectFTPClient() {
         try {
             ftpClientLoader = new FTPClientLoader(getFTPHost(), getFTPPort(), getFTPUsername(), getFTPPassword());
@@ -376,6 +392,7 @@ public class MainController {
         try {
             ftpClientLoader.close();
             stopPictureDrawer();
+            closeDICOMImageSlicer();
         } catch (IOException e) {
             LOGGER.warning(e.getMessage());
         }
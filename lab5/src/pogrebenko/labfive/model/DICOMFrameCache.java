@@ -0,0 +1,359 @@
+package pogrebenko.labfive.model;
+
+import pogrebenko.loggerwrapper.LoggerWrapper;
+
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the decoded DICOM frames, keyed by file path and decode parameters.
+ * Frames are kept strongly within the byte budget, least recently used frames are evicted first.
+ * Evicted frames may be kept in the soft-reference tier, so they are reused until GC needs the memory.
+ * <p>
+ * Frame that is being decoded is shared: concurrent requests of the same frame wait for the single decode.
+ * Frames may be prefetched on the background thread, only the latest prefetch requests are kept.
+ * Prefetches aren't counted in the hit ratio. Cache should be closed once it isn't used,
+ * so queued prefetches don't keep decoding frames nobody needs.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.1
+ * @since 1.1
+ */
+public class DICOMFrameCache implements AutoCloseable {
+    // Default budget of the strongly kept frames.
+    private final static long defaultBudgetBytes = 256L * 1024 * 1024;
+    // Max number of the queued prefetch requests.
+    private final static int defaultPrefetchQueueSize = 256;
+    // Time the idle prefetch thread is kept alive.
+    private final static long defaultPrefetchKeepAliveMillis = 5_000;
+
+    private static final Logger LOGGER = LoggerWrapper.getLogger();
+    private static final AtomicInteger prefetchThreadNumber = new AtomicInteger(0);
+
+    private final long budgetBytes;
+    private final boolean softTier;
+    // Strongly kept frames, in access order.
+    private final LinkedHashMap<FrameKey, DICOMImage> frames = new LinkedHashMap<>(16, 0.75f, true);
+    // Frames evicted from the strong tier, if soft tier is enabled.
+    private final HashMap<FrameKey, FrameReference> softFrames = new HashMap<>();
+    private final ReferenceQueue<DICOMImage> collectedFrames = new ReferenceQueue<>();
+    // Frames that are being decoded.
+    private final HashMap<FrameKey, FutureTask<DICOMImage>> loadingFrames = new HashMap<>();
+    private final ThreadPoolExecutor prefetchExecutor;
+
+    private long residentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates cache with default budget and soft tier enabled.
+     */
+    public DICOMFrameCache() {
+        this(Math.min(defaultBudgetBytes, Runtime.getRuntime().maxMemory() / 4), true);
+    }
+
+    /**
+     * Creates cache.
+     *
+     * @param budgetBytes max size of the strongly kept frames.
+     * @param softTier    true to keep evicted frames in the soft-reference tier, false to drop them.
+     */
+    public DICOMFrameCache(long budgetBytes, boolean softTier) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("Frame cache budget must not be negative: " + budgetBytes);
+        }
+
+        this.budgetBytes = budgetBytes;
+        this.softTier = softTier;
+        // Single thread, prefetch shouldn't compete with the frames requested right now.
+        // Idle thread stops, prefetches after close are discarded.
+        this.prefetchExecutor = new ThreadPoolExecutor(
+                1,
+                1,
+                defaultPrefetchKeepAliveMillis,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(defaultPrefetchQueueSize),
+                runnable -> {
+                    Thread thread = new Thread(
+                            runnable, "dicom-frame-prefetch-" + prefetchThreadNumber.incrementAndGet()
+                    );
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardPolicy()
+        );
+        this.prefetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns decoded frame of the file, decodes it if it isn't cached.
+     *
+     * @param path   path of the DICOM file.
+     * @param header DICOM image header, read by DICOMReader.readHeader.
+     * @return decoded frame.
+     * @throws IOException if file cannot be read.
+     */
+    public DICOMImage get(Path path, DICOMImage header) throws IOException {
+        return load(new FrameKey(path, header), header, true);
+    }
+
+    /**
+     * Decodes frames of the files on the background thread, if they aren't cached.
+     * Queued requests of the previous prefetch are dropped, since newer ones are more relevant.
+     *
+     * @param files files to prefetch {<file path> : <header>}.
+     */
+    public void prefetch(Map<Path, DICOMImage> files) {
+        prefetchExecutor.getQueue().clear();
+
+        for (Map.Entry<Path, DICOMImage> file : files.entrySet()) {
+            FrameKey key = new FrameKey(file.getKey(), file.getValue());
+
+            prefetchExecutor.execute(() -> {
+                try {
+                    load(key, file.getValue(), false);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.FINE, "Failed to prefetch frame: " + key.path(), e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops queued prefetch requests, and interrupts the running one.
+     * Cached frames may still be requested, but nothing is prefetched anymore.
+     */
+    @Override
+    public void close() {
+        LOGGER.info("Closing frame cache, dropped prefetch requests: " + prefetchExecutor.getQueue().size());
+        prefetchExecutor.getQueue().clear();
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns share of the requested frames, that were cached or being decoded already.
+     *
+     * @return hit ratio, 0 if no frames were requested.
+     */
+    public synchronized double getHitRatio() {
+        long requests = hits + misses;
+
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * Returns size of the strongly kept frames.
+     *
+     * @return resident bytes.
+     */
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * Returns frame from the cache, or decodes it.
+     *
+     * @param key     frame key.
+     * @param header  DICOM image header.
+     * @param counted true to count request in the hit ratio.
+     * @return decoded frame.
+     * @throws IOException if file cannot be read.
+     */
+    private DICOMImage load(FrameKey key, DICOMImage header, boolean counted) throws IOException {
+        FutureTask<DICOMImage> loading;
+        boolean owner = false;
+
+        synchronized (this) {
+            DICOMImage frame = lookup(key);
+
+            if (frame != null) {
+                hits += counted ? 1 : 0;
+
+                return frame;
+            }
+
+            loading = loadingFrames.get(key);
+
+            if (loading != null) {
+                hits += counted ? 1 : 0;
+            } else {
+                misses += counted ? 1 : 0;
+                loading = new FutureTask<>(() -> DICOMReader.readPixels(key.path(), header));
+                loadingFrames.put(key, loading);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            loading.run();
+        }
+
+        try {
+            DICOMImage frame = getInterruptibly(loading);
+
+            if (owner) {
+                synchronized (this) {
+                    put(key, frame);
+                }
+            }
+
+            return frame;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+
+            throw new IOException("Failed to decode frame: " + key.path(), e.getCause());
+        } finally {
+            if (owner) {
+                synchronized (this) {
+                    loadingFrames.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the frame decode.
+     *
+     * @param loading frame decode task.
+     * @return decoded frame.
+     * @throws ExecutionException if decode failed.
+     * @throws IOException        if thread was interrupted.
+     */
+    private DICOMImage getInterruptibly(FutureTask<DICOMImage> loading) throws ExecutionException, IOException {
+        try {
+            return loading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while waiting for the frame decode", e);
+        }
+    }
+
+    /**
+     * Looks for the frame in the strong and soft tiers, frame from the soft tier is moved to the strong one.
+     * Must be called under the lock.
+     *
+     * @param key frame key.
+     * @return cached frame, or null.
+     */
+    private DICOMImage lookup(FrameKey key) {
+        DICOMImage frame = frames.get(key);
+
+        if (frame != null) {
+            return frame;
+        }
+
+        removeCollectedFrames();
+        FrameReference reference = softFrames.remove(key);
+        frame = reference == null ? null : reference.get();
+
+        if (frame != null) {
+            put(key, frame);
+        }
+
+        return frame;
+    }
+
+    /**
+     * Puts frame into the strong tier, and evicts least recently used frames over the budget.
+     * Must be called under the lock.
+     *
+     * @param key   frame key.
+     * @param frame decoded frame.
+     */
+    private void put(FrameKey key, DICOMImage frame) {
+        long frameBytes = getFrameBytes(frame);
+
+        if (frameBytes > budgetBytes) {
+            keepSoftly(key, frame);
+
+            return;
+        }
+
+        DICOMImage replaced = frames.put(key, frame);
+        residentBytes += frameBytes - (replaced == null ? 0 : getFrameBytes(replaced));
+        Iterator<Map.Entry<FrameKey, DICOMImage>> eldest = frames.entrySet().iterator();
+
+        while (residentBytes > budgetBytes && eldest.hasNext()) {
+            Map.Entry<FrameKey, DICOMImage> evicted = eldest.next();
+            eldest.remove();
+            residentBytes -= getFrameBytes(evicted.getValue());
+            keepSoftly(evicted.getKey(), evicted.getValue());
+        }
+    }
+
+    /**
+     * Puts frame into the soft tier, if it's enabled. Must be called under the lock.
+     *
+     * @param key   frame key.
+     * @param frame decoded frame.
+     */
+    private void keepSoftly(FrameKey key, DICOMImage frame) {
+        if (softTier) {
+            softFrames.put(key, new FrameReference(key, frame, collectedFrames));
+        }
+    }
+
+    /**
+     * Removes entries of the frames collected by GC from the soft tier. Must be called under the lock.
+     */
+    private void removeCollectedFrames() {
+        Reference<? extends DICOMImage> collected;
+
+        while ((collected = collectedFrames.poll()) != null) {
+            FrameKey key = ((FrameReference) collected).key;
+            softFrames.remove(key, collected);
+        }
+    }
+
+    /**
+     * Returns size of the decoded pixels of the frame.
+     *
+     * @param frame decoded frame.
+     * @return frame size in bytes.
+     */
+    private static long getFrameBytes(DICOMImage frame) {
+        if (frame.Image == null) {
+            return 0;
+        }
+
+        return ((DataBufferByte) frame.Image.getRaster().getDataBuffer()).getData().length;
+    }
+
+    /**
+     * Key of the frame: file path and parameters the pixels are decoded with.
+     *
+     * @param path            path of the DICOM file.
+     * @param width           frame width.
+     * @param height          frame height.
+     * @param pixelDataOffset offset of the pixel data in the file.
+     */
+    private record FrameKey(Path path, int width, int height, int pixelDataOffset) {
+        FrameKey(Path path, DICOMImage header) {
+            this(path, header.Wd, header.Ht, header.PixelDataOffset);
+        }
+    }
+
+    /**
+     * Soft reference of the frame, that knows its key, so it may be removed from the soft tier once collected.
+     */
+    private static class FrameReference extends SoftReference<DICOMImage> {
+        private final FrameKey key;
+
+        FrameReference(FrameKey key, DICOMImage frame, ReferenceQueue<DICOMImage> queue) {
+            super(frame, queue);
+            this.key = key;
+        }
+    }
+}
@@ -2,46 +2,117 @@ package pogrebenko.labfive.model;
 
 import pogrebenko.loggerwrapper.LoggerWrapper;
 
-import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class DICOMImageSlicer {
+public class DICOMImageSlicer implements AutoCloseable {
     private static final Logger LOGGER = LoggerWrapper.getLogger();
-    private Map<Double, List<String>> slices = new HashMap<>();
+    private NavigableMap<Double, List<String>> slices = new TreeMap<>();
+    // Headers of the sliced files {<file path> : <header>}, pixels are decoded from them on demand.
+    private Map<String, DICOMImage> headers = new HashMap<>();
+    // Files, that failed to be sliced {<file path> : <error>}, in order of the listed files.
+    private Map<String, Exception> errors = new LinkedHashMap<>();
+    // Decoded frames of the slices, files may be overwritten by the next load, so cache isn't shared.
+    private final DICOMFrameCache frameCache;
 
     public DICOMImageSlicer(List<String> DICOMFilePaths) throws Exception {
-        runSlicing(DICOMFilePaths);
+        this(DICOMFilePaths, Runtime.getRuntime().availableProcessors());
     }
 
-    private void runSlicing(List<String> DICOMFilePaths) throws Exception {
-        // Slices {"location" : [<file path>, <file path>]}
-        // Images loaded into memory only when they are required.
-        LOGGER.info("Creating images slices from listed files...");
-        Map<Double, List<String>> newSlices = new HashMap<>();
-        // Create slices by Slice location.
-        for (String filepath : DICOMFilePaths) {
-            DICOMImage newImage = getDICOMFromPath(filepath);
-
-            if (!newSlices.containsKey(newImage.SliceLocation)) {
-                newSlices.put(newImage.SliceLocation, new ArrayList<>());
+    public DICOMImageSlicer(List<String> DICOMFilePaths, int parallelism) throws Exception {
+        this(DICOMFilePaths, parallelism, new DICOMFrameCache());
+    }
+
+    public DICOMImageSlicer(List<String> DICOMFilePaths, int parallelism, DICOMFrameCache frameCache)
+            throws Exception {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Slicing parallelism must be positive: " + parallelism);
+        }
+
+        this.frameCache = frameCache;
+        runSlicing(DICOMFilePaths, parallelism);
+    }
+
+    private void runSlicing(List<String> DICOMFilePaths, int parallelism) throws Exception {
+        // Slices {"location" : {<file index> : <file path>}}
+        // Images loaded into memory only when they are required, only headers are read here.
+        // Files are read by the bounded pool, results are ordered by location and file index,
+        // so slices don't depend on the order files were read in.
+        LOGGER.info(String.format(
+                "Creating images slices from %d listed files, %d threads...", DICOMFilePaths.size(), parallelism
+        ));
+        ConcurrentSkipListMap<Double, ConcurrentSkipListMap<Integer, String>> newSlices = new ConcurrentSkipListMap<>();
+        ConcurrentHashMap<String, DICOMImage> newHeaders = new ConcurrentHashMap<>();
+        ConcurrentSkipListMap<Integer, Exception> newErrors = new ConcurrentSkipListMap<>();
+        ExecutorService executor = newSlicingExecutor(Math.min(parallelism, Math.max(1, DICOMFilePaths.size())));
+
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            // Create slices by Slice location.
+            for (int i = 0; i < DICOMFilePaths.size(); i++) {
+                int fileIndex = i;
+                String filepath = DICOMFilePaths.get(i);
+
+                tasks.add(executor.submit(() -> {
+                    try {
+                        DICOMImage newImage = getHeaderFromPath(filepath);
+                        newHeaders.put(filepath, newImage);
+                        newSlices.computeIfAbsent(newImage.SliceLocation, location -> new ConcurrentSkipListMap<>())
+                                .put(fileIndex, filepath);
+                    } catch (Exception e) {
+                        LOGGER.log(Level.WARNING, "Failed to slice file: " + filepath, e);
+                        newErrors.put(fileIndex, e);
+                    }
+                }));
             }
 
-            newSlices.get(newImage.SliceLocation).add(filepath);
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdownNow();
         }
 
-        slices = newSlices;
-        LOGGER.info("Slices created: " + slices.size());
+        NavigableMap<Double, List<String>> orderedSlices = new TreeMap<>();
+        newSlices.forEach((location, paths) -> orderedSlices.put(location, new ArrayList<>(paths.values())));
+        Map<String, Exception> orderedErrors = new LinkedHashMap<>();
+        newErrors.forEach((fileIndex, error) -> orderedErrors.put(DICOMFilePaths.get(fileIndex), error));
+
+        slices = orderedSlices;
+        headers = new HashMap<>(newHeaders);
+        errors = orderedErrors;
+        LOGGER.info(String.format("Slices created: %d, files failed: %d", slices.size(), errors.size()));
+    }
+
+    private ExecutorService newSlicingExecutor(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger(0);
+
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "dicom-slicer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private DICOMImage getHeaderFromPath(String filepath) throws Exception {
+        LOGGER.finest("Retrieving DICOMImage header from file: " + filepath);
+
+        return DICOMReader.readHeader(getAbsolutePath(filepath));
     }
 
     private DICOMImage getDICOMFromPath(String filepath) throws Exception {
         LOGGER.finest("Retrieving DICOMImage from file: " + filepath);
-        File DICOMFile = new File(filepath);
 
-        String fileDir = DICOMFile.getAbsoluteFile().getParent();
-        String fileName = DICOMFile.getName();
+        return frameCache.get(getAbsolutePath(filepath), headers.get(filepath));
+    }
 
-        return new DICOMImage(fileDir, fileName);
+    private Path getAbsolutePath(String filepath) {
+        return Paths.get(filepath).toAbsolutePath();
     }
 
     public Map<Double, List<String>> getSlices() {
@@ -50,6 +121,22 @@ public class DICOMImageSlicer {
         return slices;
     }
 
+    public Map<String, Exception> getErrors() {
+        LOGGER.finest("Retrieving slicing errors... ");
+
+        return Collections.unmodifiableMap(errors);
+    }
+
+    public DICOMFrameCache getFrameCache() {
+        return frameCache;
+    }
+
+    // Stops prefetch of the frames, slicer of the previous load must be closed once it's replaced.
+    @Override
+    public void close() {
+        frameCache.close();
+    }
+
     public List<DICOMImage> getSliceByLocation(Double sliceLocation) throws Exception {
         LOGGER.info("Retrieving slice by its location... ");
         List<String> slicePaths = slices.get(sliceLocation);
@@ -60,7 +147,31 @@ public class DICOMImageSlicer {
         }
         // Sort images, so animation will be in the correct order.
         Collections.sort(sliceImages);
+        // User likely moves to the neighbouring slice next.
+        prefetchNeighbours(sliceLocation);
+        LOGGER.info(String.format(
+                "Frame cache hit ratio: %.2f, resident bytes: %d",
+                frameCache.getHitRatio(),
+                frameCache.getResidentBytes()
+        ));
 
         return sliceImages;
     }
+
+    private void prefetchNeighbours(Double sliceLocation) {
+        Map<Path, DICOMImage> neighbourFiles = new LinkedHashMap<>();
+
+        for (Double neighbour : Arrays.asList(slices.higherKey(sliceLocation), slices.lowerKey(sliceLocation))) {
+            if (neighbour == null) {
+                continue;
+            }
+
+            for (String filepath : slices.get(neighbour)) {
+                neighbourFiles.put(getAbsolutePath(filepath), headers.get(filepath));
+            }
+        }
+
+        LOGGER.finest("Prefetching neighbouring slices, files: " + neighbourFiles.size());
+        frameCache.prefetch(neighbourFiles);
+    }
 }
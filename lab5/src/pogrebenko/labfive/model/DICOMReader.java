@@ -0,0 +1,378 @@
+package pogrebenko.labfive.model;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * DICOM file reader over the memory-mapped file.
+ * Tags, VRs and lengths are decoded right from the little-endian buffer, without per-tag allocations,
+ * VRs are compared as packed shorts. Only values of the needed tags are decoded into strings.
+ * <p>
+ * Reader follows the same rules as the original stream parser of DICOMImage (same tags are skipped,
+ * stepped into or read), so both give the same result for the same file.
+ * <p>
+ * Header may be read alone: parsing stops at the pixel data tag and only records its offset,
+ * so files may be indexed without touching pixels, and the pixels are decoded later right from that offset.
+ *
+ * @author Pogrebenko Vasily, BS-81
+ * @version 1.1
+ * @since 1.1
+ */
+public final class DICOMReader {
+    // Size of the 'File Preamble'.
+    private final static int preambleSize = 0x80;
+    // 'DICM' prefix, read as little-endian int.
+    private final static int dicomPrefix = 'D' | 'I' << 8 | 'C' << 16 | 'M' << 24;
+    // 'Explicit VR Little Endian Transfer Syntax UID'.
+    private final static byte[] explicitLittleEndian = "1.2.840.10008.1.2.1".getBytes(StandardCharsets.US_ASCII);
+
+    // VRs, packed the way they are read from the little-endian buffer.
+    private final static short VR_OB = packVR('O', 'B');
+    private final static short VR_OW = packVR('O', 'W');
+    private final static short VR_OF = packVR('O', 'F');
+    private final static short VR_SQ = packVR('S', 'Q');
+    private final static short VR_UN = packVR('U', 'N');
+    private final static short VR_FL = packVR('F', 'L');
+    private final static short VR_FD = packVR('F', 'D');
+    private final static short VR_SS = packVR('S', 'S');
+    private final static short VR_US = packVR('U', 'S');
+    // VR of the implicit datatype (no VR in the file).
+    private final static short VR_NONE = packVR(' ', ' ');
+
+    /**
+     * Private constructor that throws an exception to prevent instantiation.
+     */
+    private DICOMReader() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Reads DICOM image from the file.
+     *
+     * @param path path of the DICOM file.
+     * @return DICOM image.
+     * @throws IOException if file cannot be read, or it isn't a valid DICOM file.
+     */
+    public static DICOMImage read(Path path) throws IOException {
+        DICOMImage image = new DICOMImage(path.getFileName().toString());
+        read(path, image, true);
+
+        return image;
+    }
+
+    /**
+     * Reads DICOM image metadata from the file, pixels aren't decoded and image is null.
+     *
+     * @param path path of the DICOM file.
+     * @return DICOM image header.
+     * @throws IOException if file cannot be read, or it isn't a valid DICOM file.
+     */
+    public static DICOMImage readHeader(Path path) throws IOException {
+        DICOMImage header = new DICOMImage(path.getFileName().toString());
+        read(path, header, false);
+
+        return header;
+    }
+
+    /**
+     * Reads pixels of the file, which header was read before. Tags aren't parsed again,
+     * pixels are decoded right from the pixel data offset of the header.
+     *
+     * @param path   path of the DICOM file.
+     * @param header DICOM image header, read by readHeader. It isn't changed.
+     * @return new DICOM image with metadata of the header and decoded pixels.
+     * Image is null, if file has no pixel data.
+     * @throws IOException if file cannot be read.
+     */
+    public static DICOMImage readPixels(Path path, DICOMImage header) throws IOException {
+        DICOMImage image = new DICOMImage(header);
+
+        if (header.PixelDataOffset < 0) {
+            return image;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.position((int) Math.min(header.PixelDataOffset, size));
+            image.Image = decodePixels(buf, header.Wd, header.Ht);
+        }
+
+        return image;
+    }
+
+    /**
+     * Reads DICOM file into the given image.
+     *
+     * @param path         path of the DICOM file.
+     * @param image        image to fill.
+     * @param decodePixels true to decode pixels, false to read metadata only.
+     * @throws IOException if file cannot be read, or it isn't a valid DICOM file.
+     */
+    static void read(Path path, DICOMImage image, boolean decodePixels) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (!parse(buf, image, decodePixels)) {
+                throw new IOException("NOT a valid DICOM file: " + path);
+            }
+        }
+    }
+
+    /**
+     * Parses DICOM data into the given image.
+     *
+     * @param buf          DICOM file data.
+     * @param image        image to fill.
+     * @param decodePixels true to decode pixels, false to stop at the pixel data.
+     * @return false if data isn't DICOM data, true otherwise.
+     * @throws IOException if data has unsupported structure (e.g. undefined length of the value).
+     */
+    static boolean parse(ByteBuffer buf, DICOMImage image, boolean decodePixels) throws IOException {
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buf.limit() < preambleSize + 4 || buf.getInt(preambleSize) != dicomPrefix) {
+            return false;
+        }
+
+        buf.position(preambleSize + 4);
+        // Initial datatype assuming explicit.
+        boolean explicit = true;
+
+        try {
+            while (buf.remaining() >= 4) {
+                int group = buf.getShort() & 0xFFFF;
+                int element = buf.getShort() & 0xFFFF;
+                short vr = VR_NONE;
+                int length;
+
+                if (explicit || group == 0x0002) {
+                    vr = buf.getShort();
+
+                    if (vr == VR_OB || vr == VR_OW || vr == VR_OF || vr == VR_SQ || vr == VR_UN) {
+                        skip(buf, 2);
+                        length = buf.getInt();
+                    } else {
+                        length = buf.getShort() & 0xFFFF;
+                    }
+                } else {
+                    length = buf.getInt();
+                }
+                // Offset and length of the value, if it was read.
+                int valueOffset = buf.position();
+                int valueLength = 0;
+
+                if (element == 0x0000) {
+                    // Group length.
+                    skip(buf, group == 0x0002 ? 4 : length);
+                } else if (group == 0x0002 && element == 0x0001) {
+                    // Version.
+                    skip(buf, 2);
+                } else if (group == 0x0008
+                        && (element == 0x1110 || element == 0x1111 || element == 0x1115 || element == 0x1120)) {
+                    // 'Referenced Sequences', stepping into the first item.
+                    skip(buf, 8);
+                } else if (group == 0x0028 && (element == 0x0010 || element == 0x0011)) {
+                    // Height || width.
+                    int value = buf.getShort(valueOffset) & 0xFFFF;
+
+                    if (element == 0x0010) {
+                        image.Ht = value;
+                    } else {
+                        image.Wd = value;
+                    }
+
+                    skip(buf, length);
+                } else if (group == 0x7FE0 && element == 0x0010) {
+                    // Pixel data.
+                    image.PixelDataOffset = buf.position();
+
+                    if (decodePixels) {
+                        image.Image = decodePixels(buf, image.Wd, image.Ht);
+                    }
+
+                    break;
+                } else if (vr == VR_SQ) {
+                    // 'Sequence of Items', stepping into the first item.
+                    skip(buf, 8);
+                } else if (vr == VR_OB || vr == VR_FL || vr == VR_FD || vr == VR_SS || vr == VR_US || length > 0) {
+                    if (length < 0) {
+                        throw new IOException(String.format(
+                                "Undefined length of the tag (%04X,%04X) isn't supported", group, element
+                        ));
+                    }
+
+                    valueLength = Math.min(length, buf.remaining());
+                    skip(buf, length);
+                }
+
+                setValue(image, group, element, buf, valueOffset, valueLength);
+
+                if (group == 0x0002 && element == 0x0010
+                        && !isValue(buf, valueOffset, valueLength, explicitLittleEndian)) {
+                    // Implicit datatypes format.
+                    explicit = false;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // Truncated tag, stream parser stops at the end of the file as well.
+        }
+
+        return true;
+    }
+
+    /**
+     * Sets image field, if the tag is one of the needed ones.
+     *
+     * @param image       image to fill.
+     * @param group       tag group.
+     * @param element     tag element.
+     * @param buf         DICOM file data.
+     * @param valueOffset offset of the tag value.
+     * @param valueLength length of the tag value, 0 if value wasn't read.
+     * @throws NumberFormatException if value of the needed tag isn't a number.
+     */
+    private static void setValue(
+            DICOMImage image,
+            int group,
+            int element,
+            ByteBuffer buf,
+            int valueOffset,
+            int valueLength
+    ) {
+        if (group == 0x0008 && (element == 0x0032 || element == 0x0033)) {
+            // 'Acquisition Time' || 'Content Time'
+            double time = Double.parseDouble(getText(buf, valueOffset, valueLength));
+
+            if (element == 0x0032) {
+                image.AcquTime = time;
+            } else {
+                image.ContTime = time;
+            }
+        } else if (group == 0x0018 && element == 0x1060) {
+            // 'Trigger Time'
+            image.TrigTime = Double.parseDouble(getText(buf, valueOffset, valueLength));
+        } else if (group == 0x0020) {
+            // 'Series Number' || 'Acquisition Number' || 'Instance Number' || 'Slice Location'
+            switch (element) {
+                case 0x0011 -> image.SeriesNumber = Integer.parseInt(getText(buf, valueOffset, valueLength));
+                case 0x0012 -> image.AcquNumber = Integer.parseInt(getText(buf, valueOffset, valueLength));
+                case 0x0013 -> image.InstNumber = Integer.parseInt(getText(buf, valueOffset, valueLength));
+                case 0x1041 -> image.SliceLocation = Double.parseDouble(getText(buf, valueOffset, valueLength));
+            }
+        }
+    }
+
+    /**
+     * Decodes 16-bit grayscale pixels, scaled to '0-255' range, into the image.
+     * Pixels missing in the truncated file are black.
+     *
+     * @param buf DICOM file data, positioned at the pixel data.
+     * @param wd  image width.
+     * @param ht  image height.
+     * @return decoded image.
+     */
+    private static BufferedImage decodePixels(ByteBuffer buf, int wd, int ht) {
+        BufferedImage image = new BufferedImage(wd, ht, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int offset = buf.position();
+        int pixels = Math.min(wd * ht, buf.remaining() / 2);
+        int max = 0;
+
+        for (int i = 0; i < pixels; i++) {
+            max = Math.max(max, buf.getShort(offset + 2 * i) & 0xFFFF);
+        }
+
+        if (max == 0) {
+            return image;
+        }
+
+        for (int i = 0, j = 0; i < pixels; i++, j += 3) {
+            byte val = (byte) ((buf.getShort(offset + 2 * i) & 0xFFFF) * 255 / max);
+            bgr[j] = val;
+            bgr[j + 1] = val;
+            bgr[j + 2] = val;
+        }
+
+        return image;
+    }
+
+    /**
+     * Returns trimmed text of the tag value.
+     *
+     * @param buf    DICOM file data.
+     * @param offset offset of the value.
+     * @param length length of the value.
+     * @return value text.
+     */
+    private static String getText(ByteBuffer buf, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buf.get(offset, bytes);
+
+        return new String(bytes, StandardCharsets.ISO_8859_1).trim();
+    }
+
+    /**
+     * Checks if trimmed tag value equals to the given ASCII value, without decoding it.
+     *
+     * @param buf      DICOM file data.
+     * @param offset   offset of the value.
+     * @param length   length of the value.
+     * @param expected expected value.
+     * @return true if value equals to the expected one, false otherwise.
+     */
+    private static boolean isValue(ByteBuffer buf, int offset, int length, byte[] expected) {
+        int start = offset;
+        int end = offset + length;
+        // Same as String.trim(), padding may be ' ' or '\0'.
+        while (start < end && (buf.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+
+        while (end > start && (buf.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+
+        if (end - start != expected.length) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            if (buf.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Skips bytes, stops at the end of the data.
+     *
+     * @param buf   DICOM file data.
+     * @param count number of bytes to skip.
+     */
+    private static void skip(ByteBuffer buf, int count) {
+        buf.position(count < 0 || count > buf.remaining() ? buf.limit() : buf.position() + count);
+    }
+
+    /**
+     * Packs VR chars the way they are read from the little-endian buffer.
+     *
+     * @param first  first VR char.
+     * @param second second VR char.
+     * @return packed VR.
+     */
+    private static short packVR(char first, char second) {
+        return (short) (first | second << 8);
+    }
+}